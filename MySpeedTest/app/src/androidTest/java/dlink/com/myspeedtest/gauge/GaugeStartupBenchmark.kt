@@ -0,0 +1,118 @@
+package dlink.com.myspeedtest.gauge
+
+import android.os.Bundle
+import android.os.SystemClock
+import android.util.Log
+import android.view.ViewGroup
+import android.view.ViewTreeObserver
+import android.widget.FrameLayout
+import androidx.test.core.app.ActivityScenario
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import dlink.com.myspeedtest.MainActivity
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+/**
+ * Startup benchmark for the gauge: how long the activity takes to come up, and how long a freshly
+ * attached gauge takes to its first frame and to its full dial, with the dial rendered on the UI
+ * thread and in the background. Medians are reported as instrumentation status, e.g.
+ * `adb shell am instrument -w -e class dlink.com.myspeedtest.gauge.GaugeStartupBenchmark ...`,
+ * and logged under [TAG].
+ */
+@RunWith(AndroidJUnit4::class)
+class GaugeStartupBenchmark {
+
+    @Test
+    fun startupAndFirstFrame() {
+        val results = Bundle()
+        results.putLong("activityStartMillis", median(LAUNCHES) { measureActivityStart() })
+        ActivityScenario.launch(MainActivity::class.java).use { scenario ->
+            for (async in booleanArrayOf(false, true)) {
+                val firstFrames = LongArray(RUNS)
+                val dialsReady = LongArray(RUNS)
+                for (i in 0 until RUNS) {
+                    val timing = measureGauge(scenario, async)
+                    firstFrames[i] = timing[0]
+                    dialsReady[i] = timing[1]
+                }
+                val mode = if (async) "async" else "sync"
+                results.putLong("${mode}FirstFrameMicros", median(firstFrames))
+                results.putLong("${mode}DialReadyMicros", median(dialsReady))
+            }
+        }
+        Log.i(TAG, results.toString())
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, results)
+        assertTrue(results.getLong("asyncFirstFrameMicros") > 0)
+    }
+
+    private fun measureActivityStart(): Long {
+        val start = SystemClock.elapsedRealtime()
+        ActivityScenario.launch(MainActivity::class.java).use {
+            return SystemClock.elapsedRealtime() - start
+        }
+    }
+
+    /**
+     * Attaches a new gauge with a cold dial cache and returns the micros from attach to its first
+     * frame and to its full dial.
+     */
+    private fun measureGauge(scenario: ActivityScenario<MainActivity>, async: Boolean): LongArray {
+        val firstFrame = CountDownLatch(1)
+        val dialReady = CountDownLatch(1)
+        val timing = LongArray(2)
+        var start = 0L
+        var gauge: GaugeView? = null
+        scenario.onActivity { activity ->
+            DialCache.getInstance().evictUnused()
+            val root = activity.findViewById<ViewGroup>(android.R.id.content)
+            val view = GaugeView(activity)
+            view.setAsyncDial(async)
+            view.setOnDialReadyListener {
+                timing[1] = (SystemClock.elapsedRealtimeNanos() - start) / 1000
+                dialReady.countDown()
+            }
+            view.viewTreeObserver.addOnDrawListener(object : ViewTreeObserver.OnDrawListener {
+                override fun onDraw() {
+                    if (firstFrame.count > 0) {
+                        timing[0] = (SystemClock.elapsedRealtimeNanos() - start) / 1000
+                        firstFrame.countDown()
+                    }
+                }
+            })
+            start = SystemClock.elapsedRealtimeNanos()
+            root.addView(view, FrameLayout.LayoutParams(GAUGE_SIZE, GAUGE_SIZE))
+            gauge = view
+        }
+        assertTrue(firstFrame.await(TIMEOUT_SECONDS, TimeUnit.SECONDS))
+        assertTrue(dialReady.await(TIMEOUT_SECONDS, TimeUnit.SECONDS))
+        scenario.onActivity { activity ->
+            activity.findViewById<ViewGroup>(android.R.id.content).removeView(gauge)
+        }
+        return timing
+    }
+
+    private inline fun median(runs: Int, block: () -> Long): Long {
+        val values = LongArray(runs)
+        for (i in 0 until runs) {
+            values[i] = block()
+        }
+        return median(values)
+    }
+
+    private fun median(values: LongArray): Long {
+        values.sort()
+        return values[values.size / 2]
+    }
+
+    companion object {
+        private const val TAG = "GaugeStartupBenchmark"
+        private const val LAUNCHES = 5
+        private const val RUNS = 10
+        private const val GAUGE_SIZE = 900
+        private const val TIMEOUT_SECONDS = 5L
+    }
+}
@@ -1,34 +1,203 @@
 package dlink.com.myspeedtest
 
+import androidx.annotation.StringRes
 import androidx.appcompat.app.AppCompatActivity
+import android.content.ComponentName
+import android.content.Intent
+import android.content.ServiceConnection
 import android.os.Bundle
-import android.os.CountDownTimer
+import android.os.IBinder
+import android.util.Log
 import android.view.View
 import android.widget.Button
-import android.widget.ImageButton
 import android.widget.TextView
+import dlink.com.myspeedtest.engine.LatencyResult
+import dlink.com.myspeedtest.engine.LoadedLatencyResult
+import dlink.com.myspeedtest.engine.Phase
+import dlink.com.myspeedtest.engine.ThroughputResult
+import dlink.com.myspeedtest.engine.UdpResult
+import dlink.com.myspeedtest.gauge.DialCache
+import dlink.com.myspeedtest.gauge.GaugeFeeder
 import dlink.com.myspeedtest.gauge.GaugeView
-import kotlinx.android.synthetic.main.activity_main.*
-import kotlin.random.Random
+import dlink.com.myspeedtest.gauge.SparklineView
+import dlink.com.myspeedtest.history.HistoryExporter
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+
+class MainActivity : AppCompatActivity(), SpeedTestService.Listener {
+
+    private lateinit var gaugeView: GaugeView
+    private lateinit var sparklineView: SparklineView
+    private lateinit var btnStart: Button
+    private var service: SpeedTestService? = null
+    private var gaugeFeeder: GaugeFeeder? = null
+    // Phase the feeder is running for; null right after attaching, when the sparkline holds a replay.
+    private var feedingPhase: Phase? = null
+
+    private val connection = object : ServiceConnection {
+        override fun onServiceConnected(name: ComponentName, binder: IBinder) {
+            val bound = (binder as SpeedTestService.LocalBinder).service
+            service = bound
+            val feeder = GaugeFeeder(gaugeView, bound.samples)
+            feeder.setSparkline(sparklineView)
+            gaugeFeeder = feeder
+            feedingPhase = null
+            bound.attach(this@MainActivity, sparklineView)
+        }
+
+        override fun onServiceDisconnected(name: ComponentName) {
+            releaseService()
+        }
+    }
 
-class MainActivity : AppCompatActivity() {
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
         setContentView(R.layout.activity_main)
-        val gaugeView: GaugeView = findViewById<View>(R.id.gauge_view) as GaugeView
-        val btnStart: Button = findViewById<View>(R.id.btnStart) as Button
+        gaugeView = findViewById<View>(R.id.gauge_view) as GaugeView
+        sparklineView = findViewById<View>(R.id.sparkline_view) as SparklineView
+        btnStart = findViewById<View>(R.id.btnStart) as Button
         gaugeView.setShowRangeValues(true)
-        gaugeView.setTargetValue(0F)
-        val random = Random(10)
-        val timer: CountDownTimer = object : CountDownTimer(10000, 2) {
-            override fun onTick(millisUntilFinished: Long) {
-                gaugeView.setTargetValue(random.nextInt(100).toFloat())
-            }
+        if (savedInstanceState == null) {
+            gaugeView.setTargetValue(0F)
+        }
+        btnStart.isEnabled = false
+        btnStart.setOnClickListener { service?.startTest() }
+        btnStart.setOnLongClickListener {
+            exportHistory()
+            true
+        }
+    }
 
-            override fun onFinish() {
-                gaugeView.setTargetValue(0F)
+    override fun onStart() {
+        super.onStart()
+        bindService(Intent(this, SpeedTestService::class.java), connection, BIND_AUTO_CREATE)
+    }
+
+    override fun onStop() {
+        if (isFinishing) {
+            // Leaving for good rather than rotating: nobody is left to see the result.
+            service?.cancel()
+        }
+        releaseService()
+        unbindService(connection)
+        super.onStop()
+    }
+
+    override fun onTrimMemory(level: Int) {
+        super.onTrimMemory(level)
+        if (level >= TRIM_MEMORY_UI_HIDDEN) {
+            DialCache.getInstance().evictUnused()
+        }
+    }
+
+    override fun onStateChanged(state: SpeedTestState) {
+        btnStart.isEnabled = !state.running
+        state.server?.let {
+            findViewById<TextView>(R.id.server_name).text = it.name
+            findViewById<TextView>(R.id.city_name).text = it.city
+            findViewById<TextView>(R.id.ip_value).text = it.host
+        }
+        findViewById<TextView>(R.id.ping_value).text = formatMillis(state.latency)
+        findViewById<TextView>(R.id.udp_value).text = formatUdp(state.udp)
+        findViewById<TextView>(R.id.loaded_value).text = formatLoaded(state.loaded)
+        findViewById<TextView>(R.id.download_value).text = formatMbps(state.download)
+        findViewById<TextView>(R.id.upload_value).text = formatMbps(state.upload)
+        showClientLimited(R.id.download_details_include, state.download)
+        showClientLimited(R.id.upload_details_include, state.upload)
+        showError(state.error)
+        val feeder = gaugeFeeder ?: return
+        val active = if (state.running) state.phase else Phase.IDLE
+        if (active == feedingPhase) {
+            return
+        }
+        if (feedingPhase != null && feedingPhase != Phase.IDLE) {
+            feeder.stop()
+            Log.d(TAG, "frames=" + feeder.frames + " updates=" + feeder.updates
+                    + " coalesced=" + feeder.coalesced + " dropped=" + feeder.dropped)
+            Log.d(TAG, gaugeView.frameStats.toString())
+        }
+        if (active != Phase.IDLE) {
+            if (feedingPhase != null) {
+                sparklineView.clear()
             }
+            feeder.start()
+        }
+        feedingPhase = active
+    }
+
+    /**
+     * Marks a result the device itself capped next to its unit.
+     */
+    private fun showClientLimited(detailsId: Int, result: ThroughputResult?) {
+        val unit = findViewById<View>(detailsId).findViewById<TextView>(R.id.text_mbps)
+        unit.setText(if (result?.isClientLimited == true) R.string.mbps_client_limited else R.string.mbps)
+    }
+
+    private fun showError(@StringRes error: Int) {
+        val text = findViewById<TextView>(R.id.error_text)
+        if (error == 0) {
+            text.visibility = View.GONE
+        } else {
+            text.setText(error)
+            text.visibility = View.VISIBLE
         }
-        btnStart.setOnClickListener { timer.start() }
     }
-}
\ No newline at end of file
+
+    private fun releaseService() {
+        service?.detach()
+        service = null
+        gaugeFeeder?.stop()
+        gaugeFeeder = null
+    }
+
+    /**
+     * Writes every stored sample to the app's external files for troubleshooting.
+     */
+    private fun exportHistory() {
+        val dir = getExternalFilesDir(EXPORT_DIR) ?: return
+        val context = applicationContext
+        Thread({
+            val history = SpeedTestService.openHistory(context) ?: return@Thread
+            try {
+                val exporter = HistoryExporter(history)
+                val start = System.nanoTime()
+                FileOutputStream(File(dir, "history.csv.gz")).use {
+                    exporter.exportCsv(0, history.runCount, it)
+                }
+                FileOutputStream(File(dir, "history.bin")).use {
+                    exporter.exportBinary(0, history.runCount, it)
+                }
+                Log.i(TAG, "exported " + exporter.exported + " samples to " + dir + " in "
+                        + (System.nanoTime() - start) / 1000000 + " ms")
+            } catch (e: IOException) {
+                Log.w(TAG, "export failed", e)
+            }
+        }, "history-export").start()
+    }
+
+    private fun formatMillis(result: LatencyResult?): String {
+        return if (result == null) "-" else String.format("%.1f", result.medianMillis)
+    }
+
+    private fun formatUdp(result: UdpResult?): String {
+        return if (result == null) "-" else String.format("%.1f%% / %.1f мс", result.lossPercent, result.jitterMillis)
+    }
+
+    /**
+     * How much the median round trip grew during download and upload over idle.
+     */
+    private fun formatLoaded(result: LoadedLatencyResult?): String {
+        return if (result == null) "-" else String.format("%+.1f / %+.1f мс",
+                result.getMedianDelta(Phase.DOWNLOAD) / 1e6, result.getMedianDelta(Phase.UPLOAD) / 1e6)
+    }
+
+    private fun formatMbps(result: ThroughputResult?): String {
+        return if (result == null) "-" else String.format("%.1f", result.steadyMbps)
+    }
+
+    companion object {
+        private const val TAG = "MainActivity"
+        private const val EXPORT_DIR = "export"
+    }
+}
@@ -0,0 +1,379 @@
+package dlink.com.myspeedtest
+
+import android.app.Notification
+import android.app.NotificationChannel
+import android.app.NotificationManager
+import android.app.Service
+import android.content.Context
+import android.content.Intent
+import android.os.Binder
+import android.os.Build
+import android.os.Handler
+import android.os.IBinder
+import android.os.Looper
+import android.util.Log
+import androidx.core.app.NotificationCompat
+import androidx.core.content.ContextCompat
+import dlink.com.myspeedtest.engine.ConvergenceDetector
+import dlink.com.myspeedtest.engine.DownloadEngine
+import dlink.com.myspeedtest.engine.LatencyProbe
+import dlink.com.myspeedtest.engine.LatencyResult
+import dlink.com.myspeedtest.engine.LoadedLatencyMonitor
+import dlink.com.myspeedtest.engine.LoadedLatencyResult
+import dlink.com.myspeedtest.engine.Phase
+import dlink.com.myspeedtest.engine.SampleListener
+import dlink.com.myspeedtest.engine.SampleRing
+import dlink.com.myspeedtest.engine.ServerInfo
+import dlink.com.myspeedtest.engine.ServerSelector
+import dlink.com.myspeedtest.engine.ThroughputEngine
+import dlink.com.myspeedtest.engine.ThroughputResult
+import dlink.com.myspeedtest.engine.UdpEngine
+import dlink.com.myspeedtest.engine.UdpResult
+import dlink.com.myspeedtest.engine.UploadEngine
+import dlink.com.myspeedtest.gauge.LttbSeries
+import dlink.com.myspeedtest.gauge.SparklineView
+import dlink.com.myspeedtest.history.HistoryRecorder
+import dlink.com.myspeedtest.history.HistoryRun
+import dlink.com.myspeedtest.history.HistoryStore
+import java.io.File
+import java.io.IOException
+import java.io.InputStreamReader
+import java.net.InetSocketAddress
+
+/**
+ * Runs the speed test independently of any activity. The service is bound by whatever screen is
+ * showing and promoted to the foreground while a test runs, so rotation or leaving the app does
+ * not restart connections. A screen that binds again gets the latest [SpeedTestState] and the
+ * throughput curve of the current phase replayed, then live samples through [samples]. Both are
+ * kept for the life of the process, so they survive the service stopping after a test.
+ *
+ * Samples only reach [samples] while a screen is attached; otherwise the sampling thread just
+ * folds them into the replay series, which does not allocate.
+ */
+class SpeedTestService : Service() {
+
+    interface Listener {
+        /** Called on the main thread, once on attach and after every change. */
+        fun onStateChanged(state: SpeedTestState)
+    }
+
+    inner class LocalBinder : Binder() {
+        val service: SpeedTestService
+            get() = this@SpeedTestService
+    }
+
+    private val binder = LocalBinder()
+    private val mainHandler = Handler(Looper.getMainLooper())
+
+    /** Live samples of the running phase for the attached screen. */
+    val samples = SampleRing(SAMPLE_RING_CAPACITY)
+    @Volatile
+    private var uiAttached = false
+    // Main thread only.
+    private var listener: Listener? = null
+
+    /** The running test's state, or the last test's once it has ended. */
+    val state: SpeedTestState
+        get() = lastState
+    @Volatile
+    private var cancelled = false
+    @Volatile
+    private var runningEngine: ThroughputEngine? = null
+    @Volatile
+    private var runningUdp: UdpEngine? = null
+    @Volatile
+    private var runningProbe: LatencyProbe? = null
+
+    private val publishState = Runnable { listener?.onStateChanged(state) }
+
+    private val sampleListener = object : SampleListener {
+        override fun onSample(elapsedNanos: Long, totalBytes: Long, mbps: Float) {
+            // the gauge shows the healthy connections only; history and the runner keep the total
+            val healthyMbps = runningEngine?.healthyMbps ?: mbps
+            synchronized(series) {
+                series.add(elapsedNanos, healthyMbps)
+                if (uiAttached) {
+                    samples.onSample(elapsedNanos, totalBytes, healthyMbps)
+                }
+            }
+        }
+    }
+
+    override fun onBind(intent: Intent): IBinder = binder
+
+    override fun onStartCommand(intent: Intent?, flags: Int, startId: Int): Int {
+        startForeground(NOTIFICATION_ID, buildNotification())
+        return START_NOT_STICKY
+    }
+
+    override fun onDestroy() {
+        cancel()
+        mainHandler.removeCallbacks(publishState)
+        super.onDestroy()
+    }
+
+    /**
+     * Attaches a screen: fills [sparkline] with the current phase so far, starts live delivery to
+     * [samples] and reports the current state. Main thread only.
+     */
+    fun attach(listener: Listener, sparkline: SparklineView?) {
+        this.listener = listener
+        synchronized(series) {
+            if (sparkline != null) {
+                sparkline.clear()
+                for (i in 0 until series.size()) {
+                    sparkline.add(series.getTime(i), series.getValue(i))
+                }
+            }
+            uiAttached = true
+        }
+        listener.onStateChanged(state)
+    }
+
+    fun detach() {
+        uiAttached = false
+        listener = null
+    }
+
+    /**
+     * Starts a test unless one is running; the service keeps itself in the foreground until the
+     * test ends.
+     */
+    fun startTest() {
+        if (state.running) {
+            return
+        }
+        cancelled = false
+        publish(SpeedTestState(running = true))
+        ContextCompat.startForegroundService(this, Intent(this, SpeedTestService::class.java))
+        Thread({
+            try {
+                runTest()
+            } finally {
+                publish(state.copy(running = false, phase = Phase.IDLE))
+                mainHandler.post {
+                    stopForeground(true)
+                    stopSelf()
+                }
+            }
+        }, "speedtest").start()
+    }
+
+    /**
+     * Stops the running test at the next opportunity; phases already finished are kept.
+     */
+    fun cancel() {
+        cancelled = true
+        runningProbe?.cancel()
+        runningUdp?.cancel()
+        runningEngine?.cancel()
+    }
+
+    private fun runTest() {
+        val server = selectServer()
+        if (server == null) {
+            if (!cancelled) {
+                publish(state.copy(error = R.string.error_no_server))
+            }
+            return
+        }
+        publish(state.copy(server = server))
+        val startMillis = System.currentTimeMillis()
+        val history = openHistory(this)
+        // Every engine sample is kept, so an export shows the run at the resolution it was measured.
+        val recorder = if (history == null) null
+        else HistoryRecorder(history, sampleListener, HistoryRecorder.EVERY_SAMPLE)
+        val listener: SampleListener = recorder ?: sampleListener
+        val echoAddress = server.echoAddress
+        val probe = LatencyProbe(echoAddress)
+        val latency = runLatency(probe)
+        publish(state.copy(latency = latency))
+        if (cancelled) {
+            return
+        }
+        val udp = runUdp(echoAddress)
+        Log.i(TAG, udp.toString())
+        publish(state.copy(udp = udp))
+        if (cancelled) {
+            return
+        }
+        val monitor = LoadedLatencyMonitor(echoAddress)
+        if (latency != null) {
+            monitor.addIdleBaseline(probe.histogram)
+        }
+        monitor.start()
+        var download: ThroughputResult? = null
+        var upload: ThroughputResult? = null
+        var loaded: LoadedLatencyResult? = null
+        try {
+            recorder?.setLatencyMonitor(monitor)
+            val address = server.address
+            val connections = resources.getInteger(R.integer.speedtest_connections)
+            monitor.setPhase(Phase.DOWNLOAD)
+            val downloadEngine = DownloadEngine(address)
+            recorder?.setPhase(Phase.DOWNLOAD, downloadEngine)
+            download = runPhase(Phase.DOWNLOAD, downloadEngine, connections, listener)
+            publish(state.copy(phase = Phase.IDLE, download = download))
+            if (!cancelled) {
+                monitor.setPhase(Phase.UPLOAD)
+                val uploadEngine = UploadEngine(address)
+                recorder?.setPhase(Phase.UPLOAD, uploadEngine)
+                upload = runPhase(Phase.UPLOAD, uploadEngine, connections, listener)
+                publish(state.copy(phase = Phase.IDLE, upload = upload))
+            }
+        } finally {
+            loaded = monitor.stop()
+        }
+        Log.i(TAG, loaded.toString())
+        publish(state.copy(loaded = loaded))
+        if (recorder != null) {
+            saveRun(recorder, startMillis, latency, download, upload)
+        }
+        Log.i(TAG, "adaptive duration saved " + (savedNanos(download) + savedNanos(upload)) / 1000000
+                + " ms and " + (savedBytes(download) + savedBytes(upload)) + " bytes")
+    }
+
+    private fun publish(newState: SpeedTestState) {
+        lastState = newState
+        mainHandler.removeCallbacks(publishState)
+        mainHandler.post(publishState)
+    }
+
+    private fun selectServer(): ServerInfo? {
+        val servers = InputStreamReader(resources.openRawResource(R.raw.servers), Charsets.UTF_8).use {
+            ServerInfo.parse(it)
+        }
+        val selector = ServerSelector(servers)
+        selector.setParallelism(resources.getInteger(R.integer.speedtest_probe_parallelism))
+        selector.setTimeout(resources.getInteger(R.integer.speedtest_probe_timeout_millis))
+        val selection = selector.select()
+        Log.i(TAG, selection.toString())
+        return selection.best
+    }
+
+    private fun saveRun(recorder: HistoryRecorder, startMillis: Long, latency: LatencyResult?,
+                        download: ThroughputResult?, upload: ThroughputResult?) {
+        var flags = 0
+        if (download?.isConverged == true) {
+            flags = flags or HistoryRun.FLAG_DOWNLOAD_CONVERGED
+        }
+        if (upload?.isConverged == true) {
+            flags = flags or HistoryRun.FLAG_UPLOAD_CONVERGED
+        }
+        if (download?.isClientLimited == true) {
+            flags = flags or HistoryRun.FLAG_DOWNLOAD_CLIENT_LIMITED
+        }
+        if (upload?.isClientLimited == true) {
+            flags = flags or HistoryRun.FLAG_UPLOAD_CLIENT_LIMITED
+        }
+        val run = HistoryRun(startMillis, download?.steadyMbps ?: Float.NaN, upload?.steadyMbps ?: Float.NaN,
+                latency?.medianMillis ?: Float.NaN, latency?.jitterMillis ?: Float.NaN,
+                download?.bytes ?: 0, upload?.bytes ?: 0, flags)
+        try {
+            recorder.commit(run)
+        } catch (e: IOException) {
+            Log.w(TAG, "could not save run", e)
+        }
+    }
+
+    private fun runPhase(phase: Phase, engine: ThroughputEngine, connections: Int,
+                         listener: SampleListener): ThroughputResult? {
+        engine.setConnections(connections)
+        engine.setReplaceStragglers(true)
+        engine.setDuration(MAX_PHASE_MILLIS)
+        engine.setAdaptive(ConvergenceDetector(), MIN_PHASE_MILLIS)
+        synchronized(series) {
+            series.clear()
+        }
+        runningEngine = engine
+        publish(state.copy(phase = phase))
+        return try {
+            if (cancelled) null else engine.run(listener).also { Log.i(TAG, "$phase $it") }
+        } catch (e: IOException) {
+            null
+        } finally {
+            runningEngine = null
+        }
+    }
+
+    /**
+     * Loss and jitter over UDP; the reflector listens on the echo port.
+     */
+    private fun runUdp(address: InetSocketAddress): UdpResult? {
+        val engine = UdpEngine(address)
+        engine.setPacketRate(resources.getInteger(R.integer.speedtest_udp_packet_rate))
+        engine.setDuration(resources.getInteger(R.integer.speedtest_udp_duration_millis).toLong())
+        runningUdp = engine
+        return try {
+            if (cancelled) null else engine.run()
+        } catch (e: IOException) {
+            null
+        } finally {
+            runningUdp = null
+        }
+    }
+
+    private fun runLatency(probe: LatencyProbe): LatencyResult? {
+        runningProbe = probe
+        return try {
+            if (cancelled) null else probe.run()
+        } catch (e: IOException) {
+            null
+        } finally {
+            runningProbe = null
+        }
+    }
+
+    private fun buildNotification(): Notification {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            val channel = NotificationChannel(NOTIFICATION_CHANNEL, getString(R.string.notification_channel),
+                    NotificationManager.IMPORTANCE_LOW)
+            getSystemService(NotificationManager::class.java).createNotificationChannel(channel)
+        }
+        return NotificationCompat.Builder(this, NOTIFICATION_CHANNEL)
+                .setSmallIcon(R.drawable.ic_baseline_speed_24)
+                .setContentTitle(getString(R.string.notification_running))
+                .setOngoing(true)
+                .build()
+    }
+
+    private fun savedNanos(result: ThroughputResult?): Long = result?.savedNanos ?: 0
+
+    private fun savedBytes(result: ThroughputResult?): Long = result?.savedBytes ?: 0
+
+    companion object {
+        private const val TAG = "SpeedTestService"
+        private const val SAMPLE_RING_CAPACITY = 256
+        private const val REPLAY_POINTS = 256
+        private const val NOTIFICATION_ID = 1
+        private const val NOTIFICATION_CHANNEL = "speedtest"
+        private const val HISTORY_DIR = "history"
+        private const val MIN_PHASE_MILLIS = 3000L
+        private const val MAX_PHASE_MILLIS = 15000L
+
+        private var historyStore: HistoryStore? = null
+
+        // Kept by the process rather than the service, which stops itself when a test ends, so a
+        // screen that binds afterwards still gets the final state and curve.
+        @Volatile
+        private var lastState = SpeedTestState()
+        // Guarded by itself; also orders replay against live delivery.
+        private val series = LttbSeries(REPLAY_POINTS)
+
+        /**
+         * The process-wide history store, opened on first use. A second instance on the same
+         * files would recover away the samples of a run still being recorded.
+         */
+        @Synchronized
+        fun openHistory(context: Context): HistoryStore? {
+            if (historyStore == null) {
+                try {
+                    historyStore = HistoryStore(File(context.filesDir, HISTORY_DIR))
+                } catch (e: IOException) {
+                    Log.w(TAG, "history unavailable", e)
+                }
+            }
+            return historyStore
+        }
+    }
+}
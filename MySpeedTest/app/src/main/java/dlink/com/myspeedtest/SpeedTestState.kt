@@ -0,0 +1,29 @@
+package dlink.com.myspeedtest
+
+import androidx.annotation.StringRes
+import dlink.com.myspeedtest.engine.LatencyResult
+import dlink.com.myspeedtest.engine.LoadedLatencyResult
+import dlink.com.myspeedtest.engine.Phase
+import dlink.com.myspeedtest.engine.ServerInfo
+import dlink.com.myspeedtest.engine.ThroughputResult
+import dlink.com.myspeedtest.engine.UdpResult
+
+/**
+ * Everything a screen needs to show a test, in progress or finished. Immutable; the service
+ * publishes a new instance on every change so a reattached screen can be brought up to date
+ * from the latest one alone.
+ */
+data class SpeedTestState(
+        val running: Boolean = false,
+        /** Throughput phase in progress, [Phase.IDLE] outside of them. */
+        val phase: Phase = Phase.IDLE,
+        val server: ServerInfo? = null,
+        val latency: LatencyResult? = null,
+        val udp: UdpResult? = null,
+        val download: ThroughputResult? = null,
+        val upload: ThroughputResult? = null,
+        /** Latency measured alongside the throughput phases, once both have ended. */
+        val loaded: LoadedLatencyResult? = null,
+        /** Why the test ended without results, or 0. */
+        @StringRes val error: Int = 0
+)
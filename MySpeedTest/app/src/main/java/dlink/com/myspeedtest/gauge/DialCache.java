@@ -0,0 +1,252 @@
+package dlink.com.myspeedtest.gauge;
+
+import android.graphics.Bitmap;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Process-wide cache of pre-rendered dials shared by every {@link GaugeView}. Dials are keyed by
+ * everything that changes their pixels, so gauges of the same size and style share one bitmap
+ * across rotations, list rebinds and activity restarts.
+ * <p>
+ * Entries are reference counted: a bitmap is only recycled once it has been evicted and no view
+ * holds it. Unreferenced entries are evicted least recently used first whenever the cache is over
+ * its byte budget.
+ */
+public final class DialCache {
+
+    /**
+     * Default budget as a fraction of the heap limit.
+     */
+    public static final int DEFAULT_BUDGET_DIVISOR = 16;
+
+    private static DialCache sInstance;
+
+    private final LinkedHashMap<Key, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private long mMaxBytes;
+    private long mBytes;
+
+    private long mHits;
+    private long mMisses;
+    private long mEvictions;
+
+    public static synchronized DialCache getInstance() {
+        if (null == sInstance) {
+            sInstance = new DialCache(Runtime.getRuntime().maxMemory() / DEFAULT_BUDGET_DIVISOR);
+        }
+        return sInstance;
+    }
+
+    DialCache(final long maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Changes the byte budget; entries in use may keep the cache above it until released.
+     */
+    public synchronized void setMaxBytes(final long maxBytes) {
+        mMaxBytes = maxBytes;
+        trimToSize(mMaxBytes);
+    }
+
+    public synchronized long getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    /**
+     * Returns the cached dial for {@code key} with its reference count raised, or null.
+     */
+    synchronized Entry acquire(final Key key) {
+        final Entry entry = mEntries.get(key);
+        if (null == entry) {
+            mMisses++;
+            return null;
+        }
+        mHits++;
+        entry.mReferences++;
+        return entry;
+    }
+
+    /**
+     * Adds a freshly drawn dial and returns it acquired once. If another view raced to draw the
+     * same dial, the cached one wins and {@code bitmap} is recycled.
+     */
+    synchronized Entry put(final Key key, final Bitmap bitmap) {
+        final Entry existing = mEntries.get(key);
+        if (null != existing) {
+            bitmap.recycle();
+            existing.mReferences++;
+            return existing;
+        }
+        final Entry entry = new Entry(key, bitmap);
+        entry.mReferences = 1;
+        mEntries.put(key, entry);
+        mBytes += entry.mBytes;
+        trimToSize(mMaxBytes);
+        return entry;
+    }
+
+    synchronized void release(final Entry entry) {
+        if (entry.mReferences <= 0) {
+            throw new IllegalStateException("dial released more often than acquired");
+        }
+        entry.mReferences--;
+        if (0 == entry.mReferences) {
+            if (entry.mEvicted) {
+                entry.mBitmap.recycle();
+            } else {
+                trimToSize(mMaxBytes);
+            }
+        }
+    }
+
+    /**
+     * Drops every dial no view is using, e.g. from {@code onTrimMemory}.
+     */
+    public synchronized void evictUnused() {
+        trimToSize(0);
+    }
+
+    private void trimToSize(final long maxBytes) {
+        final Iterator<Entry> it = mEntries.values().iterator();
+        while (mBytes > maxBytes && it.hasNext()) {
+            final Entry entry = it.next();
+            if (0 != entry.mReferences) {
+                continue;
+            }
+            it.remove();
+            mBytes -= entry.mBytes;
+            mEvictions++;
+            entry.mEvicted = true;
+            entry.mBitmap.recycle();
+        }
+    }
+
+    public synchronized long getBytes() {
+        return mBytes;
+    }
+
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    public synchronized long getHits() {
+        return mHits;
+    }
+
+    public synchronized long getMisses() {
+        return mMisses;
+    }
+
+    public synchronized long getEvictions() {
+        return mEvictions;
+    }
+
+    /**
+     * A cached dial. Views must not recycle the bitmap; they hand the entry back with
+     * {@link #release(Entry)}.
+     */
+    static final class Entry {
+
+        private final Key mKey;
+        private final Bitmap mBitmap;
+        private final long mBytes;
+        private int mReferences;
+        private boolean mEvicted;
+
+        Entry(final Key key, final Bitmap bitmap) {
+            mKey = key;
+            mBitmap = bitmap;
+            mBytes = bitmap.getByteCount();
+        }
+
+        Key getKey() {
+            return mKey;
+        }
+
+        Bitmap getBitmap() {
+            return mBitmap;
+        }
+    }
+
+    /**
+     * Everything that affects the pixels of a dial. Arrays are copied so later changes to a view
+     * cannot corrupt a key already in the map.
+     */
+    static final class Key {
+
+        private final int mWidth;
+        private final int mHeight;
+        private final Bitmap.Config mConfig;
+        private final int mFillColor;
+        private final float[] mScale;
+        private final float[] mRangeValues;
+        private final int[] mColors;
+        private final int mHash;
+
+        /**
+         * @param scale every float parameter of the dial, e.g. start angle and divisions
+         * @param colors range colors followed by every other int parameter, e.g. the shadow color
+         */
+        Key(final int width, final int height, final Bitmap.Config config, final int fillColor,
+            final float[] scale, final float[] rangeValues, final int[] colors) {
+            mWidth = width;
+            mHeight = height;
+            mConfig = config;
+            mFillColor = fillColor;
+            mScale = scale.clone();
+            mRangeValues = rangeValues.clone();
+            mColors = colors.clone();
+            int hash = mWidth;
+            hash = 31 * hash + mHeight;
+            hash = 31 * hash + mConfig.hashCode();
+            hash = 31 * hash + mFillColor;
+            hash = 31 * hash + Arrays.hashCode(mScale);
+            hash = 31 * hash + Arrays.hashCode(mRangeValues);
+            hash = 31 * hash + Arrays.hashCode(mColors);
+            mHash = hash;
+        }
+
+        int getWidth() {
+            return mWidth;
+        }
+
+        int getHeight() {
+            return mHeight;
+        }
+
+        Bitmap.Config getConfig() {
+            return mConfig;
+        }
+
+        int getFillColor() {
+            return mFillColor;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return mHash == other.mHash
+                    && mWidth == other.mWidth
+                    && mHeight == other.mHeight
+                    && mConfig == other.mConfig
+                    && mFillColor == other.mFillColor
+                    && Arrays.equals(mScale, other.mScale)
+                    && Arrays.equals(mRangeValues, other.mRangeValues)
+                    && Arrays.equals(mColors, other.mColors);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package dlink.com.myspeedtest.gauge;
+
+import android.os.Process;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Background thread that rasterizes dials off the UI thread. A single thread is enough: dials are
+ * drawn once per size and style, and serializing them keeps at most one extra bitmap in flight.
+ */
+final class DialRenderer {
+
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "gauge-dial");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private DialRenderer() {
+    }
+
+    static void execute(final Runnable task) {
+        EXECUTOR.execute(task);
+    }
+}
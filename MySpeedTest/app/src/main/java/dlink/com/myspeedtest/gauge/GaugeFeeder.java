@@ -0,0 +1,153 @@
+package dlink.com.myspeedtest.gauge;
+
+import android.view.Choreographer;
+
+import dlink.com.myspeedtest.engine.SampleRing;
+
+/**
+ * Moves samples from a {@link SampleRing} to a {@link GaugeView} once per vsync. However fast the
+ * network threads publish, the UI thread drains the ring, folds the samples into one smoothed value
+ * and calls {@link GaugeView#setTargetValue(float)} at most once per frame. An optional
+ * {@link SparklineView} gets every raw sample and one invalidation per frame.
+ * <p>
+ * While the gauge is culled the feeder stops draining altogether and the ring holds, or drops, what
+ * arrives meanwhile; it picks up on the next frame after the gauge is visible again.
+ */
+public class GaugeFeeder implements Choreographer.FrameCallback, SampleRing.Sink, OnCullListener {
+
+    public static final float DEFAULT_SMOOTHING = 0.3f;
+
+    private final GaugeView mGauge;
+    private final SampleRing mRing;
+    private SparklineView mSparkline;
+    private float mSmoothing = DEFAULT_SMOOTHING;
+
+    private float mValue;
+    private boolean mHasValue;
+    private boolean mRunning;
+    private boolean mScheduled;
+
+    private long mFrames;
+    private long mUpdates;
+    private long mCoalesced;
+    private int mMaxPerFrame;
+
+    public GaugeFeeder(final GaugeView gauge, final SampleRing ring) {
+        mGauge = gauge;
+        mRing = ring;
+    }
+
+    /**
+     * Weight of each new sample in the exponential moving average, 1 disables smoothing.
+     */
+    public void setSmoothing(final float smoothing) {
+        mSmoothing = Math.max(0.01f, Math.min(smoothing, 1.0f));
+    }
+
+    public void setSparkline(final SparklineView sparkline) {
+        mSparkline = sparkline;
+    }
+
+    public void start() {
+        if (!mRunning) {
+            mRunning = true;
+            mGauge.setOnCullListener(this);
+            schedule();
+        }
+    }
+
+    /**
+     * Stops draining, discards whatever is still queued and parks the needle at zero.
+     */
+    public void stop() {
+        mRunning = false;
+        mGauge.setOnCullListener(null);
+        if (mScheduled) {
+            mScheduled = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+        mRing.drain(this);
+        mHasValue = false;
+        mValue = 0.0f;
+        mGauge.setTargetValue(0.0f);
+    }
+
+    private void schedule() {
+        if (!mScheduled && !mGauge.isCulled()) {
+            mScheduled = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void onCullChanged(final GaugeView view, final boolean culled) {
+        if (mRunning && !culled) {
+            schedule();
+        }
+    }
+
+    @Override
+    public void doFrame(final long frameTimeNanos) {
+        mScheduled = false;
+        if (!mRunning) {
+            return;
+        }
+        final int drained = mRing.drain(this);
+        mFrames++;
+        if (drained > 0) {
+            mUpdates++;
+            mCoalesced += drained - 1;
+            mMaxPerFrame = Math.max(mMaxPerFrame, drained);
+            mGauge.setTargetValue(mValue);
+            if (null != mSparkline) {
+                mSparkline.invalidate();
+            }
+        }
+        schedule();
+    }
+
+    @Override
+    public void accept(final long timeNanos, final float value) {
+        if (null != mSparkline && mRunning) {
+            mSparkline.add(timeNanos, value);
+        }
+        if (mHasValue) {
+            mValue += mSmoothing * (value - mValue);
+        } else {
+            mValue = value;
+            mHasValue = true;
+        }
+    }
+
+    public long getFrames() {
+        return mFrames;
+    }
+
+    /**
+     * Frames that pushed a value to the gauge.
+     */
+    public long getUpdates() {
+        return mUpdates;
+    }
+
+    /**
+     * Samples folded into another sample of the same frame instead of reaching the gauge.
+     */
+    public long getCoalesced() {
+        return mCoalesced;
+    }
+
+    /**
+     * Samples dropped by producers because the ring was full.
+     */
+    public long getDropped() {
+        return mRing.getDropped();
+    }
+
+    /**
+     * Most samples drained in a single frame; bounded by the ring capacity.
+     */
+    public int getMaxPerFrame() {
+        return mMaxPerFrame;
+    }
+}
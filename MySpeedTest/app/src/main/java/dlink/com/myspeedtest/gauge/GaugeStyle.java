@@ -0,0 +1,127 @@
+package dlink.com.myspeedtest.gauge;
+
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.RectF;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Paints and paths of a {@link GaugeView}, built once per configuration and shared by every gauge
+ * configured the same way, so a dashboard of dozens of gauges holds one set instead of one per view.
+ * Nothing here may be changed once the style is published; a gauge whose configuration changes
+ * switches to another style instead.
+ * <p>
+ * Styles are few and small, one per distinct configuration in the process, so they are kept for
+ * the life of the process.
+ */
+final class GaugeStyle {
+
+    private static final HashMap<Key, GaugeStyle> sStyles = new HashMap<>();
+
+    final Paint mBackgroundPaint;
+    final Paint mFacePaint;
+    final RectF mFaceOval;
+    final Paint[] mRangePaints;
+    final Path mNeedleLeftPath;
+    final Paint mNeedleLeftPaint;
+    final Paint mNeedleArcPaint;
+    final Paint mScaleLinePaint;
+    final Paint mScaleTextPaint;
+    final Paint mTextValuePaint;
+    final Paint mTextUnitPaint;
+    final Paint mScaleTextShadowPaint;
+    final Paint mTextValueShadowPaint;
+    final Paint mTextUnitShadowPaint;
+    final Paint mHudPaint;
+
+    GaugeStyle(final Paint backgroundPaint, final Paint facePaint, final RectF faceOval, final Paint[] rangePaints,
+               final Path needleLeftPath, final Paint needleLeftPaint, final Paint needleArcPaint,
+               final Paint scaleLinePaint, final Paint scaleTextPaint, final Paint textValuePaint,
+               final Paint textUnitPaint, final Paint scaleTextShadowPaint, final Paint textValueShadowPaint,
+               final Paint textUnitShadowPaint, final Paint hudPaint) {
+        mBackgroundPaint = backgroundPaint;
+        mFacePaint = facePaint;
+        mFaceOval = faceOval;
+        mRangePaints = rangePaints;
+        mNeedleLeftPath = needleLeftPath;
+        mNeedleLeftPaint = needleLeftPaint;
+        mNeedleArcPaint = needleArcPaint;
+        mScaleLinePaint = scaleLinePaint;
+        mScaleTextPaint = scaleTextPaint;
+        mTextValuePaint = textValuePaint;
+        mTextUnitPaint = textUnitPaint;
+        mScaleTextShadowPaint = scaleTextShadowPaint;
+        mTextValueShadowPaint = textValueShadowPaint;
+        mTextUnitShadowPaint = textUnitShadowPaint;
+        mHudPaint = hudPaint;
+    }
+
+    static synchronized GaugeStyle get(final Key key) {
+        return sStyles.get(key);
+    }
+
+    /**
+     * Publishes a freshly built style and returns the one to use; if another gauge published the
+     * same configuration first, that one wins.
+     */
+    static synchronized GaugeStyle put(final Key key, final GaugeStyle style) {
+        final GaugeStyle existing = sStyles.get(key);
+        if (null != existing) {
+            return existing;
+        }
+        sStyles.put(key, style);
+        return style;
+    }
+
+    static synchronized int size() {
+        return sStyles.size();
+    }
+
+    /**
+     * Everything the paints and paths are built from, including the gauge class, since a subclass
+     * may override how they are built.
+     */
+    static final class Key {
+
+        private final Class<?> mType;
+        private final float[] mParams;
+        private final int[] mColors;
+        private final int mHash;
+
+        /**
+         * @param params every float the tools are built from, e.g. needle size and density
+         * @param colors every color and flag the tools are built from
+         */
+        Key(final Class<?> type, final float[] params, final int[] colors) {
+            mType = type;
+            mParams = params.clone();
+            mColors = colors.clone();
+            int hash = mType.hashCode();
+            hash = 31 * hash + Arrays.hashCode(mParams);
+            hash = 31 * hash + Arrays.hashCode(mColors);
+            mHash = hash;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return mHash == other.mHash
+                    && mType == other.mType
+                    && Arrays.equals(mParams, other.mParams)
+                    && Arrays.equals(mColors, other.mColors);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+    }
+}
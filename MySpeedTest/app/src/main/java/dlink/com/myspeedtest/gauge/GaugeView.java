@@ -8,17 +8,30 @@ import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Path;
+import android.graphics.RecordingCanvas;
+import android.graphics.Rect;
 import android.graphics.RectF;
+import android.graphics.RenderNode;
 import android.graphics.Typeface;
+import android.graphics.drawable.ColorDrawable;
+import android.graphics.drawable.Drawable;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Parcelable;
-import android.text.TextUtils;
 import android.util.AttributeSet;
+import android.view.Display;
 import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.util.Arrays;
 
 import dlink.com.myspeedtest.R;
 
+/**
+ * Speedometer-style gauge. Gauges configured the same way share their paints, paths and dial, and a
+ * gauge that is detached, hidden or scrolled out of view stops animating until it is visible again,
+ * so a dashboard of many gauges only pays for the ones on screen.
+ */
 public class GaugeView extends View {
 
     public static final int SIZE = 300;
@@ -41,14 +54,31 @@ public class GaugeView extends View {
     public static final int TEXT_SHADOW_COLOR = Color.argb(0, 0, 0, 0);
     public static final float TEXT_VALUE_SIZE = 0.3f;
     public static final float TEXT_UNIT_SIZE = 0.1f;
+    public static final boolean HARDWARE_RENDERING = true;
+    public static final float NEEDLE_STIFFNESS = 60.0f;
+    public static final boolean LOW_DEPTH_DIAL = false;
+    public static final boolean ASYNC_DIAL = true;
+    public static final boolean LOG_SCALE = false;
+    public static final boolean SHOW_DEBUG_HUD = false;
     private static final float[] DEFAULT_RANGE_VALUES = new float[]{0.0f, 1f, 5f, 10f, 20f, 30f, 50f, 75f, 100f};
+    // Text is laid out on a canvas scaled up by this factor; paints carry the magnified size.
+    private static final float TEXT_MAGNIFIER = 100f;
+    private static final float TEXT_SHADOW_OFFSET = 0.002f;
+    private static final float HUD_TEXT_SIZE_DP = 10.0f;
+    private static final int HUD_LINE_LENGTH = 48;
 
     private boolean mShowScale;
+    private boolean mHardwareRendering;
+    private boolean mLowDepthDial;
+    private boolean mAsyncDial;
+    private boolean mLogScale;
+    private boolean mShowDebugHud;
 
     private float mOuterRimWidth;
     private float mInnerRimWidth;
     private float mNeedleWidth;
     private float mNeedleHeight;
+    private float mNeedleStiffness;
 
     private float mScalePosition;
     private float mScaleStartValue;
@@ -65,15 +95,36 @@ public class GaugeView extends View {
     private RectF mFaceRect;
     private RectF mScaleRect;
 
+    // Owned by mDialEntry, never recycled here.
     private Bitmap mBackground;
+    private DialCache.Entry mDialEntry;
+    // Bumped whenever the dial is invalidated, so a late background render can tell it is stale.
+    private int mDialGeneration;
+    private boolean mDialPending;
+    private OnDialReadyListener mOnDialReadyListener;
+    private RenderNode mDialNode;
+    // Shared with every gauge of the same configuration; the fields below are copied from it.
+    private GaugeStyle mStyle;
     private Paint mBackgroundPaint;
+    private Paint mFacePaint;
+    private RectF mFaceOval;
     private Paint[] mRangePaints;
     private Paint mNeedleLeftPaint;
+    private Paint mNeedleArcPaint;
+    private Paint mScaleLinePaint;
+    private Paint mScaleTextPaint;
     private Paint mTextValuePaint;
     private Paint mTextUnitPaint;
+    // Hardware mode draws text shadows as an offset pass; null when there is nothing to draw.
+    private Paint mScaleTextShadowPaint;
+    private Paint mTextValueShadowPaint;
+    private Paint mTextUnitShadowPaint;
 
     private String mTextValue;
     private String mTextUnit;
+    private char[] mTextValueChars;
+    private char[] mTextUnitChars;
+    private final char[] mValueChars = new char[ValueFormatter.MAX_LENGTH];
     private int mTextShadowColor;
     private float mTextValueSize;
     private float mTextUnitSize;
@@ -81,18 +132,29 @@ public class GaugeView extends View {
 
     private Path mNeedleLeftPath;
 
+    private float mDrawScale;
+    private float mDrawTranslateX;
+    private float mDrawTranslateY;
+
     private float mScaleRotation;
+    private ScaleMapping mScaleMapping;
     private float mDivisionValue;
-    private float mSubdivisionAngle;
 
     private float mTargetValue;
-    private float mCurrentValue;
 
-    private float mNeedleVelocity;
-    private float mNeedleAcceleration;
-    private long mNeedleLastMoved = -1;
+    private NeedleAnimator mNeedleAnimator;
+    private FrameStats mFrameStats;
+    private Paint mHudPaint;
+    private char[] mHudChars;
     private boolean mNeedleInitialized;
 
+    private boolean mAttached;
+    // Not drawn anywhere: detached, hidden or clipped away by a scrolling parent.
+    private boolean mCulled = true;
+    private final Rect mVisibleRect = new Rect();
+    private final CullingObserver mCullingObserver = new CullingObserver();
+    private OnCullListener mOnCullListener;
+
     public GaugeView(final Context context, final AttributeSet attrs, final int defStyle) {
         super(context, attrs, defStyle);
         readAttrs(context, attrs, defStyle);
@@ -110,10 +172,16 @@ public class GaugeView extends View {
     private void readAttrs(final Context context, final AttributeSet attrs, final int defStyle) {
         final TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.GaugeView, defStyle, 0);
         mShowScale = a.getBoolean(R.styleable.GaugeView_showScale, SHOW_SCALE);
+        mHardwareRendering = a.getBoolean(R.styleable.GaugeView_hardwareRendering, HARDWARE_RENDERING);
+        mLowDepthDial = a.getBoolean(R.styleable.GaugeView_lowDepthDial, LOW_DEPTH_DIAL);
+        mAsyncDial = a.getBoolean(R.styleable.GaugeView_asyncDial, ASYNC_DIAL);
+        mLogScale = a.getBoolean(R.styleable.GaugeView_logScale, LOG_SCALE);
+        mShowDebugHud = a.getBoolean(R.styleable.GaugeView_showDebugHud, SHOW_DEBUG_HUD);
         mOuterRimWidth = a.getFloat(R.styleable.GaugeView_outerRimWidth, OUTER_RIM_WIDTH);
         mInnerRimWidth = 0.0f;
         mNeedleWidth = a.getFloat(R.styleable.GaugeView_needleWidth, NEEDLE_WIDTH);
         mNeedleHeight = a.getFloat(R.styleable.GaugeView_needleHeight, NEEDLE_HEIGHT);
+        mNeedleStiffness = a.getFloat(R.styleable.GaugeView_needleStiffness, NEEDLE_STIFFNESS);
         mScalePosition = (mShowScale) ? a.getFloat(R.styleable.GaugeView_scalePosition, SCALE_POSITION) : 0.0f;
         mScaleStartValue = a.getFloat(R.styleable.GaugeView_scaleStartValue, SCALE_START_VALUE);
         mScaleEndValue = a.getFloat(R.styleable.GaugeView_scaleEndValue, SCALE_END_VALUE);
@@ -163,18 +231,23 @@ public class GaugeView extends View {
         }
     }
 
-    @TargetApi(11)
     private void init() {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+        if (!mHardwareRendering) {
             setLayerType(View.LAYER_TYPE_SOFTWARE, null);
         }
+        mTextValueChars = mTextValue.isEmpty() ? null : mTextValue.toCharArray();
+        mTextUnitChars = mTextUnit.toCharArray();
         initDrawingRects();
         initDrawingTools();
         initScale();
+        mFrameStats = new FrameStats();
+        mNeedleAnimator = new NeedleAnimator(this, mNeedleStiffness, mFrameStats);
+        mHudChars = new char[HUD_LINE_LENGTH];
     }
 
     public void initDrawingRects() {
         final float add = 0.015f;
+        mOuterRimRect = new RectF(0.0f, 0.0f, 1.0f, 1.0f);
         mInnerRimRect = new RectF(mOuterRimRect.left + mOuterRimWidth, mOuterRimRect.top + mOuterRimWidth, mOuterRimRect.right
                 - mOuterRimWidth, mOuterRimRect.bottom - mOuterRimWidth);
         mFaceRect = new RectF(mInnerRimRect.left + mInnerRimWidth - add, mInnerRimRect.top + mInnerRimWidth - add,
@@ -184,14 +257,94 @@ public class GaugeView extends View {
     }
 
     private void initDrawingTools() {
-        mBackgroundPaint = new Paint();
-        mBackgroundPaint.setFilterBitmap(true);
+        final GaugeStyle.Key key = getStyleKey();
+        GaugeStyle style = GaugeStyle.get(key);
+        if (null == style) {
+            style = GaugeStyle.put(key, createStyle());
+        }
+        mStyle = style;
+        mBackgroundPaint = style.mBackgroundPaint;
+        mFacePaint = style.mFacePaint;
+        mFaceOval = style.mFaceOval;
+        mRangePaints = style.mRangePaints;
+        mNeedleLeftPath = style.mNeedleLeftPath;
+        mNeedleLeftPaint = style.mNeedleLeftPaint;
+        mNeedleArcPaint = style.mNeedleArcPaint;
+        mScaleLinePaint = style.mScaleLinePaint;
+        mScaleTextPaint = style.mScaleTextPaint;
+        mTextValuePaint = style.mTextValuePaint;
+        mTextUnitPaint = style.mTextUnitPaint;
+        mScaleTextShadowPaint = style.mScaleTextShadowPaint;
+        mTextValueShadowPaint = style.mTextValueShadowPaint;
+        mTextUnitShadowPaint = style.mTextUnitShadowPaint;
+        mHudPaint = style.mHudPaint;
+    }
+
+    private GaugeStyle createStyle() {
+        final Paint backgroundPaint = new Paint();
+        backgroundPaint.setFilterBitmap(true);
         setDefaultScaleRangePaints();
         setDefaultNeedlePaths();
-        mNeedleLeftPaint = getDefaultNeedleLeftPaint();
-        mTextValuePaint = getDefaultTextValuePaint();
-        mTextUnitPaint = getDefaultTextUnitPaint();
-   }
+        final Paint scaleTextPaint = getDefaultScaleTextPaint();
+        final Paint textValuePaint = getDefaultTextValuePaint();
+        final Paint textUnitPaint = getDefaultTextUnitPaint();
+        return new GaugeStyle(backgroundPaint, getDefaultFacePaint(), new RectF(0.09f, 0.09f, 0.91f, 0.91f),
+                mRangePaints, mNeedleLeftPath, getDefaultNeedleLeftPaint(), getDefaultNeedleArcPaint(),
+                getDefaultScaleLinePaint(), scaleTextPaint, textValuePaint, textUnitPaint,
+                getShadowPaint(scaleTextPaint), getShadowPaint(textValuePaint), getShadowPaint(textUnitPaint),
+                getDefaultHudPaint());
+    }
+
+    private GaugeStyle.Key getStyleKey() {
+        final float[] params = {mNeedleWidth, mNeedleHeight, mTextValueSize, mTextUnitSize,
+                getResources().getDisplayMetrics().density};
+        final int[] colors = Arrays.copyOf(mRangeColors, mRangeColors.length + 5);
+        colors[mRangeColors.length] = getResources().getColor(R.color.speedometr_grey);
+        colors[mRangeColors.length + 1] = getResources().getColor(R.color.light_blue);
+        colors[mRangeColors.length + 2] = getResources().getColor(R.color.speedometr_text_grey);
+        colors[mRangeColors.length + 3] = mTextShadowColor;
+        colors[mRangeColors.length + 4] = mHardwareRendering ? 1 : 0;
+        return new GaugeStyle.Key(getClass(), params, colors);
+    }
+
+    GaugeStyle getStyle() {
+        return mStyle;
+    }
+
+    /**
+     * Shadow layers on anything but text need a software layer before API 28, so in hardware mode
+     * the shadow is dropped from the paints and text gets an offset pass in the shadow color.
+     */
+    private void setShadowLayer(final Paint paint, final float radius, final float dx, final float dy) {
+        if (!mHardwareRendering) {
+            paint.setShadowLayer(radius, dx, dy, mTextShadowColor);
+        }
+    }
+
+    private Paint getShadowPaint(final Paint textPaint) {
+        if (!mHardwareRendering || 0 == Color.alpha(mTextShadowColor)) {
+            return null;
+        }
+        final Paint paint = new Paint(textPaint);
+        paint.setColor(mTextShadowColor);
+        return paint;
+    }
+
+    public Paint getDefaultHudPaint() {
+        final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setColor(Color.RED);
+        paint.setTypeface(Typeface.MONOSPACE);
+        paint.setTextSize(HUD_TEXT_SIZE_DP * getResources().getDisplayMetrics().density);
+        return paint;
+    }
+
+    public Paint getDefaultFacePaint() {
+        final Paint paint = new Paint();
+        paint.setColor(getResources().getColor(R.color.speedometr_grey));
+        paint.setStrokeWidth(0.1F);
+        paint.setStyle(Paint.Style.STROKE);
+        return paint;
+    }
 
     public void setDefaultNeedlePaths() {
         final float x = 0.5f, y = 0.5f;
@@ -210,6 +363,15 @@ public class GaugeView extends View {
         return paint;
     }
 
+    // Дуга пройденного пути
+    public Paint getDefaultNeedleArcPaint() {
+        final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setStyle(Paint.Style.STROKE);
+        paint.setColor(getResources().getColor(R.color.light_blue));
+        paint.setStrokeWidth(0.1f);
+        return paint;
+    }
+
     public void setDefaultScaleRangePaints() {
         final int length = mRangeColors.length;
         mRangePaints = new Paint[length];
@@ -221,20 +383,35 @@ public class GaugeView extends View {
             mRangePaints[i].setTextSize(0.05f);
             mRangePaints[i].setTypeface(Typeface.SANS_SERIF);
             mRangePaints[i].setTextAlign(Paint.Align.CENTER);
-            mRangePaints[i].setShadowLayer(0.005f, 0.002f, 0.002f, mTextShadowColor);
+            setShadowLayer(mRangePaints[i], 0.005f, 0.002f, 0.002f);
         }
     }
 
+    public Paint getDefaultScaleLinePaint() {
+        final Paint paint = new Paint(mRangePaints[0]);
+        //цвет цифров скорости
+        paint.setColor(getResources().getColor(R.color.speedometr_text_grey));
+        paint.setStrokeWidth(0.01f);
+        return paint;
+    }
+
+    public Paint getDefaultScaleTextPaint() {
+        final Paint paint = getDefaultScaleLinePaint();
+        paint.setStyle(Paint.Style.FILL);
+        paint.setTextSize(paint.getTextSize() * TEXT_MAGNIFIER);
+        return paint;
+    }
+
     // скорость
     public Paint getDefaultTextValuePaint() {
         final Paint paint = new Paint(Paint.LINEAR_TEXT_FLAG | Paint.ANTI_ALIAS_FLAG);
         paint.setColor(getResources().getColor(R.color.light_blue));
         paint.setStyle(Paint.Style.FILL_AND_STROKE);
         paint.setStrokeWidth(0.005f);
-        paint.setTextSize(mTextValueSize);
+        paint.setTextSize(mTextValueSize * TEXT_MAGNIFIER);
         paint.setTextAlign(Paint.Align.CENTER);
         paint.setTypeface(Typeface.DEFAULT_BOLD);
-        paint.setShadowLayer(0.01f, 0.002f, 0.002f, mTextShadowColor);
+        setShadowLayer(paint, 0.01f, 0.002f, 0.002f);
         return paint;
     }
 
@@ -244,10 +421,10 @@ public class GaugeView extends View {
         paint.setColor(getResources().getColor(R.color.light_blue));
         paint.setStyle(Paint.Style.FILL_AND_STROKE);
         paint.setStrokeWidth(0.005f);
-        paint.setTextSize(mTextUnitSize);
+        paint.setTextSize(mTextUnitSize * TEXT_MAGNIFIER);
         paint.setTextAlign(Paint.Align.CENTER);
         paint.setTypeface(Typeface.DEFAULT_BOLD);
-        paint.setShadowLayer(0.01f, 0.002f, 0.002f, mTextShadowColor);
+        setShadowLayer(paint, 0.01f, 0.002f, 0.002f);
         return paint;
     }
 
@@ -258,17 +435,15 @@ public class GaugeView extends View {
         super.onRestoreInstanceState(superState);
 
         mNeedleInitialized = bundle.getBoolean("needleInitialized");
-        mNeedleVelocity = bundle.getFloat("needleVelocity");
-        mNeedleAcceleration = bundle.getFloat("needleAcceleration");
-        mNeedleLastMoved = bundle.getLong("needleLastMoved");
-        mCurrentValue = bundle.getFloat("currentValue");
         mTargetValue = bundle.getFloat("targetValue");
+        mNeedleAnimator.getSpring().setState(bundle.getFloat("currentValue"), bundle.getFloat("needleVelocity"));
+        mNeedleAnimator.setTarget(mTargetValue);
     }
 
     private void initScale() {
         mScaleRotation = (mScaleStartAngle + 180) % 360;
+        mScaleMapping = createScaleMapping();
         mDivisionValue = (mScaleEndValue - mScaleStartValue) / mDivisions;
-        mSubdivisionAngle = (360 - 2 * mScaleStartAngle) / (mDivisions * mSubdivisions);
     }
 
     @Override
@@ -277,10 +452,8 @@ public class GaugeView extends View {
         final Bundle state = new Bundle();
         state.putParcelable("superState", superState);
         state.putBoolean("needleInitialized", mNeedleInitialized);
-        state.putFloat("needleVelocity", mNeedleVelocity);
-        state.putFloat("needleAcceleration", mNeedleAcceleration);
-        state.putLong("needleLastMoved", mNeedleLastMoved);
-        state.putFloat("currentValue", mCurrentValue);
+        state.putFloat("needleVelocity", mNeedleAnimator.getSpring().getVelocity());
+        state.putFloat("currentValue", mNeedleAnimator.getSpring().getPosition());
         state.putFloat("targetValue", mTargetValue);
         return state;
     }
@@ -313,102 +486,523 @@ public class GaugeView extends View {
 
     @Override
     protected void onSizeChanged(final int w, final int h, final int oldw, final int oldh) {
+        mDrawScale = Math.min(w, h);
+        mDrawTranslateX = (mDrawScale == h) ? ((w - mDrawScale) / 2) / mDrawScale : 0;
+        mDrawTranslateY = (mDrawScale == w) ? ((h - mDrawScale) / 2) / mDrawScale : 0;
+        mNeedleAnimator.setRestThreshold(getValuePerPixel());
         drawGauge();
     }
 
+    /**
+     * Smallest value change that moves the needle or the arc by one pixel on the steepest range.
+     */
+    private float getValuePerPixel() {
+        final float radius = Math.max(mNeedleHeight, mFaceRect.width() / 2) * mDrawScale;
+        if (!(radius > 0.0f)) {
+            return 0.01f;
+        }
+        final float degreesPerPixel = (float) Math.toDegrees(1.0 / radius);
+        return degreesPerPixel * mScaleMapping.getMinValuePerDegree();
+    }
+
+    /**
+     * Range values split the sweep into equal divisions; a log scale instead runs continuously from
+     * the smallest positive range value to the largest, e.g. for 1 Mbps to 10 Gbps dials.
+     */
+    private ScaleMapping createScaleMapping() {
+        final float sweep = 360 - 2 * mScaleStartAngle;
+        if (mLogScale) {
+            float min = 0.0f;
+            for (final float value : mRangeValues) {
+                if (value > 0.0f) {
+                    min = value;
+                    break;
+                }
+            }
+            return ScaleMapping.logarithmic(min, mRangeValues[mRangeValues.length - 1], sweep);
+        }
+        return ScaleMapping.ranges(mRangeValues, sweep);
+    }
+
+    public void setLogScale(final boolean logScale) {
+        if (mLogScale == logScale) {
+            return;
+        }
+        mLogScale = logScale;
+        initScale();
+        mNeedleAnimator.setRestThreshold(getValuePerPixel());
+        drawGauge();
+        invalidate();
+    }
+
+    public boolean isLogScale() {
+        return mLogScale;
+    }
+
+    public ScaleMapping getScaleMapping() {
+        return mScaleMapping;
+    }
+
+    /**
+     * Spring constant of the needle; higher is snappier. The needle is critically damped and stops
+     * on the target rather than passing it, even when the target moves while the needle travels.
+     */
+    public void setNeedleStiffness(final float stiffness) {
+        mNeedleStiffness = stiffness;
+        mNeedleAnimator.getSpring().setStiffness(stiffness);
+    }
+
+    public float getNeedleStiffness() {
+        return mNeedleStiffness;
+    }
+
+    /**
+     * Value the needle currently points at, trailing the target while it animates.
+     */
+    public float getCurrentValue() {
+        return mNeedleAnimator.getSpring().getPosition();
+    }
+
+    /**
+     * Called by the animator on the frame callback when the needle has moved.
+     */
+    void onNeedleMoved() {
+        invalidate();
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        final Display display = getDisplay();
+        if (null != display && display.getRefreshRate() > 0) {
+            mFrameStats.setFrameInterval((long) (1e9 / display.getRefreshRate()));
+        }
+        mAttached = true;
+        final ViewTreeObserver observer = getViewTreeObserver();
+        observer.addOnScrollChangedListener(mCullingObserver);
+        observer.addOnGlobalLayoutListener(mCullingObserver);
+        updateCulled();
+    }
+
+    @Override
+    protected void onVisibilityChanged(final View changedView, final int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+        updateCulled();
+    }
+
+    @Override
+    protected void onWindowVisibilityChanged(final int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        updateCulled();
+    }
+
+    /**
+     * Re-evaluates whether any part of the gauge can be seen. A culled gauge keeps taking target
+     * values but does not animate towards them until it is visible again.
+     */
+    private void updateCulled() {
+        if (null == mNeedleAnimator) {
+            // visibility set from attributes while the View constructor runs
+            return;
+        }
+        final boolean culled = !mAttached || View.VISIBLE != getWindowVisibility() || !isShown()
+                || !getLocalVisibleRect(mVisibleRect);
+        if (culled == mCulled) {
+            return;
+        }
+        mCulled = culled;
+        mNeedleAnimator.setPaused(culled);
+        if (!culled) {
+            invalidate();
+        }
+        if (null != mOnCullListener) {
+            mOnCullListener.onCullChanged(this, culled);
+        }
+    }
+
+    /**
+     * True while the gauge cannot be seen, so nothing feeding it needs to run.
+     */
+    public boolean isCulled() {
+        return mCulled;
+    }
+
+    public void setOnCullListener(final OnCullListener listener) {
+        mOnCullListener = listener;
+    }
+
+    boolean isNeedleAnimating() {
+        return mNeedleAnimator.isRunning();
+    }
+
+    /**
+     * Counts every redraw request, the gauge's own and any made from outside.
+     */
+    @Override
+    public void invalidate() {
+        if (null != mFrameStats) {
+            mFrameStats.recordInvalidate(System.nanoTime());
+        }
+        super.invalidate();
+    }
+
+    /**
+     * Copy of the rendering counters since creation or the last {@link #resetFrameStats()}.
+     */
+    public FrameStats.Snapshot getFrameStats() {
+        return mFrameStats.snapshot(System.nanoTime());
+    }
+
+    public void resetFrameStats() {
+        mFrameStats.reset();
+    }
+
+    /**
+     * Overlays draw times, skipped frames and invalidation rate in the top left corner.
+     */
+    public void setShowDebugHud(final boolean showDebugHud) {
+        mShowDebugHud = showDebugHud;
+        invalidate();
+    }
+
+    public boolean isShowDebugHud() {
+        return mShowDebugHud;
+    }
+
+    /**
+     * Switches between the hardware path (dial recorded once into a display list, only needle,
+     * arc and text redrawn per frame) and the legacy software layer.
+     */
+    public void setHardwareRendering(final boolean hardwareRendering) {
+        if (mHardwareRendering == hardwareRendering) {
+            return;
+        }
+        mHardwareRendering = hardwareRendering;
+        setLayerType(hardwareRendering ? View.LAYER_TYPE_NONE : View.LAYER_TYPE_SOFTWARE, null);
+        initDrawingTools();
+        drawGauge();
+        invalidate();
+    }
+
+    public boolean isHardwareRendering() {
+        return mHardwareRendering;
+    }
+
+    private boolean useDialNode() {
+        return mHardwareRendering && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && isHardwareAccelerated();
+    }
+
+    /**
+     * Renders the dial into RGB_565 instead of ARGB_8888, halving its memory. Only takes effect
+     * while the view has an opaque color background, which is baked into the dial; the background
+     * is sampled when the dial is drawn, i.e. on size changes.
+     */
+    public void setLowDepthDial(final boolean lowDepthDial) {
+        if (mLowDepthDial != lowDepthDial) {
+            mLowDepthDial = lowDepthDial;
+            drawGauge();
+            invalidate();
+        }
+    }
+
+    public boolean isLowDepthDial() {
+        return mLowDepthDial;
+    }
+
+    /**
+     * Rasterizes the dial on a background thread, drawing only the face arc as a placeholder until
+     * it is ready. On by default; turning it off renders the dial synchronously on size change.
+     */
+    public void setAsyncDial(final boolean asyncDial) {
+        mAsyncDial = asyncDial;
+    }
+
+    public boolean isAsyncDial() {
+        return mAsyncDial;
+    }
+
+    public void setOnDialReadyListener(final OnDialReadyListener listener) {
+        mOnDialReadyListener = listener;
+    }
+
+    /**
+     * True once the full dial, not the placeholder, is what the next frame draws.
+     */
+    public boolean isDialReady() {
+        return null != mBackground || null != mDialNode;
+    }
+
     private void drawGauge() {
-        if (null != mBackground) {
-            mBackground.recycle();
-        }
-        mBackground = Bitmap.createBitmap(getWidth(), getHeight(), Bitmap.Config.ARGB_8888);
-        final Canvas canvas = new Canvas(mBackground);
-        final float scale = Math.min(getWidth(), getHeight());
-        canvas.scale(scale, scale);
-        canvas.translate((scale == getHeight()) ? ((getWidth() - scale) / 2) / scale : 0
-                , (scale == getWidth()) ? ((getHeight() - scale) / 2) / scale : 0);
+        mDialGeneration++;
+        mDialPending = false;
+        releaseDial();
+        if (null != mDialNode) {
+            discardDialNode();
+        }
+        if (0 >= getWidth() || 0 >= getHeight()) {
+            return;
+        }
+        if (useDialNode()) {
+            recordDialNode();
+            return;
+        }
+        final DialCache cache = DialCache.getInstance();
+        final DialCache.Key key = getDialKey();
+        final DialCache.Entry entry = cache.acquire(key);
+        if (null != entry) {
+            setDial(entry);
+        } else if (mAsyncDial) {
+            renderDialAsync(key);
+        } else {
+            setDial(cache.put(key, renderDial(key)));
+        }
+    }
+
+    private Bitmap renderDial(final DialCache.Key key) {
+        final Bitmap bitmap = Bitmap.createBitmap(key.getWidth(), key.getHeight(), key.getConfig());
+        final Canvas canvas = new Canvas(bitmap);
+        if (Bitmap.Config.RGB_565 == key.getConfig()) {
+            canvas.drawColor(key.getFillColor());
+        }
+        drawDial(canvas);
+        return bitmap;
+    }
+
+    /**
+     * Dial state only changes on the UI thread, which bumps the generation first, so a render that
+     * raced with a change is recycled instead of being cached under a key it does not match.
+     */
+    private void renderDialAsync(final DialCache.Key key) {
+        final int generation = mDialGeneration;
+        mDialPending = true;
+        DialRenderer.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap bitmap = renderDial(key);
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != mDialGeneration) {
+                            bitmap.recycle();
+                            return;
+                        }
+                        mDialPending = false;
+                        setDial(DialCache.getInstance().put(key, bitmap));
+                        invalidate();
+                    }
+                });
+            }
+        });
+    }
+
+    private void setDial(final DialCache.Entry entry) {
+        mDialEntry = entry;
+        mBackground = entry.getBitmap();
+        if (null != mOnDialReadyListener) {
+            mOnDialReadyListener.onDialReady(this);
+        }
+    }
+
+    private void releaseDial() {
+        if (null != mDialEntry) {
+            DialCache.getInstance().release(mDialEntry);
+            mDialEntry = null;
+            mBackground = null;
+        }
+    }
+
+    private DialCache.Key getDialKey() {
+        int fillColor = Color.TRANSPARENT;
+        Bitmap.Config config = Bitmap.Config.ARGB_8888;
+        final Drawable background = getBackground();
+        if (mLowDepthDial && background instanceof ColorDrawable) {
+            final int color = ((ColorDrawable) background).getColor();
+            if (0xFF == Color.alpha(color)) {
+                fillColor = color;
+                config = Bitmap.Config.RGB_565;
+            }
+        }
+        final float[] scale = {mShowScale ? 1 : 0, mOuterRimWidth, mInnerRimWidth, mScalePosition,
+                mScaleStartValue, mScaleEndValue, mScaleStartAngle, mDivisions, mSubdivisions,
+                mDrawScale, mDrawTranslateX, mDrawTranslateY, mLogScale ? 1 : 0};
+        final int[] colors = Arrays.copyOf(mRangeColors, mRangeColors.length + 2);
+        colors[mRangeColors.length] = mTextShadowColor;
+        colors[mRangeColors.length + 1] = mHardwareRendering ? 1 : 0;
+        return new DialCache.Key(getWidth(), getHeight(), config, fillColor, scale, mRangeValues, colors);
+    }
+
+    private void drawDial(final Canvas canvas) {
+        canvas.save();
+        canvas.scale(mDrawScale, mDrawScale);
+        canvas.translate(mDrawTranslateX, mDrawTranslateY);
         drawFace(canvas);
         drawScale(canvas);
+        canvas.restore();
+    }
+
+    @TargetApi(Build.VERSION_CODES.Q)
+    private void recordDialNode() {
+        final boolean first = null == mDialNode;
+        if (first) {
+            mDialNode = new RenderNode("GaugeDial");
+        }
+        mDialNode.setPosition(0, 0, getWidth(), getHeight());
+        final RecordingCanvas canvas = mDialNode.beginRecording(getWidth(), getHeight());
+        try {
+            drawDial(canvas);
+        } finally {
+            mDialNode.endRecording();
+        }
+        if (first && null != mOnDialReadyListener) {
+            mOnDialReadyListener.onDialReady(this);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.Q)
+    private void discardDialNode() {
+        mDialNode.discardDisplayList();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        final ViewTreeObserver observer = getViewTreeObserver();
+        observer.removeOnScrollChangedListener(mCullingObserver);
+        observer.removeOnGlobalLayoutListener(mCullingObserver);
+        mAttached = false;
+        updateCulled();
+        // a render still in flight would come back to a detached view
+        mDialGeneration++;
+        mDialPending = false;
+        releaseDial();
+        if (null != mDialNode) {
+            discardDialNode();
+        }
     }
 
     @Override
     protected void onDraw(final Canvas canvas) {
+        // Steady-state frames must not allocate: everything below uses fields set up in init.
+        final long start = System.nanoTime();
+        if (mCulled && mAttached) {
+            // being drawn, so visible after all, e.g. moved by a parent animation without a scroll
+            updateCulled();
+        }
         drawBackground(canvas);
-        final float scale = Math.min(getWidth(), getHeight());
-        canvas.scale(scale, scale);
-        canvas.translate((scale == getHeight()) ? ((getWidth() - scale) / 2) / scale : 0
-                , (scale == getWidth()) ? ((getHeight() - scale) / 2) / scale : 0);
+        canvas.save();
+        canvas.scale(mDrawScale, mDrawScale);
+        canvas.translate(mDrawTranslateX, mDrawTranslateY);
+        final long needleStart = System.nanoTime();
         drawNeedle(canvas);
+        final long textStart = System.nanoTime();
         drawText(canvas);
-        computeCurrentValue();
+        final long end = System.nanoTime();
+        canvas.restore();
+        mFrameStats.recordDraw(end - start, textStart - needleStart, end - textStart);
+        if (mShowDebugHud) {
+            drawHud(canvas, end);
+        }
+    }
+
+    private void drawHud(final Canvas canvas, final long now) {
+        final char[] line = mHudChars;
+        final float lineHeight = mHudPaint.getTextSize() * 1.2f;
+        int length = ValueFormatter.append("draw p50 ", line, 0);
+        length = ValueFormatter.append((int) (mFrameStats.getDrawPercentile(50) / 1000), line, length);
+        length = ValueFormatter.append("us p99 ", line, length);
+        length = ValueFormatter.append((int) (mFrameStats.getDrawPercentile(99) / 1000), line, length);
+        length = ValueFormatter.append("us", line, length);
+        canvas.drawText(line, 0, length, 0, lineHeight, mHudPaint);
+        length = ValueFormatter.append("frames ", line, 0);
+        length = ValueFormatter.append((int) mFrameStats.getFrames(), line, length);
+        length = ValueFormatter.append(" skipped ", line, length);
+        length = ValueFormatter.append((int) mFrameStats.getSkippedFrames(), line, length);
+        canvas.drawText(line, 0, length, 0, 2 * lineHeight, mHudPaint);
+        length = ValueFormatter.append("inval/s ", line, 0);
+        length = ValueFormatter.append((int) mFrameStats.getInvalidationsPerSecond(now), line, length);
+        length = ValueFormatter.append(" off ", line, length);
+        length = ValueFormatter.append((int) (mFrameStats.getOffTargetNanos() / 1000000), line, length);
+        length = ValueFormatter.append("ms", line, length);
+        canvas.drawText(line, 0, length, 0, 3 * lineHeight, mHudPaint);
     }
 
     private void drawBackground(final Canvas canvas) {
+        if (null == mBackground && null == mDialNode && !mDialPending) {
+            // dial handed back to the cache while detached
+            drawGauge();
+        }
         if (null != mBackground) {
             canvas.drawBitmap(mBackground, 0, 0, mBackgroundPaint);
+        } else if (null != mDialNode) {
+            drawDialNode(canvas);
+        } else {
+            // placeholder while the dial renders in the background
+            canvas.save();
+            canvas.scale(mDrawScale, mDrawScale);
+            canvas.translate(mDrawTranslateX, mDrawTranslateY);
+            drawFace(canvas);
+            canvas.restore();
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.Q)
+    private void drawDialNode(final Canvas canvas) {
+        if (!mDialNode.hasDisplayList()) {
+            // dropped while detached
+            recordDialNode();
+        }
+        if (canvas.isHardwareAccelerated()) {
+            canvas.drawRenderNode(mDialNode);
+        } else {
+            // e.g. View#draw into a bitmap for a screenshot
+            drawDial(canvas);
         }
     }
 
     private void drawFace(final Canvas canvas) {
-        //148
-        //244
-        float width = 0.5f;
-        float height = 0.5f;
-        float center_x, center_y;
-        float radius;
-        radius = 0.41f;
-        Paint paint = new Paint();
-        paint.setColor(getResources().getColor(R.color.speedometr_grey));
-        paint.setStrokeWidth(0.1F);
-        paint.setStyle(Paint.Style.FILL);
-        final RectF oval = new RectF();
-        paint.setStyle(Paint.Style.STROKE);
-        center_x = 0.5f;
-        center_y = 0.5f;
-        oval.set(center_x - radius,
-                center_y - radius,
-                center_x + radius,
-                center_y + radius);
-        canvas.drawArc(oval, 140, 260, false, paint);
+        canvas.drawArc(mFaceOval, 140, 260, false, mFacePaint);
     }
 
 
     private void drawText(final Canvas canvas) {
-        final String textValue = !TextUtils.isEmpty(mTextValue) ? mTextValue : valueString(mCurrentValue);
-        final float textValueWidth = mTextValuePaint.measureText(textValue);
-        final float textUnitWidth = !TextUtils.isEmpty(mTextUnit) ? mTextUnitPaint.measureText(mTextUnit) : 0;
-        final float startX = CENTER;
-        final float startY = CENTER + 0.2f;
-        drawText(canvas, -1, textValue, startX, startY, mTextValuePaint);
-        if (!TextUtils.isEmpty(mTextUnit)) {
-            drawText(canvas, -1, mTextUnit, CENTER, CENTER + 0.3f, mTextUnitPaint);
+        if (null != mTextValueChars) {
+            drawText(canvas, -1, mTextValueChars, mTextValueChars.length, CENTER, CENTER + 0.2f, mTextValuePaint,
+                    mTextValueShadowPaint);
+        } else {
+            final int length = ValueFormatter.format((int) getCurrentValue(), mValueChars);
+            drawText(canvas, -1, mValueChars, length, CENTER, CENTER + 0.2f, mTextValuePaint, mTextValueShadowPaint);
+        }
+        if (0 < mTextUnitChars.length) {
+            drawText(canvas, -1, mTextUnitChars, mTextUnitChars.length, CENTER, CENTER + 0.3f, mTextUnitPaint,
+                    mTextUnitShadowPaint);
         }
     }
 
     private void drawScale(final Canvas canvas) {
         canvas.save();
         canvas.rotate(mScaleRotation, 0.5f, 0.5f);
-        final int totalTicks = mDivisions * mSubdivisions + 1;
-        for (int i = 0; i < totalTicks; i++) {
-            final float y1 = mScaleRect.top + 0.065f;
-            final float y3 = y1 + 0.090f;
+        final float y1 = mScaleRect.top + 0.065f;
+        final float y3 = y1 + 0.090f;
+        for (int i = 0; i < mRangeValues.length; i++) {
             final float value = getValueForTick(i);
-            final Paint paint = getRangePaint(value);
-            float div = mScaleEndValue / (float) mDivisions;
-            float mod = value % div;
-            paint.setStrokeWidth(0.01f);
-            //цвет цифров скорости
-            paint.setColor(getResources().getColor(R.color.speedometr_text_grey));
-            canvas.drawLine(0.5f, y1 - 0.015f, 0.5f, y3 - 0.07f, paint);
-            paint.setStyle(Paint.Style.FILL);
-            drawText(canvas, i, valueString(value), 0.5f, y3, paint);
-            canvas.rotate(mSubdivisionAngle, 0.5f, 0.5f);
+            if (value < mScaleMapping.getMinValue()) {
+                // below the start of a log scale
+                continue;
+            }
+            final float angle = mScaleMapping.getAngle(value);
+            canvas.save();
+            canvas.rotate(angle, 0.5f, 0.5f);
+            canvas.drawLine(0.5f, y1 - 0.015f, 0.5f, y3 - 0.07f, mScaleLinePaint);
+            final int length = ValueFormatter.format((int) value, mValueChars);
+            drawText(canvas, i, mValueChars, length, 0.5f, y3, mScaleTextPaint, mScaleTextShadowPaint);
+            canvas.restore();
         }
         canvas.restore();
     }
 
-    private void drawText(Canvas canvas, int tick, String value, float x, float y, Paint paint) {
-        float originalTextSize = paint.getTextSize();
-        final float magnifier = 100f;
+    private void drawText(final Canvas canvas, final int tick, final char[] text, final int length, final float x,
+                          final float y, final Paint paint, final Paint shadowPaint) {
+        final float magnifier = TEXT_MAGNIFIER;
         canvas.save();
         canvas.scale(1f / magnifier, 1f / magnifier);
         float textWidth = 0;
@@ -422,101 +1016,35 @@ public class GaugeView extends View {
                 textHeight = 1.5f;
                 textWidth = -1;
             }
-            canvas.rotate(120 - tick * mSubdivisionAngle, x * magnifier, y * magnifier);
+            // keep labels upright
+            canvas.rotate(360 - mScaleRotation - mScaleMapping.getAngle(getValueForTick(tick)),
+                    x * magnifier, y * magnifier);
+        }
+        if (null != shadowPaint) {
+            canvas.drawText(text, 0, length, x * magnifier + textWidth + TEXT_SHADOW_OFFSET,
+                    y * magnifier + textHeight + TEXT_SHADOW_OFFSET, shadowPaint);
         }
-        paint.setTextSize(originalTextSize * magnifier);
-        canvas.drawText(value, x * magnifier + textWidth, y * magnifier + textHeight, paint);
+        canvas.drawText(text, 0, length, x * magnifier + textWidth, y * magnifier + textHeight, paint);
         canvas.restore();
-        paint.setTextSize(originalTextSize);
-    }
-
-    private String valueString(final float value) {
-        return String.format("%d", (int) value);
     }
 
     private float getValueForTick(final int tick) {
         return mRangeValues[tick];
     }
 
-    private Paint getRangePaint(final float value) {
-        return mRangePaints[0];
-    }
-
     private void drawNeedle(final Canvas canvas) {
         if (mNeedleInitialized) {
-            final float angle = getAngleForValue(mCurrentValue);
-            final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
-            paint.setStyle(Paint.Style.STROKE);
-            paint.setColor(getResources().getColor(R.color.light_blue));
-            paint.setStrokeWidth(0.1f);
-            float sweepAngle;
-            if (angle != 0 && angle != 240) {
-                if (angle < 240) {
-                    sweepAngle = angle + 120;
-                } else {
-                    sweepAngle = angle - 240;
-                }
-                canvas.drawArc(mFaceRect, 140, sweepAngle, false, paint);
+            final float sweepAngle = mScaleMapping.getAngle(getCurrentValue());
+            if (sweepAngle > 0) {
+                canvas.drawArc(mFaceRect, 140, sweepAngle, false, mNeedleArcPaint);
             }
             canvas.save();
-            canvas.rotate(angle, 0.5f, 0.5f);
+            canvas.rotate(mScaleRotation + sweepAngle, 0.5f, 0.5f);
             canvas.drawPath(mNeedleLeftPath, mNeedleLeftPaint);
             canvas.restore();
         }
     }
 
-    private float getAngleForValue(final float value) {
-        int range = -1;
-        for (int i = 0; i < mRangeValues.length - 1; ++i) {
-            range++;
-            if (value == mRangeValues[i]) {
-                range = i;
-                break;
-            }
-            if (value == mRangeValues[i + 1]) {
-                range = i + 1;
-                break;
-            }
-            if (value > mRangeValues[i] && value < mRangeValues[i + 1]) {
-                break;
-            }
-        }
-        if (range == -1)
-            return 0;
-        float angle = range * mSubdivisionAngle + (value - mRangeValues[range]) * mSubdivisionAngle / (mRangeValues[range + 1] - mRangeValues[range]);
-        return (mScaleRotation + angle) % 360;
-    }
-
-    private void computeCurrentValue() {
-        if (!(Math.abs(mCurrentValue - mTargetValue) > 0.01f)) {
-            return;
-        }
-        if (-1 != mNeedleLastMoved) {
-            final float time = (System.currentTimeMillis() - mNeedleLastMoved) / 1000.0f;
-            final float direction = Math.signum(mNeedleVelocity);
-            if (Math.abs(mNeedleVelocity) < 90.0f) {
-                mNeedleAcceleration = 5.0f * (mTargetValue - mCurrentValue);
-            } else {
-                mNeedleAcceleration = 0.0f;
-            }
-            mNeedleAcceleration = 5.0f * (mTargetValue - mCurrentValue);
-            mCurrentValue += mNeedleVelocity * time;
-            mNeedleVelocity += mNeedleAcceleration * time;
-            if ((mTargetValue - mCurrentValue) * direction < 0.01f * direction) {
-                mCurrentValue = mTargetValue;
-                mNeedleVelocity = 0.0f;
-                mNeedleAcceleration = 0.0f;
-                mNeedleLastMoved = -1L;
-            } else {
-                mNeedleLastMoved = System.currentTimeMillis();
-            }
-            invalidate();
-        } else {
-            mNeedleLastMoved = System.currentTimeMillis();
-            computeCurrentValue();
-        }
-    }
-
     public void setTargetValue(final float value) {
         if (mShowScale) {
             if (value < mScaleStartValue) {
@@ -529,12 +1057,33 @@ public class GaugeView extends View {
         } else {
             mTargetValue = value;
         }
-        mNeedleInitialized = true;
-        invalidate();
+        if (!mNeedleInitialized) {
+            mNeedleInitialized = true;
+            invalidate();
+        }
+        mNeedleAnimator.setTarget(mTargetValue);
     }
 
     public void setShowRangeValues(boolean mShowRangeValues) {
         mNeedleInitialized = true;
         invalidate();
     }
+
+    /**
+     * Scrolling parents and layout passes are the only things that move a gauge in or out of view
+     * without a visibility callback.
+     */
+    private final class CullingObserver implements ViewTreeObserver.OnScrollChangedListener,
+            ViewTreeObserver.OnGlobalLayoutListener {
+
+        @Override
+        public void onScrollChanged() {
+            updateCulled();
+        }
+
+        @Override
+        public void onGlobalLayout() {
+            updateCulled();
+        }
+    }
 }
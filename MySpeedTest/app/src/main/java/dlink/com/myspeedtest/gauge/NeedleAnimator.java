@@ -0,0 +1,117 @@
+package dlink.com.myspeedtest.gauge;
+
+import android.view.Choreographer;
+
+/**
+ * Drives the {@link GaugeView} needle from {@link Choreographer} frame time. It posts at most one
+ * frame callback at a time, so the gauge gets at most one update per vsync, and it stops posting as
+ * soon as the needle would move less than a pixel, so an idle gauge costs no frames at all. It starts
+ * paused and only runs while the gauge is on screen.
+ */
+final class NeedleAnimator implements Choreographer.FrameCallback {
+
+    private static final float NANOS_PER_SECOND = 1e9f;
+
+    private final GaugeView mGauge;
+    private final NeedleSpring mSpring;
+    private final FrameStats mStats;
+    private float mRestThreshold = 0.01f;
+    private long mLastFrameNanos = -1L;
+    private boolean mScheduled;
+    private boolean mPaused = true;
+
+    /**
+     * @param stats receives every animation frame; its frame interval is also the step assumed for
+     *              the first frame after the animator wakes up
+     */
+    NeedleAnimator(final GaugeView gauge, final float stiffness, final FrameStats stats) {
+        mGauge = gauge;
+        mSpring = new NeedleSpring(stiffness);
+        mStats = stats;
+    }
+
+    NeedleSpring getSpring() {
+        return mSpring;
+    }
+
+    /**
+     * Smallest change in value that still moves the needle tip by a pixel.
+     */
+    void setRestThreshold(final float threshold) {
+        mRestThreshold = threshold;
+    }
+
+    void setTarget(final float target) {
+        mSpring.setTarget(target);
+        if (!mPaused && !mSpring.isAtRest(mRestThreshold, mStats.getFrameInterval() / NANOS_PER_SECOND)) {
+            schedule();
+        }
+    }
+
+    /**
+     * Picks the animation up again once the gauge is back on screen.
+     */
+    void resume() {
+        setTarget(mSpring.getTarget());
+    }
+
+    /**
+     * While paused targets are only remembered; unpausing animates from where the needle stopped.
+     */
+    void setPaused(final boolean paused) {
+        if (mPaused == paused) {
+            return;
+        }
+        mPaused = paused;
+        if (paused) {
+            cancel();
+        } else {
+            resume();
+        }
+    }
+
+    void jumpTo(final float value) {
+        cancel();
+        mSpring.setTarget(value);
+        mSpring.settle();
+    }
+
+    void cancel() {
+        if (mScheduled) {
+            Choreographer.getInstance().removeFrameCallback(this);
+            mScheduled = false;
+        }
+        mLastFrameNanos = -1L;
+    }
+
+    boolean isRunning() {
+        return mScheduled;
+    }
+
+    private void schedule() {
+        if (!mScheduled) {
+            mScheduled = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void doFrame(final long frameTimeNanos) {
+        mScheduled = false;
+        final long elapsed = (-1L == mLastFrameNanos) ? mStats.getFrameInterval() : frameTimeNanos - mLastFrameNanos;
+        mStats.recordAnimationFrame(elapsed);
+        final float seconds = elapsed / NANOS_PER_SECOND;
+        final float before = mSpring.getPosition();
+        mSpring.step(seconds);
+        if (mSpring.isAtRest(mRestThreshold, seconds)) {
+            mSpring.settle();
+            mLastFrameNanos = -1L;
+        } else {
+            mLastFrameNanos = frameTimeNanos;
+            schedule();
+        }
+        if (mSpring.getPosition() != before) {
+            mGauge.onNeedleMoved();
+        }
+    }
+}
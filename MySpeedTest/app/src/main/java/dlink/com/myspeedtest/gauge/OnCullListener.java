@@ -0,0 +1,9 @@
+package dlink.com.myspeedtest.gauge;
+
+/**
+ * Told on the UI thread when a {@link GaugeView} goes out of view or comes back, e.g. when it is
+ * scrolled off a dashboard, hidden or detached.
+ */
+public interface OnCullListener {
+    void onCullChanged(GaugeView view, boolean culled);
+}
@@ -0,0 +1,9 @@
+package dlink.com.myspeedtest.gauge;
+
+/**
+ * Told on the UI thread when a {@link GaugeView} has its full dial, either from the cache, from a
+ * synchronous render or once a background render has finished.
+ */
+public interface OnDialReadyListener {
+    void onDialReady(GaugeView view);
+}
@@ -0,0 +1,115 @@
+package dlink.com.myspeedtest.gauge;
+
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.util.AttributeSet;
+import android.view.View;
+
+import dlink.com.myspeedtest.R;
+
+/**
+ * History graph of every throughput sample of a run. Samples are downsampled on arrival with
+ * {@link LttbSeries} into a budget tied to the view width, and the graph is rebuilt in one reused
+ * {@link Path}, so a redraw costs the same however long the test has been running.
+ */
+public class SparklineView extends View {
+
+    /**
+     * Budget of 0 means half the view width in pixels.
+     */
+    public static final int POINT_BUDGET = 0;
+    public static final int LINE_COLOR = Color.WHITE;
+    public static final int FILL_COLOR = Color.argb(0x40, 0xFF, 0xFF, 0xFF);
+    public static final float LINE_WIDTH_DP = 1.5f;
+    private static final int MIN_POINT_BUDGET = 16;
+
+    private int mPointBudget;
+    private LttbSeries mSeries;
+    private Path mPath;
+    private Paint mLinePaint;
+    private Paint mFillPaint;
+
+    public SparklineView(final Context context, final AttributeSet attrs, final int defStyle) {
+        super(context, attrs, defStyle);
+        final TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.SparklineView, defStyle, 0);
+        final float density = getResources().getDisplayMetrics().density;
+        mPointBudget = a.getInteger(R.styleable.SparklineView_pointBudget, POINT_BUDGET);
+        mLinePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mLinePaint.setStyle(Paint.Style.STROKE);
+        mLinePaint.setStrokeJoin(Paint.Join.ROUND);
+        mLinePaint.setColor(a.getColor(R.styleable.SparklineView_lineColor, LINE_COLOR));
+        mLinePaint.setStrokeWidth(a.getDimension(R.styleable.SparklineView_lineWidth, LINE_WIDTH_DP * density));
+        mFillPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mFillPaint.setStyle(Paint.Style.FILL);
+        mFillPaint.setColor(a.getColor(R.styleable.SparklineView_fillColor, FILL_COLOR));
+        a.recycle();
+        mSeries = new LttbSeries(Math.max(MIN_POINT_BUDGET, mPointBudget));
+        mPath = new Path();
+    }
+
+    public SparklineView(final Context context, final AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public SparklineView(final Context context) {
+        this(context, null, 0);
+    }
+
+    /**
+     * Appends a sample; UI thread only. The caller invalidates, typically once per frame.
+     */
+    public void add(final long timeNanos, final float value) {
+        mSeries.add(timeNanos, value);
+    }
+
+    public void clear() {
+        mSeries.clear();
+        invalidate();
+    }
+
+    public LttbSeries getSeries() {
+        return mSeries;
+    }
+
+    @Override
+    protected void onSizeChanged(final int w, final int h, final int oldw, final int oldh) {
+        if (POINT_BUDGET == mPointBudget && w > 0) {
+            mSeries.setBudget(Math.max(MIN_POINT_BUDGET, w / 2));
+        }
+    }
+
+    @Override
+    protected void onDraw(final Canvas canvas) {
+        final LttbSeries series = mSeries;
+        final int count = series.size();
+        if (0 == count) {
+            return;
+        }
+        final long start = series.getTime(0);
+        final long span = Math.max(1, series.getLastTime() - start);
+        final float max = Math.max(series.getMaxValue(), Float.MIN_NORMAL);
+        final float halfStroke = mLinePaint.getStrokeWidth() / 2;
+        final float width = getWidth();
+        final float height = getHeight() - halfStroke;
+        final float bottom = getHeight();
+        mPath.rewind();
+        mPath.moveTo(0, height - series.getValue(0) / max * (height - halfStroke));
+        for (int i = 1; i < count; i++) {
+            mPath.lineTo((float) (series.getTime(i) - start) / span * width,
+                    height - series.getValue(i) / max * (height - halfStroke));
+        }
+        // live edge: the newest sample is still in an open bucket
+        mPath.lineTo(width, height - series.getLastValue() / max * (height - halfStroke));
+        canvas.drawPath(mPath, mLinePaint);
+        if (0 != Color.alpha(mFillPaint.getColor())) {
+            mPath.lineTo(width, bottom);
+            mPath.lineTo(0, bottom);
+            mPath.close();
+            canvas.drawPath(mPath, mFillPaint);
+        }
+    }
+}
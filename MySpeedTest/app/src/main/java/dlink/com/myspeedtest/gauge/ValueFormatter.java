@@ -0,0 +1,55 @@
+package dlink.com.myspeedtest.gauge;
+
+/**
+ * Formats integers into a caller-owned {@code char[]} so per-frame readouts do not allocate.
+ */
+final class ValueFormatter {
+
+    /**
+     * Enough for "-2147483648".
+     */
+    static final int MAX_LENGTH = 11;
+
+    private ValueFormatter() {
+    }
+
+    /**
+     * Writes the decimal digits of {@code value} to the start of {@code out} and returns how many
+     * chars were written.
+     */
+    static int format(final int value, final char[] out) {
+        return append(value, out, 0);
+    }
+
+    /**
+     * Writes the decimal digits of {@code value} to {@code out} at {@code offset} and returns the
+     * offset just past them.
+     */
+    static int append(final int value, final char[] out, final int offset) {
+        if (value == Integer.MIN_VALUE) {
+            return append("-2147483648", out, offset);
+        }
+        int length = offset;
+        int v = value;
+        if (v < 0) {
+            out[length++] = '-';
+            v = -v;
+        }
+        final int start = length;
+        do {
+            out[length++] = (char) ('0' + v % 10);
+            v /= 10;
+        } while (v != 0);
+        for (int i = start, j = length - 1; i < j; i++, j--) {
+            final char c = out[i];
+            out[i] = out[j];
+            out[j] = c;
+        }
+        return length;
+    }
+
+    static int append(final String text, final char[] out, final int offset) {
+        text.getChars(0, text.length(), out, offset);
+        return offset + text.length();
+    }
+}
@@ -0,0 +1,146 @@
+package dlink.com.myspeedtest.history;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Per-day aggregate of stored runs: how many, and the median and spread of their results.
+ */
+public class DailySummary {
+
+    public static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    private final long mDayStartMillis;
+    private final int mRuns;
+    private final float mDownloadMedian;
+    private final float mDownloadP10;
+    private final float mDownloadP90;
+    private final float mUploadMedian;
+    private final float mPingMedian;
+
+    DailySummary(final long dayStartMillis, final int runs, final float[] download, final int downloads,
+                 final float[] upload, final int uploads, final float[] ping, final int pings) {
+        mDayStartMillis = dayStartMillis;
+        mRuns = runs;
+        mDownloadMedian = percentile(download, downloads, 50);
+        mDownloadP10 = percentile(download, downloads, 10);
+        mDownloadP90 = percentile(download, downloads, 90);
+        mUploadMedian = percentile(upload, uploads, 50);
+        mPingMedian = percentile(ping, pings, 50);
+    }
+
+    /**
+     * Summarizes the runs started in {@code [fromMillis, toMillis)}, one entry per day that has
+     * runs. Days start at local midnight for a zone {@code zoneOffsetMillis} ahead of UTC.
+     */
+    public static List<DailySummary> aggregate(final HistoryStore store, final long fromMillis, final long toMillis,
+                                               final long zoneOffsetMillis) throws IOException {
+        final List<DailySummary> days = new ArrayList<>();
+        final HistoryRun run = new HistoryRun();
+        float[] download = new float[64];
+        float[] upload = new float[64];
+        float[] ping = new float[64];
+        int downloads = 0;
+        int uploads = 0;
+        int pings = 0;
+        int runs = 0;
+        long day = Long.MIN_VALUE;
+        final int count = store.getRunCount();
+        for (int i = store.findRun(fromMillis); i < count; i++) {
+            if (!store.readRun(i, run)) {
+                continue;
+            }
+            if (run.getStartMillis() >= toMillis) {
+                break;
+            }
+            final long runDay = dayStart(run.getStartMillis(), zoneOffsetMillis);
+            if (runDay != day) {
+                if (runs > 0) {
+                    days.add(new DailySummary(day, runs, download, downloads, upload, uploads, ping, pings));
+                }
+                day = runDay;
+                runs = downloads = uploads = pings = 0;
+            }
+            runs++;
+            if (runs > download.length) {
+                download = Arrays.copyOf(download, runs * 2);
+                upload = Arrays.copyOf(upload, runs * 2);
+                ping = Arrays.copyOf(ping, runs * 2);
+            }
+            if (!Float.isNaN(run.getDownloadMbps())) {
+                download[downloads++] = run.getDownloadMbps();
+            }
+            if (!Float.isNaN(run.getUploadMbps())) {
+                upload[uploads++] = run.getUploadMbps();
+            }
+            if (!Float.isNaN(run.getPingMillis())) {
+                ping[pings++] = run.getPingMillis();
+            }
+        }
+        if (runs > 0) {
+            days.add(new DailySummary(day, runs, download, downloads, upload, uploads, ping, pings));
+        }
+        return days;
+    }
+
+    static long dayStart(final long timeMillis, final long zoneOffsetMillis) {
+        final long local = timeMillis + zoneOffsetMillis;
+        long days = local / DAY_MILLIS;
+        if (local < 0 && days * DAY_MILLIS != local) {
+            days--;
+        }
+        return days * DAY_MILLIS - zoneOffsetMillis;
+    }
+
+    /**
+     * Nearest-rank percentile of the first {@code count} values; sorts them in place. NaN if empty.
+     */
+    static float percentile(final float[] values, final int count, final int percentile) {
+        if (0 == count) {
+            return Float.NaN;
+        }
+        Arrays.sort(values, 0, count);
+        final int rank = (int) Math.ceil(percentile / 100.0 * count);
+        return values[Math.max(0, rank - 1)];
+    }
+
+    /**
+     * Start of the day in milliseconds since the epoch.
+     */
+    public long getDayStartMillis() {
+        return mDayStartMillis;
+    }
+
+    public int getRuns() {
+        return mRuns;
+    }
+
+    public float getDownloadMedian() {
+        return mDownloadMedian;
+    }
+
+    public float getDownloadP10() {
+        return mDownloadP10;
+    }
+
+    public float getDownloadP90() {
+        return mDownloadP90;
+    }
+
+    public float getUploadMedian() {
+        return mUploadMedian;
+    }
+
+    public float getPingMedian() {
+        return mPingMedian;
+    }
+
+    @Override
+    public String toString() {
+        return "DailySummary{day=" + mDayStartMillis + ", runs=" + mRuns + ", download=" + mDownloadMedian
+                + " [" + mDownloadP10 + ", " + mDownloadP90 + "], upload=" + mUploadMedian
+                + ", ping=" + mPingMedian + "}";
+    }
+}
@@ -0,0 +1,240 @@
+package dlink.com.myspeedtest.history;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams stored samples out as gzip-compressed CSV or as a compact binary format. Records are
+ * encoded straight into one fixed-size buffer that is handed to the output whenever it fills, so
+ * memory use does not depend on how much history is exported and no per-sample strings or boxed
+ * numbers are created.
+ * <p>
+ * CSV columns are {@code run_start_ms,phase,elapsed_ns,total_bytes,mbps,rtt_ms,conn_1_mbps..conn_8_mbps};
+ * unknown values are left empty.
+ * <p>
+ * The binary format starts with {@link #BINARY_MAGIC} and a version byte. Each run follows as a
+ * {@link #TAG_RUN} byte, the start time and the sample count as variable-length integers; each of
+ * its samples as the phase, the elapsed time and byte count as deltas from the previous sample of
+ * the run (zigzag variable-length integers), mbps and RTT as floats, then the connection count and
+ * one float per connection. A {@link #TAG_END} byte closes the stream.
+ */
+public class HistoryExporter {
+
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    public static final int BINARY_MAGIC = 0x53545831; // "STX1"
+    public static final int BINARY_VERSION = 1;
+    public static final int TAG_RUN = 1;
+    public static final int TAG_END = 0;
+
+    private static final byte[] CSV_HEADER = ("run_start_ms,phase,elapsed_ns,total_bytes,mbps,rtt_ms,"
+            + "conn_1_mbps,conn_2_mbps,conn_3_mbps,conn_4_mbps,conn_5_mbps,conn_6_mbps,conn_7_mbps,conn_8_mbps\n")
+            .getBytes();
+    private static final byte[][] PHASE_NAMES = {
+            "idle".getBytes(), "download".getBytes(), "upload".getBytes()
+    };
+    /**
+     * Longest CSV line: 3 longs, 1 phase name and 10 fixed-point floats with separators.
+     */
+    private static final int MAX_RECORD = 3 * 21 + 9 + 10 * 24 + 14;
+    private static final long FRACTION_SCALE = 1000;
+
+    private final HistoryStore mStore;
+    private final byte[] mBuffer = new byte[BUFFER_SIZE];
+    private final HistoryRun mRun = new HistoryRun();
+    private final HistorySample mSample = new HistorySample();
+    private int mLength;
+    private OutputStream mOut;
+    private long mExported;
+
+    public HistoryExporter(final HistoryStore store) {
+        mStore = store;
+    }
+
+    /**
+     * Writes the samples of runs {@code [fromRun, toRun)} as gzip-compressed CSV and finishes, but
+     * does not close, {@code out}.
+     */
+    public void exportCsv(final int fromRun, final int toRun, final OutputStream out) throws IOException {
+        final GZIPOutputStream gzip = new GZIPOutputStream(out, BUFFER_SIZE);
+        mOut = gzip;
+        mLength = 0;
+        mExported = 0;
+        put(CSV_HEADER);
+        for (int r = fromRun; r < toRun; r++) {
+            if (!mStore.readRun(r, mRun)) {
+                continue;
+            }
+            final long end = mRun.getFirstSample() + mRun.getSampleCount();
+            for (long i = mRun.getFirstSample(); i < end; i++) {
+                mStore.readSample(i, mSample);
+                ensure(MAX_RECORD);
+                putLong(mRun.getStartMillis());
+                putByte(',');
+                put(PHASE_NAMES[mSample.getPhase().ordinal()]);
+                putByte(',');
+                putLong(mSample.getElapsedNanos());
+                putByte(',');
+                putLong(mSample.getTotalBytes());
+                putByte(',');
+                putFixed(mSample.getMbps());
+                putByte(',');
+                putFixed(mSample.getRttMillis());
+                for (int c = 0; c < HistorySample.MAX_CONNECTIONS; c++) {
+                    putByte(',');
+                    if (c < mSample.getConnections()) {
+                        putFixed(mSample.getConnectionMbps(c));
+                    }
+                }
+                putByte('\n');
+                mExported++;
+            }
+        }
+        flush();
+        gzip.finish();
+        mOut = null;
+    }
+
+    /**
+     * Writes the samples of runs {@code [fromRun, toRun)} in the binary format; does not close
+     * {@code out}.
+     */
+    public void exportBinary(final int fromRun, final int toRun, final OutputStream out) throws IOException {
+        mOut = out;
+        mLength = 0;
+        mExported = 0;
+        putInt(BINARY_MAGIC);
+        putByte(BINARY_VERSION);
+        for (int r = fromRun; r < toRun; r++) {
+            if (!mStore.readRun(r, mRun)) {
+                continue;
+            }
+            ensure(1 + 2 * 10);
+            putByte(TAG_RUN);
+            putVarLong(mRun.getStartMillis());
+            putVarLong(mRun.getSampleCount());
+            long elapsed = 0;
+            long bytes = 0;
+            final long end = mRun.getFirstSample() + mRun.getSampleCount();
+            for (long i = mRun.getFirstSample(); i < end; i++) {
+                mStore.readSample(i, mSample);
+                ensure(1 + 2 * 10 + 2 * 4 + 1 + 4 * HistorySample.MAX_CONNECTIONS);
+                putByte(mSample.getPhase().ordinal());
+                putVarLong(zigzag(mSample.getElapsedNanos() - elapsed));
+                putVarLong(zigzag(mSample.getTotalBytes() - bytes));
+                elapsed = mSample.getElapsedNanos();
+                bytes = mSample.getTotalBytes();
+                putInt(Float.floatToIntBits(mSample.getMbps()));
+                putInt(Float.floatToIntBits(mSample.getRttMillis()));
+                putByte(mSample.getConnections());
+                for (int c = 0; c < mSample.getConnections(); c++) {
+                    putInt(Float.floatToIntBits(mSample.getConnectionMbps(c)));
+                }
+                mExported++;
+            }
+        }
+        ensure(1);
+        putByte(TAG_END);
+        flush();
+        out.flush();
+        mOut = null;
+    }
+
+    /**
+     * Samples written by the last export.
+     */
+    public long getExported() {
+        return mExported;
+    }
+
+    static long zigzag(final long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private void ensure(final int bytes) throws IOException {
+        if (mLength + bytes > mBuffer.length) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        if (mLength > 0) {
+            mOut.write(mBuffer, 0, mLength);
+            mLength = 0;
+        }
+    }
+
+    private void put(final byte[] bytes) throws IOException {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, mBuffer, mLength, bytes.length);
+        mLength += bytes.length;
+    }
+
+    private void putByte(final int b) {
+        mBuffer[mLength++] = (byte) b;
+    }
+
+    private void putInt(final int value) {
+        mBuffer[mLength++] = (byte) (value >>> 24);
+        mBuffer[mLength++] = (byte) (value >>> 16);
+        mBuffer[mLength++] = (byte) (value >>> 8);
+        mBuffer[mLength++] = (byte) value;
+    }
+
+    private void putVarLong(final long value) {
+        long v = value;
+        while ((v & ~0x7FL) != 0) {
+            mBuffer[mLength++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        mBuffer[mLength++] = (byte) v;
+    }
+
+    /**
+     * Decimal digits of {@code value}, like {@link Long#toString(long)} without the String.
+     */
+    private void putLong(final long value) {
+        if (value == Long.MIN_VALUE) {
+            for (final byte b : Long.toString(value).getBytes()) {
+                putByte(b);
+            }
+            return;
+        }
+        long v = value;
+        if (v < 0) {
+            putByte('-');
+            v = -v;
+        }
+        final int start = mLength;
+        do {
+            mBuffer[mLength++] = (byte) ('0' + v % 10);
+            v /= 10;
+        } while (v != 0);
+        for (int i = start, j = mLength - 1; i < j; i++, j--) {
+            final byte b = mBuffer[i];
+            mBuffer[i] = mBuffer[j];
+            mBuffer[j] = b;
+        }
+    }
+
+    /**
+     * {@code value} rounded to three decimals; nothing for NaN or infinities.
+     */
+    private void putFixed(final float value) {
+        if (Float.isNaN(value) || Float.isInfinite(value)) {
+            return;
+        }
+        long scaled = Math.round(Math.abs((double) value) * FRACTION_SCALE);
+        if (value < 0 && scaled != 0) {
+            putByte('-');
+        }
+        putLong(scaled / FRACTION_SCALE);
+        putByte('.');
+        scaled %= FRACTION_SCALE;
+        for (long unit = FRACTION_SCALE / 10; unit > 0; unit /= 10) {
+            putByte('0' + (int) (scaled / unit));
+            scaled %= unit;
+        }
+    }
+}
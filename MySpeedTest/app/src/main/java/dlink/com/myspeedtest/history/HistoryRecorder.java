@@ -0,0 +1,112 @@
+package dlink.com.myspeedtest.history;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import dlink.com.myspeedtest.engine.LoadedLatencyMonitor;
+import dlink.com.myspeedtest.engine.Phase;
+import dlink.com.myspeedtest.engine.SampleListener;
+import dlink.com.myspeedtest.engine.ThroughputEngine;
+import dlink.com.myspeedtest.engine.ThroughputResult;
+
+/**
+ * Stages an engine's sample stream in a {@link HistoryStore}, thinned to one sample per interval or
+ * at full resolution with {@link #EVERY_SAMPLE}, passing every sample on to the next listener
+ * unchanged. A failed write stops recording for the rest of the run rather than failing the test.
+ */
+public class HistoryRecorder implements SampleListener {
+
+    public static final long DEFAULT_INTERVAL_MILLIS = 1000;
+    /**
+     * Interval that keeps every sample the engine produces.
+     */
+    public static final long EVERY_SAMPLE = 0;
+
+    private final HistoryStore mStore;
+    private final SampleListener mNext;
+    private final long mIntervalNanos;
+    private LoadedLatencyMonitor mMonitor;
+    private ThroughputEngine mEngine;
+    private final long[] mConnectionBytes = new long[HistorySample.MAX_CONNECTIONS];
+    private final long[] mLastConnectionBytes = new long[HistorySample.MAX_CONNECTIONS];
+    private final float[] mConnectionMbps = new float[HistorySample.MAX_CONNECTIONS];
+
+    private Phase mPhase = Phase.IDLE;
+    private long mNextNanos;
+    private long mLastNanos;
+    private long mLastBytes;
+    private IOException mFailure;
+
+    public HistoryRecorder(final HistoryStore store, final SampleListener next) {
+        this(store, next, DEFAULT_INTERVAL_MILLIS);
+    }
+
+    public HistoryRecorder(final HistoryStore store, final SampleListener next, final long intervalMillis) {
+        mStore = store;
+        mNext = next;
+        mIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(EVERY_SAMPLE, intervalMillis));
+    }
+
+    /**
+     * Source of the loaded round trip stored with each sample.
+     */
+    public void setLatencyMonitor(final LoadedLatencyMonitor monitor) {
+        mMonitor = monitor;
+    }
+
+    /**
+     * Tags the following samples; call before each phase starts, as elapsed times restart at 0.
+     * Per-connection rates are recorded when {@code engine} is the one producing the samples.
+     */
+    public void setPhase(final Phase phase, final ThroughputEngine engine) {
+        mPhase = phase;
+        mEngine = engine;
+        mNextNanos = mIntervalNanos;
+        mLastNanos = 0;
+        mLastBytes = 0;
+        Arrays.fill(mLastConnectionBytes, 0);
+    }
+
+    @Override
+    public void onSample(final long elapsedNanos, final long totalBytes, final float mbps) {
+        if (null != mNext) {
+            mNext.onSample(elapsedNanos, totalBytes, mbps);
+        }
+        if (null != mFailure || elapsedNanos < mNextNanos) {
+            return;
+        }
+        final float rate = ThroughputResult.toMbps(totalBytes - mLastBytes, elapsedNanos - mLastNanos);
+        final long rtt = (null == mMonitor) ? 0 : mMonitor.getLastRttNanos();
+        final int connections = (null == mEngine) ? 0 : mEngine.getConnectionBytes(mConnectionBytes);
+        for (int i = 0; i < connections; i++) {
+            mConnectionMbps[i] = ThroughputResult.toMbps(mConnectionBytes[i] - mLastConnectionBytes[i],
+                    elapsedNanos - mLastNanos);
+            mLastConnectionBytes[i] = mConnectionBytes[i];
+        }
+        try {
+            mStore.appendSample(mPhase, elapsedNanos, totalBytes, rate, (rtt > 0) ? rtt / 1e6f : Float.NaN,
+                    mConnectionMbps, connections);
+        } catch (final IOException e) {
+            mFailure = e;
+        }
+        mLastNanos = elapsedNanos;
+        mLastBytes = totalBytes;
+        while (mIntervalNanos > 0 && mNextNanos <= elapsedNanos) {
+            mNextNanos += mIntervalNanos;
+        }
+    }
+
+    /**
+     * Commits the staged samples under {@code run}, or discards them if a write failed.
+     */
+    public void commit(final HistoryRun run) throws IOException {
+        if (null != mFailure) {
+            final IOException failure = mFailure;
+            mFailure = null;
+            mStore.abortRun();
+            throw failure;
+        }
+        mStore.commitRun(run);
+    }
+}
@@ -0,0 +1,95 @@
+package dlink.com.myspeedtest.history;
+
+/**
+ * One stored test run. Instances are reusable: {@link HistoryStore#readRun(int, HistoryRun)} fills
+ * a caller-owned instance so scanning thousands of runs does not allocate.
+ */
+public final class HistoryRun {
+
+    public static final int FLAG_DOWNLOAD_CONVERGED = 1;
+    public static final int FLAG_UPLOAD_CONVERGED = 1 << 1;
+    public static final int FLAG_DOWNLOAD_CLIENT_LIMITED = 1 << 2;
+    public static final int FLAG_UPLOAD_CLIENT_LIMITED = 1 << 3;
+
+    long mStartMillis;
+    long mFirstSample;
+    int mSampleCount;
+    int mFlags;
+    float mDownloadMbps;
+    float mUploadMbps;
+    float mPingMillis;
+    float mJitterMillis;
+    long mDownloadBytes;
+    long mUploadBytes;
+
+    public HistoryRun() {
+    }
+
+    /**
+     * Summary of a finished run, ready to be committed; NaN marks a phase that did not complete.
+     */
+    public HistoryRun(final long startMillis, final float downloadMbps, final float uploadMbps,
+                      final float pingMillis, final float jitterMillis, final long downloadBytes,
+                      final long uploadBytes, final int flags) {
+        mStartMillis = startMillis;
+        mDownloadMbps = downloadMbps;
+        mUploadMbps = uploadMbps;
+        mPingMillis = pingMillis;
+        mJitterMillis = jitterMillis;
+        mDownloadBytes = downloadBytes;
+        mUploadBytes = uploadBytes;
+        mFlags = flags;
+    }
+
+    /**
+     * Wall clock time the run started, in milliseconds since the epoch.
+     */
+    public long getStartMillis() {
+        return mStartMillis;
+    }
+
+    /**
+     * Index of the run's first sample in the store.
+     */
+    public long getFirstSample() {
+        return mFirstSample;
+    }
+
+    public int getSampleCount() {
+        return mSampleCount;
+    }
+
+    public int getFlags() {
+        return mFlags;
+    }
+
+    public float getDownloadMbps() {
+        return mDownloadMbps;
+    }
+
+    public float getUploadMbps() {
+        return mUploadMbps;
+    }
+
+    public float getPingMillis() {
+        return mPingMillis;
+    }
+
+    public float getJitterMillis() {
+        return mJitterMillis;
+    }
+
+    public long getDownloadBytes() {
+        return mDownloadBytes;
+    }
+
+    public long getUploadBytes() {
+        return mUploadBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "HistoryRun{start=" + mStartMillis + ", download=" + mDownloadMbps + ", upload=" + mUploadMbps
+                + ", ping=" + mPingMillis + ", jitter=" + mJitterMillis + ", samples=" + mSampleCount + "}";
+    }
+}
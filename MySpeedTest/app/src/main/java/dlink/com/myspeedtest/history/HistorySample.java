@@ -0,0 +1,64 @@
+package dlink.com.myspeedtest.history;
+
+import dlink.com.myspeedtest.engine.Phase;
+
+/**
+ * One stored throughput sample, filled in place by {@link HistoryStore#readSample(long, HistorySample)}.
+ */
+public final class HistorySample {
+
+    /**
+     * Per-connection rates kept for at most this many connections.
+     */
+    public static final int MAX_CONNECTIONS = 8;
+
+    private static final Phase[] PHASES = Phase.values();
+
+    long mElapsedNanos;
+    long mTotalBytes;
+    float mMbps;
+    float mRttMillis;
+    int mPhase;
+    int mConnections;
+    final float[] mConnectionMbps = new float[MAX_CONNECTIONS];
+
+    public Phase getPhase() {
+        return PHASES[mPhase];
+    }
+
+    /**
+     * Time since the start of the phase.
+     */
+    public long getElapsedNanos() {
+        return mElapsedNanos;
+    }
+
+    /**
+     * Bytes moved since the start of the phase.
+     */
+    public long getTotalBytes() {
+        return mTotalBytes;
+    }
+
+    public float getMbps() {
+        return mMbps;
+    }
+
+    /**
+     * Loaded round trip at the time of the sample, NaN when none was measured.
+     */
+    public float getRttMillis() {
+        return mRttMillis;
+    }
+
+    /**
+     * Number of per-connection rates recorded, 0 when only the aggregate is known.
+     */
+    public int getConnections() {
+        return mConnections;
+    }
+
+    public float getConnectionMbps(final int connection) {
+        return mConnectionMbps[connection];
+    }
+}
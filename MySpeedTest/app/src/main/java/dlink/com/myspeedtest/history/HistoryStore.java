@@ -0,0 +1,358 @@
+package dlink.com.myspeedtest.history;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import dlink.com.myspeedtest.engine.Phase;
+
+/**
+ * Append-only history of test runs in two files of fixed-size binary records: {@code runs.bin} with
+ * one checksummed summary per run and {@code samples.bin} with the throughput samples the runs
+ * point into. Reads go through memory maps and never parse anything, so scanning thousands of runs
+ * takes milliseconds.
+ * <p>
+ * A run is written samples first; the run record is the commit and is only written once the samples
+ * are on disk. Opening the store drops a torn or corrupt trailing run record and any samples no
+ * committed run points at, which is all a crash in the middle of a write can leave behind.
+ * <p>
+ * Runs are kept in start time order: a start time earlier than the previous run's, e.g. after the
+ * wall clock was set back, is stored as the previous run's. A sparse in-memory index holds every
+ * {@link #INDEX_STRIDE}th start time for range lookups. All methods are synchronized; one thread
+ * can record while another reads.
+ */
+public class HistoryStore implements Closeable {
+
+    public static final String RUNS_FILE = "runs.bin";
+    public static final String SAMPLES_FILE = "samples.bin";
+
+    static final int RUN_SIZE = 64;
+    static final int SAMPLE_SIZE = 64;
+    static final int INDEX_STRIDE = 64;
+    static final int RUN_MAGIC = 0x53545231; // "STR1"
+
+    private static final int RUN_CRC_OFFSET = 8;
+    private static final int STAGING_SAMPLES = 1024;
+    private static final int SAMPLE_WINDOW = 4096;
+
+    private final FileChannel mRuns;
+    private final FileChannel mSamples;
+
+    private final byte[] mScratch = new byte[RUN_SIZE];
+    private final ByteBuffer mRecord = ByteBuffer.wrap(mScratch);
+    private final CRC32 mCrc = new CRC32();
+    private final ByteBuffer mStaging = ByteBuffer.allocateDirect(STAGING_SAMPLES * SAMPLE_SIZE);
+    private final HistoryRun mLookup = new HistoryRun();
+
+    private int mRunCount;
+    private long mSampleCount;
+    private long mPendingSamples;
+    private long mLastStartMillis = Long.MIN_VALUE;
+    private long[] mIndex = new long[16];
+
+    private MappedByteBuffer mRunMap;
+    private int mRunMapCount;
+    private MappedByteBuffer mSampleMap;
+    private long mSampleMapStart;
+    private long mSampleMapCount;
+
+    /**
+     * Opens or creates the store in {@code dir}, recovering from an interrupted write.
+     */
+    public HistoryStore(final File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("cannot create " + dir);
+        }
+        mRuns = new RandomAccessFile(new File(dir, RUNS_FILE), "rw").getChannel();
+        try {
+            mSamples = new RandomAccessFile(new File(dir, SAMPLES_FILE), "rw").getChannel();
+        } catch (final IOException e) {
+            mRuns.close();
+            throw e;
+        }
+        try {
+            recover();
+        } catch (final IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private void recover() throws IOException {
+        final long sampleFileCount = mSamples.size() / SAMPLE_SIZE;
+        int count = (int) (mRuns.size() / RUN_SIZE);
+        long sampleEnd = 0;
+        final HistoryRun run = new HistoryRun();
+        while (count > 0) {
+            mRecord.clear();
+            readFully(mRuns, mRecord, (long) (count - 1) * RUN_SIZE);
+            if (decodeRun(run)) {
+                sampleEnd = run.mFirstSample + run.mSampleCount;
+                if (sampleEnd <= sampleFileCount) {
+                    mLastStartMillis = run.mStartMillis;
+                    break;
+                }
+            }
+            count--;
+            sampleEnd = 0;
+        }
+        mRuns.truncate((long) count * RUN_SIZE);
+        mSamples.truncate(sampleEnd * SAMPLE_SIZE);
+        mRunCount = count;
+        mSampleCount = sampleEnd;
+        mIndex = new long[Math.max(16, count / INDEX_STRIDE + 1)];
+        for (int i = 0; i < count; i += INDEX_STRIDE) {
+            mRecord.clear();
+            readFully(mRuns, mRecord, (long) i * RUN_SIZE);
+            mIndex[i / INDEX_STRIDE] = mRecord.getLong(8);
+        }
+    }
+
+    // --- writing
+
+    /**
+     * Stages one sample of the run being recorded. Nothing is visible to readers until
+     * {@link #commitRun(HistoryRun)}.
+     *
+     * @param rttMillis      loaded round trip at the time of the sample, NaN if unknown
+     * @param connectionMbps per-connection rates, may be null; at most {@link HistorySample#MAX_CONNECTIONS} are kept
+     */
+    public synchronized void appendSample(final Phase phase, final long elapsedNanos, final long totalBytes,
+                                          final float mbps, final float rttMillis, final float[] connectionMbps,
+                                          final int connections) throws IOException {
+        if (!mStaging.hasRemaining()) {
+            flushStaging();
+        }
+        final int kept = (null == connectionMbps) ? 0 : Math.min(connections, HistorySample.MAX_CONNECTIONS);
+        mStaging.putLong(elapsedNanos);
+        mStaging.putLong(totalBytes);
+        mStaging.putFloat(mbps);
+        mStaging.putFloat(rttMillis);
+        mStaging.putInt((phase.ordinal() << 8) | kept);
+        for (int i = 0; i < HistorySample.MAX_CONNECTIONS; i++) {
+            mStaging.putFloat((i < kept) ? connectionMbps[i] : 0.0f);
+        }
+        mStaging.putInt(0);
+        mPendingSamples++;
+    }
+
+    /**
+     * Makes the staged samples durable, then appends {@code run} pointing at them. The run's sample
+     * range is filled in.
+     */
+    public synchronized void commitRun(final HistoryRun run) throws IOException {
+        flushStaging();
+        mSamples.force(false);
+        run.mFirstSample = mSampleCount;
+        run.mSampleCount = (int) mPendingSamples;
+        run.mStartMillis = Math.max(run.mStartMillis, mLastStartMillis);
+        encodeRun(run);
+        mRecord.clear();
+        writeFully(mRuns, mRecord, (long) mRunCount * RUN_SIZE);
+        mRuns.force(false);
+        if (0 == mRunCount % INDEX_STRIDE) {
+            final int slot = mRunCount / INDEX_STRIDE;
+            if (slot == mIndex.length) {
+                mIndex = Arrays.copyOf(mIndex, mIndex.length * 2);
+            }
+            mIndex[slot] = run.mStartMillis;
+        }
+        mRunCount++;
+        mSampleCount += mPendingSamples;
+        mPendingSamples = 0;
+        mLastStartMillis = run.mStartMillis;
+    }
+
+    /**
+     * Discards the samples staged since the last commit.
+     */
+    public synchronized void abortRun() throws IOException {
+        mStaging.clear();
+        mPendingSamples = 0;
+        mSamples.truncate(mSampleCount * SAMPLE_SIZE);
+    }
+
+    private void flushStaging() throws IOException {
+        mStaging.flip();
+        final long staged = mStaging.remaining() / SAMPLE_SIZE;
+        writeFully(mSamples, mStaging, (mSampleCount + mPendingSamples - staged) * SAMPLE_SIZE);
+        mStaging.clear();
+    }
+
+    private void encodeRun(final HistoryRun run) {
+        final ByteBuffer r = mRecord;
+        r.clear();
+        r.putInt(RUN_MAGIC);
+        r.putInt(0);
+        r.putLong(run.mStartMillis);
+        r.putLong(run.mFirstSample);
+        r.putInt(run.mSampleCount);
+        r.putInt(run.mFlags);
+        r.putFloat(run.mDownloadMbps);
+        r.putFloat(run.mUploadMbps);
+        r.putFloat(run.mPingMillis);
+        r.putFloat(run.mJitterMillis);
+        r.putLong(run.mDownloadBytes);
+        r.putLong(run.mUploadBytes);
+        r.putInt(4, checksum());
+    }
+
+    /**
+     * Decodes {@link #mScratch}; false when the record is torn or corrupt.
+     */
+    private boolean decodeRun(final HistoryRun run) {
+        final ByteBuffer r = mRecord;
+        if (r.getInt(0) != RUN_MAGIC || r.getInt(4) != checksum()) {
+            return false;
+        }
+        run.mStartMillis = r.getLong(8);
+        run.mFirstSample = r.getLong(16);
+        run.mSampleCount = r.getInt(24);
+        run.mFlags = r.getInt(28);
+        run.mDownloadMbps = r.getFloat(32);
+        run.mUploadMbps = r.getFloat(36);
+        run.mPingMillis = r.getFloat(40);
+        run.mJitterMillis = r.getFloat(44);
+        run.mDownloadBytes = r.getLong(48);
+        run.mUploadBytes = r.getLong(56);
+        return true;
+    }
+
+    private int checksum() {
+        mCrc.reset();
+        mCrc.update(mScratch, RUN_CRC_OFFSET, RUN_SIZE - RUN_CRC_OFFSET);
+        return (int) mCrc.getValue();
+    }
+
+    // --- reading
+
+    public synchronized int getRunCount() {
+        return mRunCount;
+    }
+
+    /**
+     * Total committed samples over all runs.
+     */
+    public synchronized long getSampleCount() {
+        return mSampleCount;
+    }
+
+    /**
+     * Fills {@code out} with run {@code index}; returns false if the record fails its checksum.
+     */
+    public synchronized boolean readRun(final int index, final HistoryRun out) throws IOException {
+        if (index < 0 || index >= mRunCount) {
+            throw new IndexOutOfBoundsException("run " + index + " of " + mRunCount);
+        }
+        if (mRunMapCount != mRunCount) {
+            mRunMap = mRuns.map(FileChannel.MapMode.READ_ONLY, 0, (long) mRunCount * RUN_SIZE);
+            mRunMapCount = mRunCount;
+        }
+        mRunMap.position(index * RUN_SIZE);
+        mRunMap.get(mScratch);
+        return decodeRun(out);
+    }
+
+    /**
+     * Fills {@code out} with sample {@code index}; a run's samples are
+     * {@code [getFirstSample(), getFirstSample() + getSampleCount())}.
+     */
+    public synchronized void readSample(final long index, final HistorySample out) throws IOException {
+        if (index < 0 || index >= mSampleCount) {
+            throw new IndexOutOfBoundsException("sample " + index + " of " + mSampleCount);
+        }
+        if (index < mSampleMapStart || index >= mSampleMapStart + mSampleMapCount) {
+            // Map a bounded window so address space use does not grow with the history.
+            mSampleMapStart = index - index % SAMPLE_WINDOW;
+            mSampleMapCount = Math.min(SAMPLE_WINDOW, mSampleCount - mSampleMapStart);
+            mSampleMap = mSamples.map(FileChannel.MapMode.READ_ONLY, mSampleMapStart * SAMPLE_SIZE,
+                    mSampleMapCount * SAMPLE_SIZE);
+        }
+        final MappedByteBuffer map = mSampleMap;
+        final int offset = (int) (index - mSampleMapStart) * SAMPLE_SIZE;
+        out.mElapsedNanos = map.getLong(offset);
+        out.mTotalBytes = map.getLong(offset + 8);
+        out.mMbps = map.getFloat(offset + 16);
+        out.mRttMillis = map.getFloat(offset + 20);
+        final int tag = map.getInt(offset + 24);
+        out.mPhase = (tag >>> 8) & 0xFF;
+        out.mConnections = Math.min(tag & 0xFF, HistorySample.MAX_CONNECTIONS);
+        for (int i = 0; i < out.mConnections; i++) {
+            out.mConnectionMbps[i] = map.getFloat(offset + 28 + 4 * i);
+        }
+    }
+
+    /**
+     * Index of the first run started at or after {@code timeMillis}; {@link #getRunCount()} if none.
+     */
+    public synchronized int findRun(final long timeMillis) throws IOException {
+        if (0 == mRunCount) {
+            return 0;
+        }
+        final int slots = (mRunCount - 1) / INDEX_STRIDE + 1;
+        int low = 0;
+        int high = slots - 1;
+        // last index slot starting before timeMillis
+        int slot = -1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            if (mIndex[mid] < timeMillis) {
+                slot = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (slot < 0) {
+            return 0;
+        }
+        final int end = Math.min(mRunCount, (slot + 1) * INDEX_STRIDE);
+        for (int i = slot * INDEX_STRIDE + 1; i < end; i++) {
+            readRun(i, mLookup);
+            if (mLookup.mStartMillis >= timeMillis) {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        mRunMap = null;
+        mSampleMap = null;
+        try {
+            mRuns.close();
+        } finally {
+            if (null != mSamples) {
+                mSamples.close();
+            }
+        }
+    }
+
+    private static void readFully(final FileChannel channel, final ByteBuffer buffer, final long position)
+            throws IOException {
+        long at = position;
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, at);
+            if (read < 0) {
+                throw new IOException("unexpected end of " + channel);
+            }
+            at += read;
+        }
+        buffer.flip();
+    }
+
+    private static void writeFully(final FileChannel channel, final ByteBuffer buffer, final long position)
+            throws IOException {
+        long at = position;
+        while (buffer.hasRemaining()) {
+            at += channel.write(buffer, at);
+        }
+    }
+}
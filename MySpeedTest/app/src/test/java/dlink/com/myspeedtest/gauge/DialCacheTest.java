@@ -0,0 +1,131 @@
+package dlink.com.myspeedtest.gauge;
+
+import android.graphics.Bitmap;
+import android.view.View;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class DialCacheTest {
+
+    private static final float[] SCALE = {0.0f, 60.0f, 10.0f};
+    private static final float[] RANGES = {0.0f, 50.0f, 100.0f};
+    private static final int[] COLORS = {0xFFFFFFFF, 0};
+
+    @Test
+    public void keysCompareByContent() {
+        final DialCache.Key a = key(100);
+        final DialCache.Key b = key(100);
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+        assertNotEquals(a, key(101));
+        assertNotEquals(a, new DialCache.Key(100, 100, Bitmap.Config.RGB_565, 0, SCALE, RANGES, COLORS));
+        assertNotEquals(a, new DialCache.Key(100, 100, Bitmap.Config.ARGB_8888, 0, SCALE, RANGES,
+                new int[]{0xFFFF0000, 0}));
+    }
+
+    @Test
+    public void sharesEntriesUntilReleased() {
+        final DialCache cache = new DialCache(Long.MAX_VALUE);
+        assertNull(cache.acquire(key(100)));
+        final DialCache.Entry first = cache.put(key(100), bitmap(100));
+        final DialCache.Entry second = cache.acquire(key(100));
+        assertSame(first, second);
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        cache.release(first);
+        cache.release(second);
+        assertFalse(first.getBitmap().isRecycled());
+        cache.evictUnused();
+        assertTrue(first.getBitmap().isRecycled());
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getBytes());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedUnreferencedEntriesOverBudget() {
+        final long dialBytes = bitmap(100).getByteCount();
+        final DialCache cache = new DialCache(2 * dialBytes);
+        final DialCache.Entry a = cache.put(key(100), bitmap(100));
+        final DialCache.Entry b = cache.put(key(100, 1), bitmap(100));
+        cache.release(a);
+        cache.release(b);
+        cache.release(cache.acquire(key(100)));
+        // b is now the least recently used
+        final DialCache.Entry c = cache.put(key(100, 2), bitmap(100));
+        assertTrue(b.getBitmap().isRecycled());
+        assertFalse(a.getBitmap().isRecycled());
+        assertFalse(c.getBitmap().isRecycled());
+        assertEquals(1, cache.getEvictions());
+        assertEquals(2 * dialBytes, cache.getBytes());
+    }
+
+    @Test
+    public void neverRecyclesEntriesInUse() {
+        final DialCache cache = new DialCache(0);
+        final DialCache.Entry entry = cache.put(key(100), bitmap(100));
+        assertFalse(entry.getBitmap().isRecycled());
+        assertSame(entry, cache.acquire(key(100)));
+        cache.release(entry);
+        assertFalse(entry.getBitmap().isRecycled());
+        cache.release(entry);
+        assertTrue(entry.getBitmap().isRecycled());
+    }
+
+    @Test
+    public void racingPutKeepsCachedBitmap() {
+        final DialCache cache = new DialCache(Long.MAX_VALUE);
+        final DialCache.Entry first = cache.put(key(100), bitmap(100));
+        final Bitmap duplicate = bitmap(100);
+        assertSame(first, cache.put(key(100), duplicate));
+        assertTrue(duplicate.isRecycled());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void equalGaugesShareOneDial() {
+        final DialCache cache = DialCache.getInstance();
+        final long misses = cache.getMisses();
+        final long hits = cache.getHits();
+        layout(new GaugeView(ApplicationProvider.getApplicationContext()));
+        layout(new GaugeView(ApplicationProvider.getApplicationContext()));
+        // the first view may find a dial left by another test, the second must
+        assertTrue(cache.getMisses() - misses <= 1);
+        assertEquals(2, cache.getHits() - hits + cache.getMisses() - misses);
+        assertTrue(cache.getHits() - hits >= 1);
+    }
+
+    private static void layout(final GaugeView view) {
+        view.setAsyncDial(false);
+        final int spec = View.MeasureSpec.makeMeasureSpec(300, View.MeasureSpec.EXACTLY);
+        view.measure(spec, spec);
+        view.layout(0, 0, 300, 300);
+    }
+
+    private static DialCache.Key key(final int size) {
+        return key(size, 0);
+    }
+
+    private static DialCache.Key key(final int size, final int variant) {
+        final float[] scale = SCALE.clone();
+        scale[0] = variant;
+        return new DialCache.Key(size, size, Bitmap.Config.ARGB_8888, 0, scale, RANGES, COLORS);
+    }
+
+    private static Bitmap bitmap(final int size) {
+        return Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+    }
+}
@@ -0,0 +1,84 @@
+package dlink.com.myspeedtest.gauge;
+
+import android.app.Activity;
+import android.os.Looper;
+import android.view.View;
+import android.widget.FrameLayout;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class GaugeDashboardTest {
+
+    @Test
+    public void identicalGaugesShareStyle() {
+        final GaugeView first = new GaugeView(ApplicationProvider.getApplicationContext());
+        final GaugeView second = new GaugeView(ApplicationProvider.getApplicationContext());
+        assertSame(first.getStyle(), second.getStyle());
+        second.setHardwareRendering(false);
+        assertNotSame(first.getStyle(), second.getStyle());
+        final GaugeView third = new GaugeView(ApplicationProvider.getApplicationContext());
+        third.setHardwareRendering(false);
+        assertSame(second.getStyle(), third.getStyle());
+    }
+
+    @Test
+    public void hiddenGaugeStopsAnimating() {
+        final GaugeView gauge = showGauge();
+        assertFalse(gauge.isCulled());
+        gauge.setTargetValue(50.0f);
+        assertTrue(gauge.isNeedleAnimating());
+
+        gauge.setVisibility(View.GONE);
+        assertTrue(gauge.isCulled());
+        assertFalse(gauge.isNeedleAnimating());
+        gauge.setTargetValue(80.0f);
+        assertFalse(gauge.isNeedleAnimating());
+
+        gauge.setVisibility(View.VISIBLE);
+        shadowOf(Looper.getMainLooper()).idle();
+        assertFalse(gauge.isCulled());
+        assertTrue(gauge.isNeedleAnimating());
+    }
+
+    @Test
+    public void detachedGaugeIsCulled() {
+        final GaugeView gauge = showGauge();
+        final int[] changes = new int[1];
+        gauge.setOnCullListener(new OnCullListener() {
+            @Override
+            public void onCullChanged(final GaugeView view, final boolean culled) {
+                changes[0]++;
+            }
+        });
+        ((FrameLayout) gauge.getParent()).removeView(gauge);
+        assertTrue(gauge.isCulled());
+        assertFalse(gauge.isNeedleAnimating());
+        assertEquals(1, changes[0]);
+    }
+
+    private static GaugeView showGauge() {
+        final Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        final FrameLayout root = new FrameLayout(activity);
+        final GaugeView gauge = new GaugeView(activity);
+        gauge.setAsyncDial(false);
+        root.addView(gauge, new FrameLayout.LayoutParams(300, 300));
+        activity.setContentView(root);
+        shadowOf(Looper.getMainLooper()).idle();
+        return gauge;
+    }
+}
@@ -0,0 +1,133 @@
+package dlink.com.myspeedtest.gauge;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.RectF;
+import android.view.View;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class GaugeViewAllocationTest {
+
+    private static final int FRAMES = 500;
+
+    @Test
+    public void formatsIntegersIntoBuffer() {
+        final char[] buffer = new char[ValueFormatter.MAX_LENGTH];
+        final int[] values = {0, 7, 42, 100, -5, 2147483647, Integer.MIN_VALUE};
+        for (final int value : values) {
+            final int length = ValueFormatter.format(value, buffer);
+            assertEquals(String.valueOf(value), new String(buffer, 0, length));
+        }
+    }
+
+    @Test
+    public void steadyStateFrameDoesNotAllocate() {
+        final GaugeView view = newGauge();
+        assertFramesDoNotAllocate(view);
+        assertEquals(2 * FRAMES, view.getFrameStats().getFrames());
+    }
+
+    @Test
+    public void debugHudDoesNotAllocate() {
+        final GaugeView view = newGauge();
+        view.setShowDebugHud(true);
+        assertFramesDoNotAllocate(view);
+    }
+
+    private static GaugeView newGauge() {
+        final GaugeView view = new GaugeView(ApplicationProvider.getApplicationContext());
+        view.setAsyncDial(false);
+        final int spec = View.MeasureSpec.makeMeasureSpec(300, View.MeasureSpec.EXACTLY);
+        view.measure(spec, spec);
+        view.layout(0, 0, 300, 300);
+        return view;
+    }
+
+    private static void assertFramesDoNotAllocate(final GaugeView view) {
+        view.setTargetValue(42.0f);
+        final Canvas canvas = new NullCanvas();
+        // warm-up: class init, JIT, lazily created state
+        for (int i = 0; i < FRAMES; i++) {
+            view.onDraw(canvas);
+        }
+        final long calibration = allocatedBytes();
+        final long overhead = allocatedBytes() - calibration;
+        final long before = allocatedBytes();
+        for (int i = 0; i < FRAMES; i++) {
+            view.setTargetValue(i % 100);
+            view.onDraw(canvas);
+        }
+        final long allocated = allocatedBytes() - before;
+        assertTrue("frames allocated " + allocated + " bytes", allocated <= overhead);
+    }
+
+    private static long allocatedBytes() {
+        final com.sun.management.ThreadMXBean bean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Swallows every call onDraw makes so only the view's own allocations are measured.
+     */
+    private static final class NullCanvas extends Canvas {
+
+        @Override
+        public int save() {
+            return 1;
+        }
+
+        @Override
+        public void restore() {
+        }
+
+        @Override
+        public void scale(final float sx, final float sy) {
+        }
+
+        @Override
+        public void translate(final float dx, final float dy) {
+        }
+
+        @Override
+        public void rotate(final float degrees) {
+        }
+
+        @Override
+        public void drawBitmap(final Bitmap bitmap, final float left, final float top, final Paint paint) {
+        }
+
+        @Override
+        public void drawArc(final RectF oval, final float startAngle, final float sweepAngle, final boolean useCenter,
+                            final Paint paint) {
+        }
+
+        @Override
+        public void drawPath(final Path path, final Paint paint) {
+        }
+
+        @Override
+        public void drawText(final char[] text, final int index, final int count, final float x, final float y,
+                             final Paint paint) {
+        }
+
+        @Override
+        public void drawText(final String text, final float x, final float y, final Paint paint) {
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package dlink.com.myspeedtest.history;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+
+import dlink.com.myspeedtest.engine.Phase;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class HistoryExporterTest {
+
+    private static final long START = 1600000000000L;
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void exportsCompressedCsv() throws IOException {
+        try (HistoryStore store = newStore(2, 2)) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final HistoryExporter exporter = new HistoryExporter(store);
+            exporter.exportCsv(0, store.getRunCount(), out);
+            assertEquals(4, exporter.getExported());
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                    new GZIPInputStream(new ByteArrayInputStream(out.toByteArray())), "US-ASCII"))) {
+                assertTrue(in.readLine().startsWith("run_start_ms,phase,elapsed_ns,total_bytes,mbps,rtt_ms,"));
+                assertEquals(START + ",download,1000000000,125000,1.000,12.500,0.250,0.750,,,,,,", in.readLine());
+                assertEquals(START + ",upload,2000000000,250000,2.000,,0.500,1.500,,,,,,", in.readLine());
+                assertTrue(in.readLine().startsWith((START + 1) + ",download,"));
+                in.readLine();
+                assertNull(in.readLine());
+            }
+        }
+    }
+
+    @Test
+    public void exportsBinary() throws IOException {
+        try (HistoryStore store = newStore(2, 2)) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            new HistoryExporter(store).exportBinary(1, 2, out);
+            final DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+            assertEquals(HistoryExporter.BINARY_MAGIC, in.readInt());
+            assertEquals(HistoryExporter.BINARY_VERSION, in.readByte());
+            assertEquals(HistoryExporter.TAG_RUN, in.readByte());
+            assertEquals(START + 1, readVarLong(in));
+            assertEquals(2, readVarLong(in));
+            assertEquals(Phase.DOWNLOAD.ordinal(), in.readByte());
+            assertEquals(1000000000L, unzigzag(readVarLong(in)));
+            assertEquals(125000L, unzigzag(readVarLong(in)));
+            assertEquals(1.0f, in.readFloat(), 0.0f);
+            assertEquals(12.5f, in.readFloat(), 0.0f);
+            assertEquals(2, in.readByte());
+            assertEquals(0.25f, in.readFloat(), 0.0f);
+            assertEquals(0.75f, in.readFloat(), 0.0f);
+            assertEquals(Phase.UPLOAD.ordinal(), in.readByte());
+            assertEquals(1000000000L, unzigzag(readVarLong(in)));
+            assertEquals(125000L, unzigzag(readVarLong(in)));
+            assertEquals(2.0f, in.readFloat(), 0.0f);
+            assertTrue(Float.isNaN(in.readFloat()));
+            assertEquals(2, in.readByte());
+            in.readFloat();
+            in.readFloat();
+            assertEquals(HistoryExporter.TAG_END, in.readByte());
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    public void exportsManySamplesInBoundedMemory() throws IOException {
+        final int samples = 200000;
+        try (HistoryStore store = newStore(samples / 1000, 1000)) {
+            final CountingStream out = new CountingStream();
+            final HistoryExporter exporter = new HistoryExporter(store);
+            final long start = System.nanoTime();
+            exporter.exportCsv(0, store.getRunCount(), out);
+            exporter.exportBinary(0, store.getRunCount(), out);
+            final long elapsed = System.nanoTime() - start;
+            assertEquals(samples, exporter.getExported());
+            assertTrue(out.mMaxWrite <= HistoryExporter.BUFFER_SIZE);
+            assertTrue("export took " + elapsed / 1000000 + " ms", elapsed < 5000000000L);
+        }
+    }
+
+    private HistoryStore newStore(final int runs, final int samplesPerRun) throws IOException {
+        final HistoryStore store = new HistoryStore(mFolder.newFolder());
+        final float[] connections = {0.25f, 0.75f};
+        for (int r = 0; r < runs; r++) {
+            for (int i = 1; i <= samplesPerRun; i++) {
+                store.appendSample((i % 2 == 1) ? Phase.DOWNLOAD : Phase.UPLOAD, i * 1000000000L, i * 125000L, i,
+                        (i % 2 == 1) ? 12.5f : Float.NaN, connections, connections.length);
+                connections[0] = 0.5f;
+                connections[1] = 1.5f;
+            }
+            connections[0] = 0.25f;
+            connections[1] = 0.75f;
+            store.commitRun(new HistoryRun(START + r, 1, 1, 1, 0, 0, 0, 0));
+        }
+        return store;
+    }
+
+    private static long readVarLong(final DataInputStream in) throws IOException {
+        long value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static long unzigzag(final long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static final class CountingStream extends OutputStream {
+
+        int mMaxWrite;
+
+        @Override
+        public void write(final int b) {
+            mMaxWrite = Math.max(mMaxWrite, 1);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+            mMaxWrite = Math.max(mMaxWrite, len);
+        }
+    }
+}
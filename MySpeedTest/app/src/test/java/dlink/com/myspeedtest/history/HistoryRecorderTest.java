@@ -0,0 +1,61 @@
+package dlink.com.myspeedtest.history;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+
+import dlink.com.myspeedtest.engine.Phase;
+
+import static org.junit.Assert.assertEquals;
+
+public class HistoryRecorderTest {
+
+    private static final long TICK = 100000000L;
+    private static final long START = 1600000000000L;
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void thinsToInterval() throws IOException {
+        try (HistoryStore store = new HistoryStore(mFolder.newFolder())) {
+            final HistoryRun run = record(store, new HistoryRecorder(store, null), 35);
+            assertEquals(3, run.getSampleCount());
+            final HistorySample sample = new HistorySample();
+            store.readSample(run.getFirstSample(), sample);
+            assertEquals(10 * TICK, sample.getElapsedNanos());
+            assertEquals(80.0f, sample.getMbps(), 1e-3f);
+        }
+    }
+
+    @Test
+    public void keepsEverySample() throws IOException {
+        try (HistoryStore store = new HistoryStore(mFolder.newFolder())) {
+            final HistoryRun run = record(store, new HistoryRecorder(store, null, HistoryRecorder.EVERY_SAMPLE),
+                    35);
+            assertEquals(35, run.getSampleCount());
+            final HistorySample sample = new HistorySample();
+            store.readSample(run.getFirstSample() + 34, sample);
+            assertEquals(Phase.DOWNLOAD, sample.getPhase());
+            assertEquals(35 * TICK, sample.getElapsedNanos());
+            assertEquals(35 * 1000000L, sample.getTotalBytes());
+            assertEquals(80.0f, sample.getMbps(), 1e-3f);
+        }
+    }
+
+    /**
+     * Feeds {@code ticks} samples 100 ms apart at a steady 1 MB per tick and commits them.
+     */
+    private static HistoryRun record(final HistoryStore store, final HistoryRecorder recorder, final int ticks)
+            throws IOException {
+        recorder.setPhase(Phase.DOWNLOAD, null);
+        for (int i = 1; i <= ticks; i++) {
+            recorder.onSample(i * TICK, i * 1000000L, 80.0f);
+        }
+        final HistoryRun run = new HistoryRun(START, 80.0f, Float.NaN, Float.NaN, Float.NaN, ticks * 1000000L, 0, 0);
+        recorder.commit(run);
+        return run;
+    }
+}
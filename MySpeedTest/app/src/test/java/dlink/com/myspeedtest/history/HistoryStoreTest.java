@@ -0,0 +1,222 @@
+package dlink.com.myspeedtest.history;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import dlink.com.myspeedtest.engine.Phase;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HistoryStoreTest {
+
+    private static final long HOUR = 60L * 60 * 1000;
+    private static final long START = 1600000000000L;
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void readsBackRunsAndSamples() throws IOException {
+        final File dir = mFolder.newFolder();
+        try (HistoryStore store = new HistoryStore(dir)) {
+            appendRun(store, START, 50.0f, 3);
+            appendRun(store, START + HOUR, 60.0f, 2);
+        }
+        try (HistoryStore store = new HistoryStore(dir)) {
+            assertEquals(2, store.getRunCount());
+            assertEquals(5, store.getSampleCount());
+            final HistoryRun run = new HistoryRun();
+            assertTrue(store.readRun(1, run));
+            assertEquals(START + HOUR, run.getStartMillis());
+            assertEquals(60.0f, run.getDownloadMbps(), 0.0f);
+            assertEquals(3, run.getFirstSample());
+            assertEquals(2, run.getSampleCount());
+            final HistorySample sample = new HistorySample();
+            store.readSample(run.getFirstSample() + 1, sample);
+            assertEquals(Phase.UPLOAD, sample.getPhase());
+            assertEquals(2000000000L, sample.getElapsedNanos());
+            assertEquals(61.0f, sample.getMbps(), 0.0f);
+            assertEquals(4, sample.getConnections());
+            assertEquals(16.0f, sample.getConnectionMbps(3), 0.0f);
+        }
+    }
+
+    @Test
+    public void findsRunsByTime() throws IOException {
+        try (HistoryStore store = new HistoryStore(mFolder.newFolder())) {
+            final int runs = 3 * HistoryStore.INDEX_STRIDE + 5;
+            for (int i = 0; i < runs; i++) {
+                appendRun(store, START + i * HOUR, i, 0);
+            }
+            assertEquals(0, store.findRun(0));
+            assertEquals(0, store.findRun(START));
+            assertEquals(1, store.findRun(START + 1));
+            assertEquals(HistoryStore.INDEX_STRIDE, store.findRun(START + HistoryStore.INDEX_STRIDE * HOUR));
+            assertEquals(100, store.findRun(START + 99 * HOUR + 1));
+            assertEquals(runs, store.findRun(START + runs * HOUR));
+        }
+    }
+
+    @Test
+    public void keepsRunsInTimeOrder() throws IOException {
+        try (HistoryStore store = new HistoryStore(mFolder.newFolder())) {
+            appendRun(store, START, 1.0f, 0);
+            appendRun(store, START - HOUR, 2.0f, 0);
+            final HistoryRun run = new HistoryRun();
+            store.readRun(1, run);
+            assertEquals(START, run.getStartMillis());
+        }
+    }
+
+    @Test
+    public void recoversFromTornRunRecord() throws IOException {
+        final File dir = mFolder.newFolder();
+        try (HistoryStore store = new HistoryStore(dir)) {
+            appendRun(store, START, 50.0f, 3);
+            appendRun(store, START + HOUR, 60.0f, 2);
+        }
+        truncate(new File(dir, HistoryStore.RUNS_FILE), HistoryStore.RUN_SIZE + 20);
+        try (HistoryStore store = new HistoryStore(dir)) {
+            assertEquals(1, store.getRunCount());
+            assertEquals(3, store.getSampleCount());
+            assertEquals(3L * HistoryStore.SAMPLE_SIZE, new File(dir, HistoryStore.SAMPLES_FILE).length());
+            appendRun(store, START + 2 * HOUR, 70.0f, 1);
+            assertEquals(2, store.getRunCount());
+        }
+    }
+
+    @Test
+    public void dropsSamplesOfUncommittedRun() throws IOException {
+        final File dir = mFolder.newFolder();
+        try (HistoryStore store = new HistoryStore(dir)) {
+            appendRun(store, START, 50.0f, 3);
+            for (int i = 0; i < 2000; i++) {
+                store.appendSample(Phase.DOWNLOAD, i, i, 1.0f, Float.NaN, null, 0);
+            }
+            // closed without a commit, as if the process had died
+        }
+        try (HistoryStore store = new HistoryStore(dir)) {
+            assertEquals(1, store.getRunCount());
+            assertEquals(3, store.getSampleCount());
+        }
+    }
+
+    @Test
+    public void dropsCorruptTrailingRun() throws IOException {
+        final File dir = mFolder.newFolder();
+        try (HistoryStore store = new HistoryStore(dir)) {
+            appendRun(store, START, 50.0f, 1);
+            appendRun(store, START + HOUR, 60.0f, 1);
+        }
+        try (RandomAccessFile file = new RandomAccessFile(new File(dir, HistoryStore.RUNS_FILE), "rw")) {
+            file.seek(HistoryStore.RUN_SIZE + 40);
+            file.write(0x7F);
+        }
+        try (HistoryStore store = new HistoryStore(dir)) {
+            assertEquals(1, store.getRunCount());
+            final HistoryRun run = new HistoryRun();
+            assertTrue(store.readRun(0, run));
+            assertEquals(50.0f, run.getDownloadMbps(), 0.0f);
+        }
+    }
+
+    @Test
+    public void abortDiscardsStagedSamples() throws IOException {
+        try (HistoryStore store = new HistoryStore(mFolder.newFolder())) {
+            store.appendSample(Phase.DOWNLOAD, 1, 1, 1.0f, Float.NaN, null, 0);
+            store.abortRun();
+            appendRun(store, START, 50.0f, 2);
+            final HistoryRun run = new HistoryRun();
+            store.readRun(0, run);
+            assertEquals(0, run.getFirstSample());
+            assertEquals(2, store.getSampleCount());
+        }
+    }
+
+    @Test
+    public void detectsCorruptRunOnRead() throws IOException {
+        final File dir = mFolder.newFolder();
+        try (HistoryStore store = new HistoryStore(dir)) {
+            appendRun(store, START, 50.0f, 0);
+            appendRun(store, START + HOUR, 60.0f, 0);
+        }
+        try (RandomAccessFile file = new RandomAccessFile(new File(dir, HistoryStore.RUNS_FILE), "rw")) {
+            file.seek(40);
+            file.write(0x7F);
+        }
+        try (HistoryStore store = new HistoryStore(dir)) {
+            assertEquals(2, store.getRunCount());
+            assertFalse(store.readRun(0, new HistoryRun()));
+        }
+    }
+
+    @Test
+    public void aggregatesDailyMedians() throws IOException {
+        try (HistoryStore store = new HistoryStore(mFolder.newFolder())) {
+            final long day = DailySummary.dayStart(START, 0);
+            final float[] first = {10, 30, 20};
+            for (int i = 0; i < first.length; i++) {
+                appendRun(store, day + i * HOUR, first[i], 0);
+            }
+            appendRun(store, day + DailySummary.DAY_MILLIS, 40, 0);
+            appendRun(store, day + 2 * DailySummary.DAY_MILLIS + HOUR, Float.NaN, 0);
+            final List<DailySummary> days = DailySummary.aggregate(store, day, day + 2 * DailySummary.DAY_MILLIS, 0);
+            assertEquals(2, days.size());
+            assertEquals(day, days.get(0).getDayStartMillis());
+            assertEquals(3, days.get(0).getRuns());
+            assertEquals(20.0f, days.get(0).getDownloadMedian(), 0.0f);
+            assertEquals(10.0f, days.get(0).getDownloadP10(), 0.0f);
+            assertEquals(30.0f, days.get(0).getDownloadP90(), 0.0f);
+            assertEquals(40.0f, days.get(1).getDownloadMedian(), 0.0f);
+            final List<DailySummary> last = DailySummary.aggregate(store, day + 2 * DailySummary.DAY_MILLIS,
+                    Long.MAX_VALUE, 0);
+            assertEquals(1, last.size());
+            assertTrue(Float.isNaN(last.get(0).getDownloadMedian()));
+        }
+    }
+
+    @Test
+    public void aggregatesThousandsOfRunsQuickly() throws IOException {
+        try (HistoryStore store = new HistoryStore(mFolder.newFolder())) {
+            final int runs = 5000;
+            for (int i = 0; i < runs; i++) {
+                appendRun(store, START + i * HOUR / 4, i % 100, 0);
+            }
+            // warm-up
+            DailySummary.aggregate(store, 0, Long.MAX_VALUE, 0);
+            final long start = System.nanoTime();
+            final List<DailySummary> days = DailySummary.aggregate(store, 0, Long.MAX_VALUE, 0);
+            final long elapsed = System.nanoTime() - start;
+            int total = 0;
+            for (final DailySummary summary : days) {
+                total += summary.getRuns();
+            }
+            assertEquals(runs, total);
+            assertTrue("aggregation took " + elapsed / 1000000 + " ms", elapsed < 200000000L);
+        }
+    }
+
+    private static void appendRun(final HistoryStore store, final long startMillis, final float downloadMbps,
+                                  final int samples) throws IOException {
+        final float[] connections = {10, 12, 14, 16};
+        for (int i = 0; i < samples; i++) {
+            store.appendSample(Phase.UPLOAD, (i + 1) * 1000000000L, (i + 1) * 1000000L, downloadMbps + i,
+                    5.0f, connections, connections.length);
+        }
+        store.commitRun(new HistoryRun(startMillis, downloadMbps, downloadMbps / 2, 10.0f, 1.0f, 1000, 500, 0));
+    }
+
+    private static void truncate(final File file, final long length) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(length);
+        }
+    }
+}
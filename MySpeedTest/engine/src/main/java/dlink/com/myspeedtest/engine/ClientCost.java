@@ -0,0 +1,108 @@
+package dlink.com.myspeedtest.engine;
+
+/**
+ * What a throughput phase cost the client: CPU time of the I/O threads, how their wall time split
+ * between waiting in the selector and handling ready sockets, and the garbage collection that ran
+ * meanwhile. A phase is client-limited when an I/O thread had no idle time left or collection
+ * pauses ate a noticeable part of it, so the result says more about the device than the network.
+ */
+public class ClientCost {
+
+    /**
+     * Share of its wall time an I/O thread may spend busy before it counts as saturated.
+     */
+    public static final float CLIENT_LIMITED_LOAD = 0.9f;
+    /**
+     * Share of the phase spent in collection pauses that counts as client-limited.
+     */
+    public static final float CLIENT_LIMITED_GC_SHARE = 0.1f;
+
+    public static final ClientCost UNKNOWN = new ClientCost(0, 0, CpuMeter.UNSUPPORTED, 0, 0, 0.0f,
+            CpuMeter.UNSUPPORTED, CpuMeter.UNSUPPORTED, 0);
+
+    private final long mElapsedNanos;
+    private final long mBytes;
+    private final long mCpuNanos;
+    private final long mBlockedNanos;
+    private final long mProcessingNanos;
+    private final float mMaxThreadLoad;
+    private final long mGcCount;
+    private final long mGcPauseNanos;
+    private final long mWakeups;
+
+    /**
+     * @param cpuNanos        CPU time of all I/O threads, -1 where the runtime cannot tell
+     * @param blockedNanos    time the I/O threads spent waiting in the selector
+     * @param processingNanos time the I/O threads spent handling ready sockets
+     * @param maxThreadLoad   busy share of the busiest I/O thread, 0 to 1
+     * @param gcCount         collections during the phase, -1 where the runtime cannot tell
+     * @param gcPauseNanos    time spent collecting during the phase, -1 where the runtime cannot tell
+     * @param wakeups         selector wakeups of all I/O threads
+     */
+    public ClientCost(final long elapsedNanos, final long bytes, final long cpuNanos, final long blockedNanos,
+                      final long processingNanos, final float maxThreadLoad, final long gcCount,
+                      final long gcPauseNanos, final long wakeups) {
+        mElapsedNanos = elapsedNanos;
+        mBytes = bytes;
+        mCpuNanos = cpuNanos;
+        mBlockedNanos = blockedNanos;
+        mProcessingNanos = processingNanos;
+        mMaxThreadLoad = maxThreadLoad;
+        mGcCount = gcCount;
+        mGcPauseNanos = gcPauseNanos;
+        mWakeups = wakeups;
+    }
+
+    public long getCpuNanos() {
+        return mCpuNanos;
+    }
+
+    /**
+     * Bytes moved per millisecond of I/O thread CPU time, -1 where CPU time is unknown.
+     */
+    public float getBytesPerCpuMilli() {
+        if (mCpuNanos < 0) {
+            return CpuMeter.UNSUPPORTED;
+        }
+        return (0 == mCpuNanos) ? 0.0f : (float) (mBytes * 1e6 / mCpuNanos);
+    }
+
+    public long getBlockedNanos() {
+        return mBlockedNanos;
+    }
+
+    public long getProcessingNanos() {
+        return mProcessingNanos;
+    }
+
+    public float getMaxThreadLoad() {
+        return mMaxThreadLoad;
+    }
+
+    public long getGcCount() {
+        return mGcCount;
+    }
+
+    public long getGcPauseNanos() {
+        return mGcPauseNanos;
+    }
+
+    public long getWakeups() {
+        return mWakeups;
+    }
+
+    public boolean isClientLimited() {
+        if (mMaxThreadLoad >= CLIENT_LIMITED_LOAD) {
+            return true;
+        }
+        return mGcPauseNanos > 0 && mElapsedNanos > 0 && mGcPauseNanos >= CLIENT_LIMITED_GC_SHARE * mElapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "ClientCost{cpuNanos=" + mCpuNanos + ", bytesPerCpuMilli=" + getBytesPerCpuMilli()
+                + ", blockedNanos=" + mBlockedNanos + ", processingNanos=" + mProcessingNanos
+                + ", maxThreadLoad=" + mMaxThreadLoad + ", gcCount=" + mGcCount + ", gcPauseNanos=" + mGcPauseNanos
+                + ", wakeups=" + mWakeups + ", clientLimited=" + isClientLimited() + "}";
+    }
+}
@@ -0,0 +1,228 @@
+package dlink.com.myspeedtest.engine;
+
+import java.util.Arrays;
+
+/**
+ * Bytes moved by each connection of a throughput phase in each sample interval, and which
+ * connections were stragglers at the time. A connection is a straggler while its rate over the last
+ * few intervals is far below the median connection's, e.g. because it stalled or landed on a
+ * congested path.
+ * <p>
+ * The sampling thread is the only writer and appends one row per interval; a row is published by
+ * a volatile write of the row count, so any thread may read rows below {@link #getRows()} without
+ * locking while the phase runs. Stored rows are capped by {@link #MAX_ROWS} and by
+ * {@link #MAX_CELLS} across all connections, so a load test with thousands of clients stores few or
+ * no rows; straggler detection keeps running regardless and only needs a window per connection.
+ */
+public class ConnectionMatrix {
+
+    /**
+     * Intervals a connection's rate is averaged over before it is compared with the others.
+     */
+    public static final int DEFAULT_WINDOW = 5;
+    /**
+     * Fraction of the median rate below which a connection counts as a straggler.
+     */
+    public static final float DEFAULT_STRAGGLER_FRACTION = 0.25f;
+    public static final int MAX_ROWS = 4096;
+    /**
+     * Most connection-interval cells stored, about 9 MiB of counters and flags.
+     */
+    public static final int MAX_CELLS = 1 << 20;
+
+    private final int mConnections;
+    private final int mCapacity;
+    private final int mWindow;
+    private final float mStragglerFraction;
+
+    private final long[] mElapsedNanos;
+    private final long[] mBytes;
+    private final boolean[] mStraggling;
+    private volatile int mRows;
+
+    // Sampling thread only.
+    private final long[] mLastTotal;
+    private final long[] mRecent;
+    private final long[] mWindowBytes;
+    private final long[] mScratch;
+    private final int[] mGraceUntil;
+    private final boolean[] mStraggler;
+    private final int[] mStragglerIntervals;
+    private int mTicks;
+
+    public ConnectionMatrix(final int connections, final int capacity) {
+        this(connections, capacity, DEFAULT_WINDOW, DEFAULT_STRAGGLER_FRACTION);
+    }
+
+    /**
+     * @param capacity rows to keep, at most {@link #MAX_ROWS} and {@link #MAX_CELLS} / connections
+     */
+    public ConnectionMatrix(final int connections, final int capacity, final int window,
+                            final float stragglerFraction) {
+        if (connections < 1 || window < 1) {
+            throw new IllegalArgumentException("connections and window must be positive");
+        }
+        mConnections = connections;
+        mCapacity = Math.max(0, Math.min(Math.min(capacity, MAX_ROWS), MAX_CELLS / connections));
+        mWindow = window;
+        mStragglerFraction = stragglerFraction;
+        mElapsedNanos = new long[mCapacity];
+        mBytes = new long[mCapacity * connections];
+        mStraggling = new boolean[mCapacity * connections];
+        mLastTotal = new long[connections];
+        mRecent = new long[window * connections];
+        mWindowBytes = new long[connections];
+        mScratch = new long[connections];
+        mGraceUntil = new int[connections];
+        mStraggler = new boolean[connections];
+        mStragglerIntervals = new int[connections];
+    }
+
+    /**
+     * Appends an interval. {@code totals} holds each connection's byte count since the phase
+     * started; returns the bytes moved in this interval by connections that are not stragglers.
+     */
+    long record(final long elapsedNanos, final long[] totals) {
+        final int slot = (mTicks % mWindow) * mConnections;
+        for (int i = 0; i < mConnections; i++) {
+            final long delta = Math.max(0, totals[i] - mLastTotal[i]);
+            mLastTotal[i] = Math.max(mLastTotal[i], totals[i]);
+            mWindowBytes[i] += delta - mRecent[slot + i];
+            mRecent[slot + i] = delta;
+        }
+        mTicks++;
+        if (mTicks >= mWindow) {
+            detectStragglers();
+        }
+        long healthy = 0;
+        final int row = mRows;
+        final boolean stored = row < mCapacity;
+        for (int i = 0; i < mConnections; i++) {
+            final long delta = mRecent[slot + i];
+            if (!mStraggler[i]) {
+                healthy += delta;
+            } else {
+                mStragglerIntervals[i]++;
+            }
+            if (stored) {
+                mBytes[row * mConnections + i] = delta;
+                mStraggling[row * mConnections + i] = mStraggler[i];
+            }
+        }
+        if (stored) {
+            mElapsedNanos[row] = elapsedNanos;
+            mRows = row + 1;
+        }
+        return healthy;
+    }
+
+    private void detectStragglers() {
+        int count = 0;
+        for (int i = 0; i < mConnections; i++) {
+            if (mGraceUntil[i] <= mTicks) {
+                mScratch[count++] = mWindowBytes[i];
+            }
+        }
+        if (count < 2) {
+            return;
+        }
+        Arrays.sort(mScratch, 0, count);
+        final long median = mScratch[count / 2];
+        final float threshold = mStragglerFraction * median;
+        for (int i = 0; i < mConnections; i++) {
+            mStraggler[i] = median > 0 && mGraceUntil[i] <= mTicks && mWindowBytes[i] < threshold;
+        }
+    }
+
+    /**
+     * Gives a connection that was just replaced a full window to ramp up before it is judged.
+     */
+    void resetConnection(final int connection) {
+        mGraceUntil[connection] = mTicks + 2 * mWindow;
+        mStraggler[connection] = false;
+    }
+
+    /**
+     * Whether {@code connection} is a straggler as of the last interval. Sampling thread only.
+     */
+    boolean isStraggler(final int connection) {
+        return mStraggler[connection];
+    }
+
+    public int getConnections() {
+        return mConnections;
+    }
+
+    /**
+     * Rows stored so far; rows below this are complete and will not change.
+     */
+    public int getRows() {
+        return mRows;
+    }
+
+    /**
+     * Time since the start of the phase at the end of {@code row}.
+     */
+    public long getElapsedNanos(final int row) {
+        checkRow(row);
+        return mElapsedNanos[row];
+    }
+
+    public long getBytes(final int row, final int connection) {
+        checkRow(row);
+        return mBytes[row * mConnections + connection];
+    }
+
+    public boolean isStraggling(final int row, final int connection) {
+        checkRow(row);
+        return mStraggling[row * mConnections + connection];
+    }
+
+    /**
+     * Bytes moved in {@code row} by connections that were not stragglers at the time.
+     */
+    public long getHealthyBytes(final int row) {
+        checkRow(row);
+        long bytes = 0;
+        for (int i = 0; i < mConnections; i++) {
+            if (!mStraggling[row * mConnections + i]) {
+                bytes += mBytes[row * mConnections + i];
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Connections flagged as stragglers in at least one interval. Only meaningful once the phase
+     * has ended.
+     */
+    public int getStragglers() {
+        int count = 0;
+        for (final int intervals : mStragglerIntervals) {
+            if (intervals > 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Intervals {@code connection} spent flagged as a straggler. Only meaningful once the phase
+     * has ended.
+     */
+    public int getStragglerIntervals(final int connection) {
+        return mStragglerIntervals[connection];
+    }
+
+    private void checkRow(final int row) {
+        if (row < 0 || row >= mRows) {
+            throw new IndexOutOfBoundsException("row " + row + " of " + mRows);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionMatrix{connections=" + mConnections + ", rows=" + mRows + ", stragglers="
+                + getStragglers() + "}";
+    }
+}
@@ -0,0 +1,135 @@
+package dlink.com.myspeedtest.engine;
+
+/**
+ * Decides when a throughput phase has measured enough. Windowed rates are first watched for the
+ * end of TCP slow start: the ramp is over once no window has beaten the best rate so far by more
+ * than {@link #RAMP_GROWTH} for {@link #RAMP_STABLE_WINDOWS} windows in a row. Later windows feed
+ * a streaming mean and variance (Welford), and the phase has converged once the 95% confidence
+ * interval of the mean is within the relative error of the mean.
+ * <p>
+ * Consecutive windows are correlated, so the interval is optimistic; the minimum window count
+ * guards against stopping on a short lucky streak.
+ */
+public final class ConvergenceDetector {
+
+    public static final double DEFAULT_RELATIVE_ERROR = 0.05;
+    public static final int DEFAULT_MIN_STEADY_WINDOWS = 20;
+    public static final long DEFAULT_MAX_RAMP_NANOS = 5000000000L;
+
+    static final double RAMP_GROWTH = 0.10;
+    static final int RAMP_STABLE_WINDOWS = 3;
+    private static final double Z_95 = 1.96;
+
+    private double mRelativeError = DEFAULT_RELATIVE_ERROR;
+    private int mMinSteadyWindows = DEFAULT_MIN_STEADY_WINDOWS;
+    private long mMaxRampNanos = DEFAULT_MAX_RAMP_NANOS;
+
+    private boolean mRamping = true;
+    private double mBestRate;
+    private int mStableWindows;
+    private long mRampNanos;
+    private long mRampBytes;
+
+    private long mCount;
+    private double mMean;
+    private double mM2;
+
+    /**
+     * Half width of the 95% confidence interval allowed, relative to the mean, e.g. 0.05 for 5%.
+     */
+    public void setRelativeError(final double relativeError) {
+        if (!(relativeError > 0)) {
+            throw new IllegalArgumentException("relative error must be positive: " + relativeError);
+        }
+        mRelativeError = relativeError;
+    }
+
+    public void setMinSteadyWindows(final int windows) {
+        mMinSteadyWindows = Math.max(2, windows);
+    }
+
+    /**
+     * Longest ramp tolerated; a link that keeps speeding up is treated as steady after this.
+     */
+    public void setMaxRamp(final long nanos) {
+        mMaxRampNanos = nanos;
+    }
+
+    public void reset() {
+        mRamping = true;
+        mBestRate = 0;
+        mStableWindows = 0;
+        mRampNanos = 0;
+        mRampBytes = 0;
+        mCount = 0;
+        mMean = 0;
+        mM2 = 0;
+    }
+
+    /**
+     * Feeds one window and returns true once the mean has converged.
+     *
+     * @param elapsedNanos time since the phase started, at the end of the window
+     * @param totalBytes   bytes moved since the phase started, at the end of the window
+     * @param rate         throughput of the window, in bytes per second
+     */
+    public boolean add(final long elapsedNanos, final long totalBytes, final double rate) {
+        if (mRamping) {
+            if (rate > mBestRate * (1 + RAMP_GROWTH)) {
+                mBestRate = rate;
+                mStableWindows = 0;
+            } else {
+                mStableWindows++;
+            }
+            if (mStableWindows >= RAMP_STABLE_WINDOWS || elapsedNanos >= mMaxRampNanos) {
+                mRamping = false;
+                mRampNanos = elapsedNanos;
+                mRampBytes = totalBytes;
+            }
+            return false;
+        }
+        mCount++;
+        final double delta = rate - mMean;
+        mMean += delta / mCount;
+        mM2 += delta * (rate - mMean);
+        return isConverged();
+    }
+
+    public boolean isConverged() {
+        return mCount >= mMinSteadyWindows && mMean > 0 && getConfidenceHalfWidth() <= mRelativeError * mMean;
+    }
+
+    public boolean isRamping() {
+        return mRamping;
+    }
+
+    /**
+     * Length of the excluded slow-start ramp, 0 while still ramping.
+     */
+    public long getRampNanos() {
+        return mRampNanos;
+    }
+
+    public long getRampBytes() {
+        return mRampBytes;
+    }
+
+    public long getSteadyWindows() {
+        return mCount;
+    }
+
+    /**
+     * Mean window rate after the ramp, in bytes per second.
+     */
+    public double getMean() {
+        return mMean;
+    }
+
+    public double getStandardDeviation() {
+        return (mCount < 2) ? 0 : Math.sqrt(mM2 / (mCount - 1));
+    }
+
+    public double getConfidenceHalfWidth() {
+        return (mCount < 2) ? Double.POSITIVE_INFINITY : Z_95 * getStandardDeviation() / Math.sqrt(mCount);
+    }
+}
@@ -0,0 +1,134 @@
+package dlink.com.myspeedtest.engine;
+
+import java.lang.reflect.Method;
+import java.util.List;
+
+/**
+ * Per-thread CPU time and process-wide garbage collector counters. Uses the java.lang.management
+ * beans on the JVM and {@code android.os.Debug} on Android; both are looked up reflectively so the
+ * engine links on either runtime. Readings that the runtime cannot provide are {@link #UNSUPPORTED}.
+ */
+public final class CpuMeter {
+
+    public static final long UNSUPPORTED = -1;
+
+    private static final String ART_GC_COUNT = "art.gc.gc-count";
+    private static final String ART_GC_TIME = "art.gc.gc-time";
+
+    private static final Object THREAD_BEAN;
+    private static final Method THREAD_CPU_TIME;
+    private static final List<?> GC_BEANS;
+    private static final Method GC_COUNT;
+    private static final Method GC_TIME;
+    private static final Method RUNTIME_STAT;
+
+    static {
+        Object threadBean = null;
+        Method threadCpuTime = null;
+        List<?> gcBeans = null;
+        Method gcCount = null;
+        Method gcTime = null;
+        Method runtimeStat = null;
+        try {
+            final Class<?> factory = Class.forName("java.lang.management.ManagementFactory");
+            threadBean = factory.getMethod("getThreadMXBean").invoke(null);
+            final Class<?> threadType = Class.forName("java.lang.management.ThreadMXBean");
+            if ((Boolean) threadType.getMethod("isCurrentThreadCpuTimeSupported").invoke(threadBean)) {
+                threadType.getMethod("setThreadCpuTimeEnabled", boolean.class).invoke(threadBean, true);
+                threadCpuTime = threadType.getMethod("getCurrentThreadCpuTime");
+            }
+            gcBeans = (List<?>) factory.getMethod("getGarbageCollectorMXBeans").invoke(null);
+            final Class<?> gcType = Class.forName("java.lang.management.GarbageCollectorMXBean");
+            gcCount = gcType.getMethod("getCollectionCount");
+            gcTime = gcType.getMethod("getCollectionTime");
+        } catch (final Throwable ignored) {
+            gcBeans = null;
+        }
+        if (null == threadCpuTime || null == gcBeans) {
+            try {
+                final Class<?> debug = Class.forName("android.os.Debug");
+                if (null == threadCpuTime) {
+                    threadBean = null;
+                    threadCpuTime = debug.getMethod("threadCpuTimeNanos");
+                    if (0 > (Long) threadCpuTime.invoke(null)) {
+                        threadCpuTime = null;
+                    }
+                }
+                if (null == gcBeans) {
+                    // API 23 and later
+                    runtimeStat = debug.getMethod("getRuntimeStat", String.class);
+                }
+            } catch (final Throwable ignored) {
+            }
+        }
+        THREAD_BEAN = threadBean;
+        THREAD_CPU_TIME = threadCpuTime;
+        GC_BEANS = gcBeans;
+        GC_COUNT = gcCount;
+        GC_TIME = gcTime;
+        RUNTIME_STAT = runtimeStat;
+    }
+
+    private CpuMeter() {
+    }
+
+    public static boolean isSupported() {
+        return null != THREAD_CPU_TIME;
+    }
+
+    /**
+     * CPU time consumed so far by the calling thread in nanoseconds, or {@link #UNSUPPORTED}.
+     */
+    public static long currentThreadCpuNanos() {
+        if (null == THREAD_CPU_TIME) {
+            return UNSUPPORTED;
+        }
+        try {
+            return (Long) THREAD_CPU_TIME.invoke(THREAD_BEAN);
+        } catch (final Exception e) {
+            return UNSUPPORTED;
+        }
+    }
+
+    /**
+     * Collections run by the whole process so far, or {@link #UNSUPPORTED}.
+     */
+    public static long gcCount() {
+        return (null != GC_BEANS) ? sumBeans(GC_COUNT) : runtimeStat(ART_GC_COUNT);
+    }
+
+    /**
+     * Time the whole process has spent collecting so far in milliseconds, or {@link #UNSUPPORTED}.
+     */
+    public static long gcTimeMillis() {
+        return (null != GC_BEANS) ? sumBeans(GC_TIME) : runtimeStat(ART_GC_TIME);
+    }
+
+    private static long sumBeans(final Method getter) {
+        long total = 0;
+        try {
+            for (int i = 0; i < GC_BEANS.size(); i++) {
+                final long value = (Long) getter.invoke(GC_BEANS.get(i));
+                // a collector that does not track this reports -1
+                if (value > 0) {
+                    total += value;
+                }
+            }
+        } catch (final Exception e) {
+            return UNSUPPORTED;
+        }
+        return total;
+    }
+
+    private static long runtimeStat(final String name) {
+        if (null == RUNTIME_STAT) {
+            return UNSUPPORTED;
+        }
+        try {
+            final String value = (String) RUNTIME_STAT.invoke(null, name);
+            return (null == value) ? UNSUPPORTED : Long.parseLong(value);
+        } catch (final Exception e) {
+            return UNSUPPORTED;
+        }
+    }
+}
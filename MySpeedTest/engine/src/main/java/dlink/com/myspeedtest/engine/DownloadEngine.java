@@ -0,0 +1,91 @@
+package dlink.com.myspeedtest.engine;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+
+/**
+ * Downloads an endless HTTP body over several parallel connections. Every I/O thread reads into one
+ * reusable direct buffer and throws the bytes away.
+ */
+public class DownloadEngine extends ThroughputEngine {
+
+    public static final String DEFAULT_PATH = "/download";
+
+    private final byte[] mRequest;
+
+    public DownloadEngine(final InetSocketAddress address) {
+        this(address, DEFAULT_PATH);
+    }
+
+    public DownloadEngine(final InetSocketAddress address, final String path) {
+        super(address, path);
+        mRequest = requestHeader("GET", "").getBytes(ASCII);
+    }
+
+    @Override
+    String getName() {
+        return "download";
+    }
+
+    @Override
+    Connection newConnection() {
+        return new DownloadConnection(mRequest);
+    }
+
+    static final class DownloadConnection extends Connection {
+
+        private static final byte[] HEADER_END = {'\r', '\n', '\r', '\n'};
+
+        private final ByteBuffer mRequest;
+        private int mHeaderMatched;
+
+        DownloadConnection(final byte[] request) {
+            mRequest = ByteBuffer.wrap(request);
+        }
+
+        @Override
+        int onConnected() {
+            return SelectionKey.OP_WRITE;
+        }
+
+        @Override
+        void onReady(final SelectionKey key, final ByteBuffer scratch) throws IOException {
+            if (key.isWritable()) {
+                mChannel.write(mRequest);
+                if (!mRequest.hasRemaining()) {
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+            } else if (key.isReadable()) {
+                scratch.clear();
+                final int read = mChannel.read(scratch);
+                if (read < 0) {
+                    close();
+                } else if (read > 0) {
+                    consume(scratch, read);
+                }
+            }
+        }
+
+        /**
+         * Counts the body bytes of a read, skipping the response header on the first reads.
+         */
+        void consume(final ByteBuffer buffer, final int read) {
+            int body = read;
+            if (mHeaderMatched < HEADER_END.length) {
+                int i = 0;
+                while (i < read && mHeaderMatched < HEADER_END.length) {
+                    final byte b = buffer.get(i++);
+                    if (b == HEADER_END[mHeaderMatched]) {
+                        mHeaderMatched++;
+                    } else {
+                        mHeaderMatched = (b == HEADER_END[0]) ? 1 : 0;
+                    }
+                }
+                body = read - i;
+            }
+            addBytes(body);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package dlink.com.myspeedtest.engine;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures round trips to an echo endpoint: a few fresh TCP handshakes, then many small in-band
+ * echoes over one warm connection. Each echo carries its sequence number so a stale reply is
+ * detected rather than timed.
+ */
+public class LatencyProbe {
+
+    public static final int DEFAULT_PROBES = 100;
+    public static final int DEFAULT_CONNECT_PROBES = 5;
+    public static final int DEFAULT_TIMEOUT_MILLIS = 1000;
+
+    static final int PAYLOAD_SIZE = 8;
+
+    private final InetSocketAddress mAddress;
+    private final LatencyHistogram mEcho = new LatencyHistogram();
+    private final LatencyHistogram mConnect = new LatencyHistogram();
+    private final byte[] mPayload = new byte[PAYLOAD_SIZE];
+    private final byte[] mReply = new byte[PAYLOAD_SIZE];
+
+    private int mProbes = DEFAULT_PROBES;
+    private int mConnectProbes = DEFAULT_CONNECT_PROBES;
+    private int mTimeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+    private long mIntervalNanos;
+
+    private volatile boolean mCancelled;
+
+    public LatencyProbe(final InetSocketAddress address) {
+        mAddress = address;
+    }
+
+    public void setProbes(final int probes) {
+        mProbes = Math.max(1, probes);
+    }
+
+    public void setConnectProbes(final int probes) {
+        mConnectProbes = Math.max(0, probes);
+    }
+
+    public void setTimeout(final int millis) {
+        mTimeoutMillis = millis;
+    }
+
+    /**
+     * Pause between echoes; 0 sends the next one as soon as the previous reply arrives.
+     */
+    public void setInterval(final long millis) {
+        mIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, millis));
+    }
+
+    /**
+     * Stops the run at the next opportunity. Sticks once called, including before {@link #run}
+     * starts, so a test cancelled while it is being set up does not run at all.
+     */
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    /**
+     * Runs the probe on the calling thread and returns the echo round trip statistics.
+     */
+    public LatencyResult run() throws IOException {
+        mEcho.reset();
+        mConnect.reset();
+        for (int i = 0; i < mConnectProbes && !mCancelled; i++) {
+            open().close();
+        }
+        long previous = -1;
+        long jitterSum = 0;
+        int jitterCount = 0;
+        try (Socket socket = open()) {
+            final InputStream in = socket.getInputStream();
+            final OutputStream out = socket.getOutputStream();
+            for (long sequence = 0; sequence < mProbes && !mCancelled; sequence++) {
+                final long rtt = echo(in, out, sequence);
+                mEcho.record(rtt);
+                if (previous >= 0) {
+                    jitterSum += Math.abs(rtt - previous);
+                    jitterCount++;
+                }
+                previous = rtt;
+                if (mIntervalNanos > 0) {
+                    LockSupport.parkNanos(this, mIntervalNanos);
+                }
+            }
+        }
+        return new LatencyResult(mEcho, (0 == jitterCount) ? 0 : jitterSum / jitterCount);
+    }
+
+    /**
+     * Echo round trips of the last run; owned by the probe and reset by the next run.
+     */
+    public LatencyHistogram getHistogram() {
+        return mEcho;
+    }
+
+    /**
+     * TCP handshake times of the last run.
+     */
+    public LatencyResult getConnectResult() {
+        return new LatencyResult(mConnect, 0);
+    }
+
+    Socket open() throws IOException {
+        final Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(mTimeoutMillis);
+            final long start = System.nanoTime();
+            socket.connect(mAddress, mTimeoutMillis);
+            mConnect.record(System.nanoTime() - start);
+            return socket;
+        } catch (final IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Sends one sequence-numbered payload and blocks for its echo; returns the round trip in nanos.
+     */
+    long echo(final InputStream in, final OutputStream out, final long sequence) throws IOException {
+        putLong(mPayload, sequence);
+        final long start = System.nanoTime();
+        out.write(mPayload);
+        long reply;
+        do {
+            int read = 0;
+            while (read < PAYLOAD_SIZE) {
+                final int n = in.read(mReply, read, PAYLOAD_SIZE - read);
+                if (n < 0) {
+                    throw new EOFException("echo closed");
+                }
+                read += n;
+            }
+            reply = getLong(mReply);
+        } while (reply < sequence);
+        if (reply != sequence) {
+            throw new IOException("unexpected echo " + reply + ", expected " + sequence);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static void putLong(final byte[] bytes, final long value) {
+        for (int i = 0; i < 8; i++) {
+            bytes[i] = (byte) (value >>> (56 - 8 * i));
+        }
+    }
+
+    private static long getLong(final byte[] bytes) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (bytes[i] & 0xFF);
+        }
+        return value;
+    }
+}
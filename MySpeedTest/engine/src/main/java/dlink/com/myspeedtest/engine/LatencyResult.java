@@ -0,0 +1,70 @@
+package dlink.com.myspeedtest.engine;
+
+/**
+ * Summary of a latency run, all values in nanoseconds.
+ */
+public class LatencyResult {
+
+    private final long mCount;
+    private final long mMin;
+    private final long mMedian;
+    private final long mP90;
+    private final long mP99;
+    private final long mMax;
+    private final long mJitter;
+
+    public LatencyResult(final LatencyHistogram histogram, final long jitterNanos) {
+        mCount = histogram.getCount();
+        mMin = histogram.getMin();
+        mMedian = histogram.getValueAtPercentile(50);
+        mP90 = histogram.getValueAtPercentile(90);
+        mP99 = histogram.getValueAtPercentile(99);
+        mMax = histogram.getMax();
+        mJitter = jitterNanos;
+    }
+
+    public long getCount() {
+        return mCount;
+    }
+
+    public long getMin() {
+        return mMin;
+    }
+
+    public long getMedian() {
+        return mMedian;
+    }
+
+    public long getP90() {
+        return mP90;
+    }
+
+    public long getP99() {
+        return mP99;
+    }
+
+    public long getMax() {
+        return mMax;
+    }
+
+    /**
+     * Mean absolute difference between consecutive round trips.
+     */
+    public long getJitter() {
+        return mJitter;
+    }
+
+    public float getMedianMillis() {
+        return mMedian / 1e6f;
+    }
+
+    public float getJitterMillis() {
+        return mJitter / 1e6f;
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyResult{count=" + mCount + ", min=" + mMin + ", median=" + mMedian + ", p90=" + mP90
+                + ", p99=" + mP99 + ", max=" + mMax + ", jitter=" + mJitter + "}";
+    }
+}
@@ -0,0 +1,164 @@
+package dlink.com.myspeedtest.engine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Keeps probing latency on its own thread while the throughput phases saturate the link. Samples
+ * are tagged with the phase that was current for the whole round trip and recorded into
+ * per-phase histograms owned by the probe thread, so the only state shared with the rest of the
+ * test is one volatile phase field.
+ */
+public class LoadedLatencyMonitor {
+
+    public static final long DEFAULT_INTERVAL_MILLIS = 50;
+    public static final int DEFAULT_TIMEOUT_MILLIS = 3000;
+
+    private static final int PHASES = Phase.values().length;
+
+    private final LatencyProbe mProbe;
+    private final long mIntervalNanos;
+
+    // Single writer: the probe thread. Read by stop() after join.
+    private final LatencyHistogram[] mHistograms = new LatencyHistogram[PHASES];
+    private final long[] mJitterSum = new long[PHASES];
+    private final long[] mJitterCount = new long[PHASES];
+    private final long[] mPrevious = new long[PHASES];
+    private final long[] mTimeouts = new long[PHASES];
+
+    private volatile Phase mPhase = Phase.IDLE;
+    private volatile boolean mRunning;
+    private volatile long mLastRttNanos;
+    private volatile Socket mSocket;
+    private Thread mThread;
+
+    public LoadedLatencyMonitor(final InetSocketAddress address) {
+        this(address, DEFAULT_INTERVAL_MILLIS);
+    }
+
+    public LoadedLatencyMonitor(final InetSocketAddress address, final long intervalMillis) {
+        mProbe = new LatencyProbe(address);
+        mProbe.setTimeout(DEFAULT_TIMEOUT_MILLIS);
+        mIntervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        for (int i = 0; i < PHASES; i++) {
+            mHistograms[i] = new LatencyHistogram();
+            mPrevious[i] = -1;
+        }
+    }
+
+    /**
+     * Seeds the idle baseline, e.g. with the histogram of a {@link LatencyProbe} run. Must be
+     * called before {@link #start()}.
+     */
+    public void addIdleBaseline(final LatencyHistogram baseline) {
+        mHistograms[Phase.IDLE.ordinal()].add(baseline);
+    }
+
+    public void setPhase(final Phase phase) {
+        mPhase = phase;
+    }
+
+    /**
+     * Most recent round trip of any phase, 0 before the first one.
+     */
+    public long getLastRttNanos() {
+        return mLastRttNanos;
+    }
+
+    public synchronized void start() {
+        if (mRunning) {
+            return;
+        }
+        mRunning = true;
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                probeLoop();
+            }
+        }, "speedtest-latency");
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    public synchronized LoadedLatencyResult stop() {
+        mRunning = false;
+        if (null != mThread) {
+            closeSocket();
+            LockSupport.unpark(mThread);
+            try {
+                mThread.join();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            mThread = null;
+        }
+        final LatencyResult[] results = new LatencyResult[PHASES];
+        for (int i = 0; i < PHASES; i++) {
+            final long jitter = (0 == mJitterCount[i]) ? 0 : mJitterSum[i] / mJitterCount[i];
+            results[i] = new LatencyResult(mHistograms[i], jitter);
+        }
+        return new LoadedLatencyResult(results, mTimeouts.clone());
+    }
+
+    private void probeLoop() {
+        long sequence = 0;
+        InputStream in = null;
+        OutputStream out = null;
+        while (mRunning) {
+            final long next = System.nanoTime() + mIntervalNanos;
+            final Phase phase = mPhase;
+            try {
+                if (null == mSocket) {
+                    final Socket socket = mProbe.open();
+                    in = socket.getInputStream();
+                    out = socket.getOutputStream();
+                    mSocket = socket;
+                }
+                final long rtt = mProbe.echo(in, out, sequence++);
+                // A round trip that straddles a phase change belongs to neither phase.
+                if (phase == mPhase) {
+                    record(phase.ordinal(), rtt);
+                }
+            } catch (final SocketTimeoutException e) {
+                if (phase == mPhase) {
+                    mTimeouts[phase.ordinal()]++;
+                }
+                closeSocket();
+            } catch (final IOException e) {
+                closeSocket();
+            }
+            long remaining;
+            while (mRunning && (remaining = next - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(this, remaining);
+            }
+        }
+        closeSocket();
+    }
+
+    private void record(final int phase, final long rtt) {
+        mHistograms[phase].record(rtt);
+        if (mPrevious[phase] >= 0) {
+            mJitterSum[phase] += Math.abs(rtt - mPrevious[phase]);
+            mJitterCount[phase]++;
+        }
+        mPrevious[phase] = rtt;
+        mLastRttNanos = rtt;
+    }
+
+    private void closeSocket() {
+        final Socket socket = mSocket;
+        mSocket = null;
+        if (null != socket) {
+            try {
+                socket.close();
+            } catch (final IOException ignored) {
+            }
+        }
+    }
+}
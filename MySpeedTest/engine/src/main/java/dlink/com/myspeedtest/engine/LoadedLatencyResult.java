@@ -0,0 +1,66 @@
+package dlink.com.myspeedtest.engine;
+
+/**
+ * Latency per {@link Phase}, with the loaded phases compared against the idle baseline.
+ */
+public class LoadedLatencyResult {
+
+    private final LatencyResult[] mResults;
+    private final long[] mTimeouts;
+
+    LoadedLatencyResult(final LatencyResult[] results, final long[] timeouts) {
+        mResults = results;
+        mTimeouts = timeouts;
+    }
+
+    public LatencyResult get(final Phase phase) {
+        return mResults[phase.ordinal()];
+    }
+
+    public LatencyResult getIdle() {
+        return get(Phase.IDLE);
+    }
+
+    /**
+     * Probes of the phase that got no echo before the timeout, a lower bound on extreme bloat.
+     */
+    public long getTimeouts(final Phase phase) {
+        return mTimeouts[phase.ordinal()];
+    }
+
+    /**
+     * Increase of the median round trip under load over idle, in nanoseconds.
+     */
+    public long getMedianDelta(final Phase phase) {
+        return delta(get(phase).getMedian(), getIdle().getMedian(), phase);
+    }
+
+    public long getP99Delta(final Phase phase) {
+        return delta(get(phase).getP99(), getIdle().getP99(), phase);
+    }
+
+    private long delta(final long loaded, final long idle, final Phase phase) {
+        if (0 == get(phase).getCount() || 0 == getIdle().getCount()) {
+            return 0;
+        }
+        return loaded - idle;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder("LoadedLatencyResult{");
+        for (final Phase phase : Phase.values()) {
+            final LatencyResult result = get(phase);
+            builder.append(phase).append("={p50=").append(result.getMedian())
+                    .append(", p99=").append(result.getP99())
+                    .append(", count=").append(result.getCount())
+                    .append(", timeouts=").append(getTimeouts(phase));
+            if (Phase.IDLE != phase) {
+                builder.append(", p50Delta=").append(getMedianDelta(phase))
+                        .append(", p99Delta=").append(getP99Delta(phase));
+            }
+            builder.append("} ");
+        }
+        return builder.append('}').toString();
+    }
+}
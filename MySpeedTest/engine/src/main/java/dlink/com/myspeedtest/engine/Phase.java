@@ -0,0 +1,10 @@
+package dlink.com.myspeedtest.engine;
+
+/**
+ * Stage of a speed test run, used to tag samples that are taken across stages.
+ */
+public enum Phase {
+    IDLE,
+    DOWNLOAD,
+    UPLOAD
+}
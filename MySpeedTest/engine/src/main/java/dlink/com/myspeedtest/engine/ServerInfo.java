@@ -0,0 +1,103 @@
+package dlink.com.myspeedtest.engine;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One speed test server: where to send throughput traffic, where its echo endpoint listens and how
+ * to present it.
+ */
+public final class ServerInfo {
+
+    private final String mName;
+    private final String mCity;
+    private final String mHost;
+    private final int mPort;
+    private final int mEchoPort;
+
+    public ServerInfo(final String name, final String city, final String host, final int port, final int echoPort) {
+        mName = name;
+        mCity = city;
+        mHost = host;
+        mPort = port;
+        mEchoPort = echoPort;
+    }
+
+    /**
+     * Reads a server list, one server per line as {@code host,port,echoPort,name,city}. Blank lines
+     * and lines starting with '#' are skipped; the name and city may be omitted.
+     */
+    public static List<ServerInfo> parse(final Reader reader) throws IOException {
+        final BufferedReader in = new BufferedReader(reader);
+        final List<ServerInfo> servers = new ArrayList<>();
+        String line;
+        int number = 0;
+        while ((line = in.readLine()) != null) {
+            number++;
+            line = line.trim();
+            if (line.isEmpty() || line.charAt(0) == '#') {
+                continue;
+            }
+            final String[] fields = line.split(",", -1);
+            if (fields.length < 3) {
+                throw new IOException("line " + number + ": expected host,port,echoPort[,name[,city]]");
+            }
+            try {
+                final String host = fields[0].trim();
+                servers.add(new ServerInfo(
+                        (fields.length > 3) ? fields[3].trim() : host,
+                        (fields.length > 4) ? fields[4].trim() : "",
+                        host,
+                        Integer.parseInt(fields[1].trim()),
+                        Integer.parseInt(fields[2].trim())));
+            } catch (final NumberFormatException e) {
+                throw new IOException("line " + number + ": bad port", e);
+            }
+        }
+        return servers;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public String getCity() {
+        return mCity;
+    }
+
+    public String getHost() {
+        return mHost;
+    }
+
+    public int getPort() {
+        return mPort;
+    }
+
+    public int getEchoPort() {
+        return mEchoPort;
+    }
+
+    /**
+     * Throughput endpoint; resolves the host.
+     */
+    public InetSocketAddress getAddress() {
+        return new InetSocketAddress(mHost, mPort);
+    }
+
+    /**
+     * Echo endpoint; resolves the host.
+     */
+    public InetSocketAddress getEchoAddress() {
+        return new InetSocketAddress(mHost, mEchoPort);
+    }
+
+    @Override
+    public String toString() {
+        return "ServerInfo{name=" + mName + ", city=" + mCity + ", host=" + mHost + ", port=" + mPort
+                + ", echoPort=" + mEchoPort + "}";
+    }
+}
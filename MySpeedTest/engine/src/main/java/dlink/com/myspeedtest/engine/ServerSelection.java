@@ -0,0 +1,79 @@
+package dlink.com.myspeedtest.engine;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of probing a server list: the round trips of every server that answered in time and the
+ * one with the lowest median.
+ */
+public class ServerSelection {
+
+    private final List<ServerInfo> mServers;
+    private final LatencyResult[] mResults;
+    private final int mBest;
+    private final long mElapsedNanos;
+
+    ServerSelection(final List<ServerInfo> servers, final LatencyResult[] results, final long elapsedNanos) {
+        mServers = Collections.unmodifiableList(servers);
+        mResults = results;
+        mElapsedNanos = elapsedNanos;
+        int best = -1;
+        for (int i = 0; i < results.length; i++) {
+            if (null != results[i] && (best < 0 || results[i].getMedian() < results[best].getMedian())) {
+                best = i;
+            }
+        }
+        mBest = best;
+    }
+
+    public List<ServerInfo> getServers() {
+        return mServers;
+    }
+
+    /**
+     * Round trips to server {@code index}, null when it failed or did not answer before the deadline.
+     */
+    public LatencyResult getResult(final int index) {
+        return mResults[index];
+    }
+
+    /**
+     * Index of the server with the lowest median round trip, -1 when none answered.
+     */
+    public int getBestIndex() {
+        return mBest;
+    }
+
+    public ServerInfo getBest() {
+        return (mBest < 0) ? null : mServers.get(mBest);
+    }
+
+    public LatencyResult getBestResult() {
+        return (mBest < 0) ? null : mResults[mBest];
+    }
+
+    /**
+     * Wall time of the whole discovery.
+     */
+    public long getElapsedNanos() {
+        return mElapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("ServerSelection{elapsed=").append(mElapsedNanos);
+        for (int i = 0; i < mResults.length; i++) {
+            sb.append(", ").append(mServers.get(i).getName()).append('=');
+            if (null == mResults[i]) {
+                sb.append('-');
+            } else {
+                sb.append(mResults[i].getMedian());
+            }
+            if (i == mBest) {
+                sb.append('*');
+            }
+        }
+        return sb.append('}').toString();
+    }
+}
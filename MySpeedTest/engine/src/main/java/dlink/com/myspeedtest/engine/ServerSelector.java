@@ -0,0 +1,134 @@
+package dlink.com.myspeedtest.engine;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Picks the server with the lowest median round trip. Servers are probed concurrently on a bounded
+ * pool, each probe with its own socket timeout, and the whole discovery is cut off at a deadline so
+ * it takes about one round of probes plus the timeout however many servers are listed. Host names
+ * are resolved on the pool too, so a slow lookup holds up only its own server.
+ */
+public class ServerSelector {
+
+    public static final int DEFAULT_PARALLELISM = 8;
+    public static final int DEFAULT_PROBES = 5;
+    public static final int DEFAULT_TIMEOUT_MILLIS = 1000;
+
+    private final List<ServerInfo> mServers;
+    private int mParallelism = DEFAULT_PARALLELISM;
+    private int mProbes = DEFAULT_PROBES;
+    private int mTimeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+    private long mDeadlineMillis = 2 * DEFAULT_TIMEOUT_MILLIS;
+
+    public ServerSelector(final List<ServerInfo> servers) {
+        mServers = new ArrayList<>(servers);
+    }
+
+    /**
+     * Most servers probed at once.
+     */
+    public void setParallelism(final int parallelism) {
+        mParallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Echoes per server; the median of these ranks the servers.
+     */
+    public void setProbes(final int probes) {
+        mProbes = Math.max(1, probes);
+    }
+
+    /**
+     * Connect and read timeout of each probe.
+     */
+    public void setTimeout(final int millis) {
+        mTimeoutMillis = millis;
+    }
+
+    /**
+     * Time after which servers still being probed are given up on.
+     */
+    public void setDeadline(final long millis) {
+        mDeadlineMillis = millis;
+    }
+
+    /**
+     * Probes every server and blocks until all answered, failed or ran into the deadline.
+     */
+    public ServerSelection select() throws InterruptedException {
+        final int count = mServers.size();
+        final LatencyResult[] results = new LatencyResult[count];
+        final long start = System.nanoTime();
+        if (0 == count) {
+            return new ServerSelection(mServers, results, 0);
+        }
+        final AtomicReferenceArray<LatencyProbe> probes = new AtomicReferenceArray<>(count);
+        final AtomicBoolean done = new AtomicBoolean();
+        final List<Future<LatencyResult>> futures = new ArrayList<>(count);
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(mParallelism, count),
+                new ProbeThreadFactory());
+        try {
+            for (int i = 0; i < count; i++) {
+                final int index = i;
+                futures.add(executor.submit(new Callable<LatencyResult>() {
+                    @Override
+                    public LatencyResult call() throws IOException {
+                        // Resolving the host blocks, so it happens here rather than on the caller.
+                        final LatencyProbe probe = new LatencyProbe(mServers.get(index).getEchoAddress());
+                        probe.setProbes(mProbes);
+                        probe.setConnectProbes(0);
+                        probe.setTimeout(mTimeoutMillis);
+                        probes.set(index, probe);
+                        if (done.get()) {
+                            probe.cancel();
+                        }
+                        return probe.run();
+                    }
+                }));
+            }
+            final long deadline = start + TimeUnit.MILLISECONDS.toNanos(mDeadlineMillis);
+            for (int i = 0; i < count; i++) {
+                try {
+                    results[i] = futures.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                } catch (final ExecutionException | TimeoutException e) {
+                    results[i] = null;
+                }
+            }
+        } finally {
+            done.set(true);
+            for (int i = 0; i < count; i++) {
+                final LatencyProbe probe = probes.get(i);
+                if (null != probe) {
+                    probe.cancel();
+                }
+            }
+            executor.shutdownNow();
+        }
+        return new ServerSelection(mServers, results, System.nanoTime() - start);
+    }
+
+    private static final class ProbeThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "server-probe-" + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
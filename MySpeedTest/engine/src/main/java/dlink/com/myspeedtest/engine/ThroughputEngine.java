@@ -0,0 +1,585 @@
+package dlink.com.myspeedtest.engine;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Common driver for the throughput phases: spreads N parallel non-blocking connections over a few
+ * selector threads and samples their aggregate byte count on the calling thread. Each I/O thread also
+ * keeps its own CPU time and the time it spent waiting in the selector, so the result can tell when
+ * the device rather than the network was the bottleneck.
+ * <p>
+ * Every interval the per-connection byte counts go into a {@link ConnectionMatrix}, which flags
+ * connections that fall far behind the others. Samples report the rate of all connections, while
+ * {@link #getHealthyMbps()} gives the rate of the healthy ones only, for display. With
+ * {@link #setReplaceStragglers(boolean)} a straggler is closed and replaced by a new connection
+ * mid-phase.
+ */
+public abstract class ThroughputEngine {
+
+    public static final int DEFAULT_CONNECTIONS = 6;
+    public static final long DEFAULT_DURATION_MILLIS = 10000;
+    public static final long DEFAULT_SAMPLE_INTERVAL_MILLIS = 100;
+    public static final int IO_BUFFER_SIZE = 256 * 1024;
+
+    static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 1000;
+
+    final InetSocketAddress mAddress;
+    final String mPath;
+
+    private int mConnections = DEFAULT_CONNECTIONS;
+    private int mIoThreads;
+    private long mDurationNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_DURATION_MILLIS);
+    private long mSampleIntervalNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_SAMPLE_INTERVAL_MILLIS);
+    private long mMinDurationNanos;
+    private ConvergenceDetector mConvergence;
+    private boolean mReplaceStragglers;
+
+    private volatile boolean mCancelled;
+    private volatile float mHealthyMbps;
+    private volatile Thread mRunner;
+    private volatile Connection[] mActive;
+
+    ThroughputEngine(final InetSocketAddress address, final String path) {
+        mAddress = address;
+        mPath = path;
+    }
+
+    public void setConnections(final int connections) {
+        if (connections < 1) {
+            throw new IllegalArgumentException("connections must be positive: " + connections);
+        }
+        mConnections = connections;
+    }
+
+    public int getConnections() {
+        return mConnections;
+    }
+
+    /**
+     * Number of selector threads the connections are spread over, 0 picks one per two cores.
+     */
+    public void setIoThreads(final int ioThreads) {
+        mIoThreads = Math.max(0, ioThreads);
+    }
+
+    /**
+     * Length of the phase, or its maximum when the phase is adaptive.
+     */
+    public void setDuration(final long millis) {
+        mDurationNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    /**
+     * Ends the phase as soon as {@code convergence} reports the rate has converged, but not before
+     * {@code minMillis}; null runs for the full duration.
+     */
+    public void setAdaptive(final ConvergenceDetector convergence, final long minMillis) {
+        mConvergence = convergence;
+        mMinDurationNanos = TimeUnit.MILLISECONDS.toNanos(minMillis);
+    }
+
+    /**
+     * Closes a connection as soon as it is flagged as a straggler and opens a fresh one in its
+     * place, at most once per connection and phase. Off by default.
+     */
+    public void setReplaceStragglers(final boolean replaceStragglers) {
+        mReplaceStragglers = replaceStragglers;
+    }
+
+    public void setSampleInterval(final long millis) {
+        mSampleIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, millis));
+    }
+
+    /**
+     * Stops the run at the next opportunity. Sticks once called, including before {@link #run}
+     * starts, so a test cancelled while it is being set up does not run at all.
+     */
+    public void cancel() {
+        mCancelled = true;
+        final Thread runner = mRunner;
+        if (null != runner) {
+            LockSupport.unpark(runner);
+        }
+    }
+
+    /**
+     * Rate over the last interval of the connections that are not stragglers, for display; set just
+     * before each {@link SampleListener#onSample} call, whose rate counts every connection.
+     */
+    public float getHealthyMbps() {
+        return mHealthyMbps;
+    }
+
+    /**
+     * Copies the byte count of each connection of the running phase into {@code out} and returns
+     * how many were copied; 0 when no phase is running. A replaced connection's count carries on
+     * from the one it replaced. Meant to be called from a {@link SampleListener} to break a sample
+     * down by connection.
+     */
+    public int getConnectionBytes(final long[] out) {
+        final Connection[] connections = mActive;
+        if (null == connections) {
+            return 0;
+        }
+        final int count = Math.min(out.length, connections.length);
+        for (int i = 0; i < count; i++) {
+            out[i] = connections[i].getSlotBytes();
+        }
+        return count;
+    }
+
+    abstract String getName();
+
+    abstract Connection newConnection();
+
+    String requestHeader(final String method, final String extraHeaders) {
+        return method + " " + mPath + " HTTP/1.1\r\n"
+                + "Host: " + mAddress.getHostString() + ":" + mAddress.getPort() + "\r\n"
+                + "User-Agent: MySpeedTest\r\n"
+                + "Accept: */*\r\n"
+                + "Cache-Control: no-cache\r\n"
+                + extraHeaders
+                + "Connection: close\r\n"
+                + "\r\n";
+    }
+
+    /**
+     * Runs the phase on the calling thread and blocks until the duration elapses, every connection
+     * has closed or {@link #cancel()} is called.
+     */
+    public ThroughputResult run(final SampleListener listener) throws IOException {
+        mRunner = Thread.currentThread();
+        final int ioThreads = resolveIoThreads();
+        final IoWorker[] workers = new IoWorker[ioThreads];
+        final Connection[] connections = new Connection[mConnections];
+        try {
+            for (int i = 0; i < ioThreads; i++) {
+                workers[i] = new IoWorker("speedtest-" + getName() + "-" + i, mAddress);
+            }
+            for (int i = 0; i < connections.length; i++) {
+                connections[i] = newConnection();
+                workers[i % ioThreads].add(connections[i]);
+            }
+            for (final IoWorker worker : workers) {
+                worker.start();
+            }
+            mActive = connections;
+            return sample(workers, connections, listener, CpuMeter.gcCount(), CpuMeter.gcTimeMillis());
+        } finally {
+            mActive = null;
+            shutdown(workers);
+            mRunner = null;
+        }
+    }
+
+    private ThroughputResult sample(final IoWorker[] workers, final Connection[] connections,
+                                    final SampleListener listener, final long gcCountAtStart,
+                                    final long gcMillisAtStart) throws IOException {
+        final long start = System.nanoTime();
+        final long end = start + mDurationNanos;
+        long next = start + mSampleIntervalNanos;
+        long lastBytes = 0;
+        long lastTime = start;
+        long now = start;
+        float peakMbps = 0.0f;
+        final ConvergenceDetector convergence = mConvergence;
+        boolean converged = false;
+        final ConnectionMatrix matrix = new ConnectionMatrix(connections.length,
+                (int) Math.min(ConnectionMatrix.MAX_ROWS, mDurationNanos / mSampleIntervalNanos + 2));
+        final long[] slotBytes = new long[connections.length];
+        final boolean[] replaced = new boolean[connections.length];
+        if (null != convergence) {
+            convergence.reset();
+        }
+        while (!mCancelled) {
+            parkUntil(Math.min(next, end));
+            now = System.nanoTime();
+            final long bytes = slotBytes(connections, slotBytes);
+            final float mbps = ThroughputResult.toMbps(bytes - lastBytes, now - lastTime);
+            mHealthyMbps = ThroughputResult.toMbps(matrix.record(now - start, slotBytes), now - lastTime);
+            if (mReplaceStragglers) {
+                replaceStragglers(workers, connections, matrix, replaced);
+            }
+            peakMbps = Math.max(peakMbps, mbps);
+            if (null != convergence && now > lastTime) {
+                final double rate = (bytes - lastBytes) * 1e9 / (now - lastTime);
+                converged = convergence.add(now - start, bytes, rate) && now - start >= mMinDurationNanos;
+            }
+            lastBytes = bytes;
+            lastTime = now;
+            if (null != listener) {
+                listener.onSample(now - start, bytes, mbps);
+            }
+            if (converged || now - end >= 0 || !anyOpen(connections)) {
+                break;
+            }
+            while (next - now <= 0) {
+                next += mSampleIntervalNanos;
+            }
+        }
+        shutdown(workers);
+        final long bytes = slotBytes(connections, slotBytes);
+        if (0 == bytes) {
+            for (final IoWorker worker : workers) {
+                if (null != worker.mFailure) {
+                    throw worker.mFailure;
+                }
+            }
+        }
+        final ClientCost cost = clientCost(workers, now - start, bytes, gcCountAtStart, gcMillisAtStart);
+        if (null == convergence) {
+            return new ThroughputResult(bytes, now - start, peakMbps, connections.length, allocatedBytes(workers),
+                    0, 0, false, 0, cost, matrix);
+        }
+        return new ThroughputResult(bytes, now - start, peakMbps, connections.length, allocatedBytes(workers),
+                convergence.getRampNanos(), convergence.getRampBytes(), converged,
+                converged ? Math.max(0, end - now) : 0, cost, matrix);
+    }
+
+    /**
+     * Swaps every connection newly flagged as a straggler for a fresh one on the same I/O thread.
+     * The old connection is closed by its I/O thread; bytes it still receives after the swap are
+     * not counted.
+     */
+    private void replaceStragglers(final IoWorker[] workers, final Connection[] connections,
+                                   final ConnectionMatrix matrix, final boolean[] replaced) {
+        for (int i = 0; i < connections.length; i++) {
+            if (replaced[i] || !matrix.isStraggler(i) || !connections[i].mOpen) {
+                continue;
+            }
+            final Connection old = connections[i];
+            final Connection fresh = newConnection();
+            fresh.mBaseBytes = old.getSlotBytes();
+            connections[i] = fresh;
+            replaced[i] = true;
+            matrix.resetConnection(i);
+            workers[i % workers.length].replace(old, fresh);
+        }
+    }
+
+    private static ClientCost clientCost(final IoWorker[] workers, final long elapsedNanos, final long bytes,
+                                         final long gcCountAtStart, final long gcMillisAtStart) {
+        long cpu = 0;
+        long blocked = 0;
+        long processing = 0;
+        float maxLoad = 0.0f;
+        long wakeups = 0;
+        for (final IoWorker worker : workers) {
+            final long wall = worker.mWallNanos;
+            if (wall <= 0) {
+                continue;
+            }
+            blocked += worker.mBlockedNanos;
+            wakeups += worker.mWakeups;
+            processing += wall - worker.mBlockedNanos;
+            if (cpu >= 0) {
+                cpu = (CpuMeter.UNSUPPORTED == worker.mCpuNanos) ? CpuMeter.UNSUPPORTED : cpu + worker.mCpuNanos;
+            }
+            // Without a CPU clock, time outside the selector is the closest stand-in for time on CPU.
+            final long busy = (CpuMeter.UNSUPPORTED == worker.mCpuNanos) ? wall - worker.mBlockedNanos : worker.mCpuNanos;
+            maxLoad = Math.max(maxLoad, Math.min(1.0f, (float) busy / wall));
+        }
+        final long gcCount = CpuMeter.gcCount();
+        final long gcMillis = CpuMeter.gcTimeMillis();
+        return new ClientCost(elapsedNanos, bytes, cpu, blocked, processing, maxLoad,
+                (gcCount < 0 || gcCountAtStart < 0) ? CpuMeter.UNSUPPORTED : gcCount - gcCountAtStart,
+                (gcMillis < 0 || gcMillisAtStart < 0) ? CpuMeter.UNSUPPORTED
+                        : TimeUnit.MILLISECONDS.toNanos(gcMillis - gcMillisAtStart), wakeups);
+    }
+
+    private void parkUntil(final long deadline) {
+        long remaining;
+        while (!mCancelled && (remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(this, remaining);
+        }
+    }
+
+    private int resolveIoThreads() {
+        final int threads = (mIoThreads > 0) ? mIoThreads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        return Math.min(threads, mConnections);
+    }
+
+    private static void shutdown(final IoWorker[] workers) {
+        for (final IoWorker worker : workers) {
+            if (null != worker) {
+                worker.shutdown();
+            }
+        }
+    }
+
+    private static long slotBytes(final Connection[] connections, final long[] out) {
+        long bytes = 0;
+        for (int i = 0; i < connections.length; i++) {
+            out[i] = connections[i].getSlotBytes();
+            bytes += out[i];
+        }
+        return bytes;
+    }
+
+    private static boolean anyOpen(final Connection[] connections) {
+        for (final Connection connection : connections) {
+            if (connection.mOpen) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long allocatedBytes(final IoWorker[] workers) {
+        long allocated = 0;
+        for (final IoWorker worker : workers) {
+            if (AllocationMeter.UNSUPPORTED == worker.mAllocatedBytes) {
+                return AllocationMeter.UNSUPPORTED;
+            }
+            allocated += worker.mAllocatedBytes;
+        }
+        return allocated;
+    }
+
+    /**
+     * Keeps the byte counter of a connection on a cache line of its own. Every I/O thread writes
+     * its connections' counters on each read or write while the sampler reads all of them, so two
+     * counters sharing a line would bounce it between cores. Padding in superclasses and a subclass
+     * survives field reordering, which both HotSpot and ART do within a class.
+     */
+    abstract static class CounterPadding {
+        long mPad00, mPad01, mPad02, mPad03, mPad04, mPad05, mPad06, mPad07;
+    }
+
+    abstract static class PaddedCounter extends CounterPadding {
+        // Written only by the owning I/O thread, read by the sampler.
+        volatile long mBytes;
+    }
+
+    abstract static class PaddedCounterTail extends PaddedCounter {
+        long mPad10, mPad11, mPad12, mPad13, mPad14, mPad15, mPad16, mPad17;
+    }
+
+    abstract static class Connection extends PaddedCounterTail {
+
+        SocketChannel mChannel;
+        SelectionKey mKey;
+
+        volatile boolean mOpen = true;
+        // Bytes of the connections this one replaced; set by the sampler before it is handed over.
+        long mBaseBytes;
+        // Connection to close once this one is registered in its place.
+        Connection mReplaces;
+
+        /**
+         * Returns the interest set to use once the TCP handshake has completed.
+         */
+        abstract int onConnected();
+
+        /**
+         * Services a ready key. {@code scratch} is the worker's reusable buffer.
+         */
+        abstract void onReady(SelectionKey key, ByteBuffer scratch) throws IOException;
+
+        final void addBytes(final long bytes) {
+            mBytes = mBytes + bytes;
+        }
+
+        final long getSlotBytes() {
+            return mBaseBytes + mBytes;
+        }
+
+        void close() {
+            mOpen = false;
+            if (null != mChannel) {
+                try {
+                    mChannel.close();
+                } catch (final IOException ignored) {
+                }
+            }
+        }
+    }
+
+    static final class IoWorker extends Thread {
+
+        /**
+         * Connections up to which a wakeup scans every connection rather than iterating the
+         * selected keys, which costs an iterator per wakeup but only touches the ready ones.
+         */
+        static final int MAX_SCANNED_CONNECTIONS = 16;
+
+        private final Selector mSelector;
+        private final InetSocketAddress mAddress;
+        private final ByteBuffer mBuffer = ByteBuffer.allocateDirect(IO_BUFFER_SIZE);
+        private final List<Connection> mConnections = new ArrayList<>();
+        private final ConcurrentLinkedQueue<Connection> mReplacements = new ConcurrentLinkedQueue<>();
+        private volatile boolean mRunning = true;
+        private boolean mShutdown;
+        volatile IOException mFailure;
+        volatile long mAllocatedBytes = AllocationMeter.UNSUPPORTED;
+        // Published once the loop exits; read by the sampler after shutdown.
+        volatile long mCpuNanos = CpuMeter.UNSUPPORTED;
+        volatile long mBlockedNanos;
+        volatile long mWallNanos;
+        volatile long mWakeups;
+
+        IoWorker(final String name, final InetSocketAddress address) throws IOException {
+            super(name);
+            setDaemon(true);
+            mSelector = Selector.open();
+            mAddress = address;
+        }
+
+        /**
+         * Opens and registers a connection. Must be called before {@link #start()}.
+         */
+        void add(final Connection connection) throws IOException {
+            mConnections.add(connection);
+            open(connection);
+        }
+
+        private void open(final Connection connection) throws IOException {
+            final SocketChannel channel = SocketChannel.open();
+            connection.mChannel = channel;
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            final boolean connected = channel.connect(mAddress);
+            connection.mKey = channel.register(mSelector, connected ? connection.onConnected() : SelectionKey.OP_CONNECT,
+                    connection);
+        }
+
+        /**
+         * Hands {@code fresh} to the I/O thread, which closes {@code old} and opens {@code fresh} in
+         * its place. Safe to call from any thread while the worker runs.
+         */
+        void replace(final Connection old, final Connection fresh) {
+            fresh.mReplaces = old;
+            mReplacements.offer(fresh);
+            mSelector.wakeup();
+        }
+
+        private void applyReplacements() {
+            Connection fresh;
+            while (null != (fresh = mReplacements.poll())) {
+                final Connection old = fresh.mReplaces;
+                fresh.mReplaces = null;
+                old.close();
+                mConnections.set(mConnections.indexOf(old), fresh);
+                try {
+                    open(fresh);
+                } catch (final IOException e) {
+                    fresh.close();
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            final long allocatedAtStart = AllocationMeter.currentThreadAllocatedBytes();
+            final long cpuAtStart = CpuMeter.currentThreadCpuNanos();
+            final long startNanos = System.nanoTime();
+            long blocked = 0;
+            long wakeups = 0;
+            final Set<SelectionKey> selected = mSelector.selectedKeys();
+            final int size = mConnections.size();
+            try {
+                while (mRunning) {
+                    final long selectStart = System.nanoTime();
+                    final int ready = mSelector.select();
+                    blocked += System.nanoTime() - selectStart;
+                    wakeups++;
+                    if (!mReplacements.isEmpty()) {
+                        applyReplacements();
+                    }
+                    if (0 == ready) {
+                        continue;
+                    }
+                    if (size <= MAX_SCANNED_CONNECTIONS) {
+                        // Indexed walk instead of the selected-key iterator keeps the loop allocation-free.
+                        for (int i = 0; i < size; i++) {
+                            final Connection connection = mConnections.get(i);
+                            if (selected.contains(connection.mKey)) {
+                                handle(connection);
+                            }
+                        }
+                    } else {
+                        // A load test has too many connections to scan on every wakeup.
+                        for (final SelectionKey key : selected) {
+                            handle((Connection) key.attachment());
+                        }
+                    }
+                    selected.clear();
+                }
+            } catch (final IOException e) {
+                mFailure = e;
+            } finally {
+                if (AllocationMeter.UNSUPPORTED != allocatedAtStart) {
+                    mAllocatedBytes = AllocationMeter.currentThreadAllocatedBytes() - allocatedAtStart;
+                }
+                if (CpuMeter.UNSUPPORTED != cpuAtStart) {
+                    mCpuNanos = CpuMeter.currentThreadCpuNanos() - cpuAtStart;
+                }
+                mBlockedNanos = blocked;
+                mWakeups = wakeups;
+                mWallNanos = System.nanoTime() - startNanos;
+            }
+        }
+
+        private void handle(final Connection connection) {
+            final SelectionKey key = connection.mKey;
+            try {
+                if (!key.isValid()) {
+                    return;
+                }
+                if (key.isConnectable()) {
+                    if (connection.mChannel.finishConnect()) {
+                        key.interestOps(connection.onConnected());
+                    }
+                } else {
+                    connection.onReady(key, mBuffer);
+                }
+            } catch (final IOException e) {
+                if (null == mFailure) {
+                    mFailure = e;
+                }
+                connection.close();
+            }
+        }
+
+        void shutdown() {
+            if (mShutdown) {
+                return;
+            }
+            mShutdown = true;
+            mRunning = false;
+            mSelector.wakeup();
+            try {
+                if (isAlive()) {
+                    join(SHUTDOWN_TIMEOUT_MILLIS);
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (final Connection connection : mConnections) {
+                connection.close();
+            }
+            Connection pending;
+            while (null != (pending = mReplacements.poll())) {
+                pending.mReplaces.close();
+                pending.close();
+            }
+            try {
+                mSelector.close();
+            } catch (final IOException ignored) {
+            }
+        }
+    }
+}
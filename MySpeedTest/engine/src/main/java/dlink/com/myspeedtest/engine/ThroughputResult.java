@@ -0,0 +1,161 @@
+package dlink.com.myspeedtest.engine;
+
+public class ThroughputResult {
+
+    private final long mBytes;
+    private final long mElapsedNanos;
+    private final float mPeakMbps;
+    private final int mConnections;
+    private final long mAllocatedBytes;
+    private final long mRampNanos;
+    private final long mRampBytes;
+    private final boolean mConverged;
+    private final long mSavedNanos;
+    private final ClientCost mCost;
+    private final ConnectionMatrix mConnectionMatrix;
+
+    public ThroughputResult(final long bytes, final long elapsedNanos, final float peakMbps, final int connections,
+                            final long allocatedBytes) {
+        this(bytes, elapsedNanos, peakMbps, connections, allocatedBytes, 0, 0, false, 0, ClientCost.UNKNOWN, null);
+    }
+
+    /**
+     * @param rampNanos  length of the slow-start ramp excluded from the steady rate
+     * @param rampBytes  bytes moved during that ramp
+     * @param converged  whether the phase ended early because the rate had converged
+     * @param savedNanos time left to the maximum duration when the phase ended early
+     * @param cost       what the phase cost the client
+     * @param matrix     bytes per connection and interval, or null
+     */
+    public ThroughputResult(final long bytes, final long elapsedNanos, final float peakMbps, final int connections,
+                            final long allocatedBytes, final long rampNanos, final long rampBytes,
+                            final boolean converged, final long savedNanos, final ClientCost cost,
+                            final ConnectionMatrix matrix) {
+        mBytes = bytes;
+        mElapsedNanos = elapsedNanos;
+        mPeakMbps = peakMbps;
+        mConnections = connections;
+        mAllocatedBytes = allocatedBytes;
+        mRampNanos = rampNanos;
+        mRampBytes = rampBytes;
+        mConverged = converged;
+        mSavedNanos = savedNanos;
+        mCost = cost;
+        mConnectionMatrix = matrix;
+    }
+
+    public long getBytes() {
+        return mBytes;
+    }
+
+    public long getElapsedNanos() {
+        return mElapsedNanos;
+    }
+
+    public float getMeanMbps() {
+        return toMbps(mBytes, mElapsedNanos);
+    }
+
+    public long getBytesPerSecond() {
+        return perSecond(mBytes);
+    }
+
+    /**
+     * Throughput after the slow-start ramp; the whole-run mean when no ramp was measured.
+     */
+    public float getSteadyMbps() {
+        if (0 == mRampNanos || mElapsedNanos <= mRampNanos) {
+            return getMeanMbps();
+        }
+        return toMbps(mBytes - mRampBytes, mElapsedNanos - mRampNanos);
+    }
+
+    public long getRampNanos() {
+        return mRampNanos;
+    }
+
+    public boolean isConverged() {
+        return mConverged;
+    }
+
+    /**
+     * Test time saved by stopping at convergence instead of running to the maximum duration.
+     */
+    public long getSavedNanos() {
+        return mSavedNanos;
+    }
+
+    /**
+     * Estimate of the traffic saved: the saved time at the steady rate.
+     */
+    public long getSavedBytes() {
+        if (0 == mSavedNanos) {
+            return 0;
+        }
+        return (long) (getSteadyMbps() / 8.0 * mSavedNanos / 1000.0);
+    }
+
+    public float getPeakMbps() {
+        return mPeakMbps;
+    }
+
+    public int getConnections() {
+        return mConnections;
+    }
+
+    /**
+     * Bytes allocated by the I/O threads during the run, -1 where the runtime cannot tell.
+     */
+    public long getAllocatedBytes() {
+        return mAllocatedBytes;
+    }
+
+    public long getAllocationRate() {
+        return (mAllocatedBytes < 0) ? mAllocatedBytes : perSecond(mAllocatedBytes);
+    }
+
+    public ClientCost getCost() {
+        return mCost;
+    }
+
+    /**
+     * Whether the device rather than the network capped this result.
+     */
+    public boolean isClientLimited() {
+        return mCost.isClientLimited();
+    }
+
+    /**
+     * Breakdown of the phase by connection and sample interval, null when it was not recorded.
+     */
+    public ConnectionMatrix getConnectionMatrix() {
+        return mConnectionMatrix;
+    }
+
+    /**
+     * Connections that fell far behind the others at some point during the phase.
+     */
+    public int getStragglers() {
+        return (null == mConnectionMatrix) ? 0 : mConnectionMatrix.getStragglers();
+    }
+
+    private long perSecond(final long value) {
+        return (mElapsedNanos <= 0) ? 0 : (long) (value * 1e9 / mElapsedNanos);
+    }
+
+    public static float toMbps(final long bytes, final long nanos) {
+        if (nanos <= 0) {
+            return 0.0f;
+        }
+        // bits per microsecond == megabits per second
+        return (float) (bytes * 8.0 / (nanos / 1000.0));
+    }
+
+    @Override
+    public String toString() {
+        return "ThroughputResult{bytes=" + mBytes + ", elapsedNanos=" + mElapsedNanos + ", meanMbps=" + getMeanMbps()
+                + ", peakMbps=" + mPeakMbps + ", connections=" + mConnections + ", allocatedBytes=" + mAllocatedBytes
+                + ", steadyMbps=" + getSteadyMbps() + ", rampNanos=" + mRampNanos + ", converged=" + mConverged
+                + ", savedNanos=" + mSavedNanos + ", savedBytes=" + getSavedBytes() + ", cost=" + mCost + ", stragglers=" + getStragglers() + "}";
+    }
+}
@@ -0,0 +1,216 @@
+package dlink.com.myspeedtest.engine;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures packet loss, reordering, duplication and jitter with a stream of sequenced datagrams
+ * bounced off a UDP reflector. Packets leave on a fixed schedule at the target rate from one
+ * preallocated buffer through a non-blocking {@link DatagramChannel}, and replies are drained on the
+ * same thread between sends, so a run allocates nothing per packet.
+ * <p>
+ * Every packet carries a per-run session id, its sequence number and its send time. Arrivals are
+ * tracked in a bitmap sized for the whole run up front. Jitter follows RFC 3550: the smoothed
+ * absolute difference of consecutive transit times, here round trips through the reflector.
+ */
+public class UdpEngine {
+
+    public static final int DEFAULT_PACKET_RATE = 1000;
+    public static final long DEFAULT_DURATION_MILLIS = 5000;
+    public static final int DEFAULT_PAYLOAD_SIZE = 160;
+    public static final long DEFAULT_DRAIN_MILLIS = 500;
+
+    static final int HEADER_SIZE = 24;
+    static final int MAGIC = 0x55445031; // "UDP1"
+    static final int MAX_PAYLOAD_SIZE = 1472;
+    // Packets sent in one go when the sender falls behind schedule; bounds the burst.
+    private static final int MAX_BURST = 64;
+    private static final long BLOCKED_PARK_NANOS = 50000;
+
+    private final InetSocketAddress mAddress;
+    private final Random mRandom = new Random();
+    private int mPacketRate = DEFAULT_PACKET_RATE;
+    private long mDurationNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_DURATION_MILLIS);
+    private int mPayloadSize = DEFAULT_PAYLOAD_SIZE;
+    private long mDrainNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_DRAIN_MILLIS);
+
+    private volatile boolean mCancelled;
+    private volatile Thread mRunner;
+
+    // Receive state of the current run, touched only by the running thread.
+    private final LatencyHistogram mRtt = new LatencyHistogram();
+    private long[] mSeen;
+    private int mSession;
+    private long mReceived;
+    private long mDuplicates;
+    private long mReordered;
+    private long mHighest;
+    private long mLastTransit;
+    private double mJitter;
+
+    public UdpEngine(final InetSocketAddress address) {
+        mAddress = address;
+    }
+
+    /**
+     * Packets sent per second.
+     */
+    public void setPacketRate(final int packetsPerSecond) {
+        if (packetsPerSecond < 1) {
+            throw new IllegalArgumentException("packet rate must be positive: " + packetsPerSecond);
+        }
+        mPacketRate = packetsPerSecond;
+    }
+
+    public void setDuration(final long millis) {
+        mDurationNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    /**
+     * Datagram size in bytes, between the header size and what fits an Ethernet frame.
+     */
+    public void setPayloadSize(final int bytes) {
+        mPayloadSize = Math.max(HEADER_SIZE, Math.min(bytes, MAX_PAYLOAD_SIZE));
+    }
+
+    /**
+     * How long to keep listening for late replies after the last packet was sent.
+     */
+    public void setDrainTime(final long millis) {
+        mDrainNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, millis));
+    }
+
+    /**
+     * Stops the run at the next opportunity. Sticks once called, including before {@link #run}
+     * starts, so a test cancelled while it is being set up does not run at all.
+     */
+    public void cancel() {
+        mCancelled = true;
+        final Thread runner = mRunner;
+        if (null != runner) {
+            LockSupport.unpark(runner);
+        }
+    }
+
+    /**
+     * Runs the test on the calling thread and blocks until the packets are sent and the drain
+     * time has passed, or {@link #cancel()} is called.
+     */
+    public UdpResult run() throws IOException {
+        mRunner = Thread.currentThread();
+        final long planned = Math.max(1, mDurationNanos * mPacketRate / 1000000000L);
+        mSeen = new long[(int) ((planned + 63) >>> 6)];
+        mSession = mRandom.nextInt();
+        mRtt.reset();
+        mReceived = 0;
+        mDuplicates = 0;
+        mReordered = 0;
+        mHighest = -1;
+        mLastTransit = -1;
+        mJitter = 0;
+        final ByteBuffer send = ByteBuffer.allocateDirect(mPayloadSize);
+        final ByteBuffer receive = ByteBuffer.allocateDirect(MAX_PAYLOAD_SIZE);
+        send.putInt(0, MAGIC);
+        send.putInt(4, mSession);
+        final double intervalNanos = 1e9 / mPacketRate;
+        PortUnreachableException unreachable = null;
+        long sent = 0;
+        long start = 0;
+        long now = 0;
+        long lastSend = 0;
+        try (DatagramChannel channel = DatagramChannel.open()) {
+            channel.configureBlocking(false);
+            channel.connect(mAddress);
+            start = System.nanoTime();
+            long drainUntil = Long.MAX_VALUE;
+            while (!mCancelled) {
+                now = System.nanoTime();
+                int burst = 0;
+                boolean blocked = false;
+                while (sent < planned && burst < MAX_BURST && now - (start + (long) (sent * intervalNanos)) >= 0) {
+                    send.putLong(8, sent);
+                    send.putLong(16, System.nanoTime());
+                    send.clear();
+                    try {
+                        if (0 == channel.write(send)) {
+                            blocked = true; // socket buffer full, retry on the next pass
+                            break;
+                        }
+                    } catch (final PortUnreachableException e) {
+                        unreachable = e;
+                    }
+                    sent++;
+                    burst++;
+                    lastSend = System.nanoTime();
+                }
+                try {
+                    while (null != channel.receive(receive)) {
+                        onReply(receive, System.nanoTime(), sent);
+                        receive.clear();
+                    }
+                } catch (final PortUnreachableException e) {
+                    unreachable = e;
+                }
+                if (sent == planned) {
+                    if (Long.MAX_VALUE == drainUntil) {
+                        drainUntil = now + mDrainNanos;
+                    }
+                    if (mReceived >= planned || now - drainUntil >= 0) {
+                        break;
+                    }
+                    LockSupport.parkNanos(this, Math.min(1000000L, drainUntil - now));
+                } else if (blocked) {
+                    LockSupport.parkNanos(this, BLOCKED_PARK_NANOS);
+                } else if (0 == burst) {
+                    final long due = start + (long) (sent * intervalNanos) - System.nanoTime();
+                    if (due > 0) {
+                        LockSupport.parkNanos(this, due);
+                    }
+                }
+            }
+        } finally {
+            mRunner = null;
+        }
+        if (0 == mReceived && null != unreachable) {
+            throw unreachable;
+        }
+        return new UdpResult(sent, mReceived, mDuplicates, mReordered, (long) mJitter, new LatencyResult(mRtt, 0),
+                Math.max(now, lastSend) - start, Math.max(0, lastSend - start));
+    }
+
+    private void onReply(final ByteBuffer reply, final long now, final long sent) {
+        if (reply.position() < HEADER_SIZE || reply.getInt(0) != MAGIC || reply.getInt(4) != mSession) {
+            return;
+        }
+        final long sequence = reply.getLong(8);
+        if (sequence < 0 || sequence >= sent) {
+            return;
+        }
+        final int word = (int) (sequence >>> 6);
+        final long bit = 1L << sequence;
+        if (0 != (mSeen[word] & bit)) {
+            mDuplicates++;
+            return;
+        }
+        mSeen[word] |= bit;
+        mReceived++;
+        if (sequence < mHighest) {
+            mReordered++;
+        } else {
+            mHighest = sequence;
+        }
+        final long transit = now - reply.getLong(16);
+        mRtt.record(transit);
+        if (mLastTransit >= 0) {
+            // RFC 3550 section 6.4.1: J += (|D| - J) / 16
+            mJitter += (Math.abs(transit - mLastTransit) - mJitter) / 16.0;
+        }
+        mLastTransit = transit;
+    }
+}
@@ -0,0 +1,100 @@
+package dlink.com.myspeedtest.engine;
+
+/**
+ * Summary of a UDP run: what was sent, what came back and how evenly. Times are in nanoseconds.
+ */
+public class UdpResult {
+
+    private final long mSent;
+    private final long mReceived;
+    private final long mDuplicates;
+    private final long mReordered;
+    private final long mJitter;
+    private final LatencyResult mRoundTrip;
+    private final long mElapsedNanos;
+    private final long mSendNanos;
+
+    /**
+     * @param elapsedNanos time from the first packet sent to the end of the drain wait
+     * @param sendNanos    time from the first packet sent to the last
+     */
+    public UdpResult(final long sent, final long received, final long duplicates, final long reordered,
+                     final long jitterNanos, final LatencyResult roundTrip, final long elapsedNanos,
+                     final long sendNanos) {
+        mSent = sent;
+        mReceived = received;
+        mDuplicates = duplicates;
+        mReordered = reordered;
+        mJitter = jitterNanos;
+        mRoundTrip = roundTrip;
+        mElapsedNanos = elapsedNanos;
+        mSendNanos = sendNanos;
+    }
+
+    public long getSent() {
+        return mSent;
+    }
+
+    /**
+     * Distinct packets that came back; duplicates are not counted.
+     */
+    public long getReceived() {
+        return mReceived;
+    }
+
+    public long getLost() {
+        return mSent - mReceived;
+    }
+
+    public float getLossPercent() {
+        return (0 == mSent) ? 0.0f : 100.0f * getLost() / mSent;
+    }
+
+    public long getDuplicates() {
+        return mDuplicates;
+    }
+
+    /**
+     * Packets that arrived after a packet with a higher sequence number.
+     */
+    public long getReordered() {
+        return mReordered;
+    }
+
+    /**
+     * RFC 3550 interarrival jitter of the round trips.
+     */
+    public long getJitter() {
+        return mJitter;
+    }
+
+    public float getJitterMillis() {
+        return mJitter / 1e6f;
+    }
+
+    public LatencyResult getRoundTrip() {
+        return mRoundTrip;
+    }
+
+    public long getElapsedNanos() {
+        return mElapsedNanos;
+    }
+
+    public long getSendNanos() {
+        return mSendNanos;
+    }
+
+    /**
+     * Packets actually sent per second while sending; the wait for late replies does not count.
+     */
+    public float getPacketRate() {
+        return (mSent < 2 || mSendNanos <= 0) ? 0.0f : (mSent - 1) * 1e9f / mSendNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "UdpResult{sent=" + mSent + ", received=" + mReceived + ", lost=" + getLost() + ", duplicates="
+                + mDuplicates + ", reordered=" + mReordered + ", jitter=" + mJitter + ", rtt=" + mRoundTrip
+                + ", elapsed=" + mElapsedNanos + ", send=" + mSendNanos + "}";
+    }
+}
@@ -0,0 +1,138 @@
+package dlink.com.myspeedtest.engine;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+
+/**
+ * Streams a chunked HTTP request body over several parallel connections. The engine fills one
+ * direct payload buffer once and every connection writes from its own view of it, rewinding after
+ * each chunk, so a steady-state write neither allocates nor copies nor generates data, and direct
+ * memory does not grow with the number of connections.
+ */
+public class UploadEngine extends ThroughputEngine {
+
+    public static final String DEFAULT_PATH = "/upload";
+    public static final int CHUNK_SIZE = 128 * 1024;
+
+    private static final int MAX_WRITES_PER_READY = 8;
+    private static final byte[] CHUNK_HEADER = (Integer.toHexString(CHUNK_SIZE) + "\r\n").getBytes(ASCII);
+    private static final byte[] CHUNK_TRAILER = {'\r', '\n'};
+
+    private final byte[] mRequest;
+    // Never written after construction; connections only read through duplicates.
+    private final ByteBuffer mHeader = direct(CHUNK_HEADER);
+    private final ByteBuffer mPayload = payload(CHUNK_SIZE);
+    private final ByteBuffer mTrailer = direct(CHUNK_TRAILER);
+
+    public UploadEngine(final InetSocketAddress address) {
+        this(address, DEFAULT_PATH);
+    }
+
+    public UploadEngine(final InetSocketAddress address, final String path) {
+        super(address, path);
+        mRequest = requestHeader("POST", "Content-Type: application/octet-stream\r\n"
+                + "Transfer-Encoding: chunked\r\n").getBytes(ASCII);
+    }
+
+    @Override
+    String getName() {
+        return "upload";
+    }
+
+    @Override
+    Connection newConnection() {
+        return new UploadConnection(mRequest, mHeader, mPayload, mTrailer);
+    }
+
+    private static ByteBuffer direct(final byte[] bytes) {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Incompressible bytes, so link-layer compression cannot inflate the measured rate.
+     */
+    private static ByteBuffer payload(final int size) {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+        long x = 0x9E3779B97F4A7C15L;
+        while (buffer.remaining() >= 8) {
+            // xorshift64: fast, and random enough to defeat link-layer compression
+            x ^= x << 13;
+            x ^= x >>> 7;
+            x ^= x << 17;
+            buffer.putLong(x);
+        }
+        while (buffer.hasRemaining()) {
+            buffer.put((byte) x);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    static final class UploadConnection extends Connection {
+
+        private final ByteBuffer mRequest;
+        private final ByteBuffer mHeader;
+        private final ByteBuffer mPayload;
+        private final ByteBuffer mTrailer;
+        // header, payload and trailer go out in one gathering write per chunk
+        private final ByteBuffer[] mChunk;
+
+        /**
+         * Takes views of the engine's shared chunk buffers, so the connection has its own positions
+         * but no memory of its own behind them.
+         */
+        UploadConnection(final byte[] request, final ByteBuffer header, final ByteBuffer payload,
+                         final ByteBuffer trailer) {
+            mRequest = ByteBuffer.wrap(request);
+            mHeader = header.duplicate();
+            mPayload = payload.duplicate();
+            mTrailer = trailer.duplicate();
+            mChunk = new ByteBuffer[]{mHeader, mPayload, mTrailer};
+        }
+
+        @Override
+        int onConnected() {
+            return SelectionKey.OP_WRITE;
+        }
+
+        @Override
+        void onReady(final SelectionKey key, final ByteBuffer scratch) throws IOException {
+            if (key.isReadable()) {
+                // The server only talks once it is done; drain it and notice the close.
+                scratch.clear();
+                if (mChannel.read(scratch) < 0) {
+                    close();
+                    return;
+                }
+            }
+            if (!key.isValid() || !key.isWritable()) {
+                return;
+            }
+            if (mRequest.hasRemaining()) {
+                mChannel.write(mRequest);
+                if (mRequest.hasRemaining()) {
+                    return;
+                }
+                key.interestOps(SelectionKey.OP_WRITE | SelectionKey.OP_READ);
+            }
+            // Keep the socket buffer full: several chunks per readiness without waiting on acks.
+            for (int i = 0; i < MAX_WRITES_PER_READY; i++) {
+                final int before = mPayload.position();
+                final long written = mChannel.write(mChunk);
+                addBytes(mPayload.position() - before);
+                if (!mTrailer.hasRemaining()) {
+                    mHeader.rewind();
+                    mPayload.clear();
+                    mTrailer.rewind();
+                } else if (0 == written) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package dlink.com.myspeedtest.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ClientCostTest {
+
+    private static final long SECOND = 1000000000L;
+
+    @Test
+    public void idleThreadsAreNotLimited() {
+        final ClientCost cost = new ClientCost(SECOND, 1000000, SECOND / 5, SECOND * 3 / 4, SECOND / 4, 0.3f, 1,
+                SECOND / 100, 1000);
+        assertFalse(cost.isClientLimited());
+        assertEquals(5000.0f, cost.getBytesPerCpuMilli(), 0.01f);
+    }
+
+    @Test
+    public void saturatedThreadIsLimited() {
+        final ClientCost cost = new ClientCost(SECOND, 1000000, SECOND, 0, SECOND, 0.95f, 0, 0, 1000);
+        assertTrue(cost.isClientLimited());
+    }
+
+    @Test
+    public void longCollectionPausesAreLimited() {
+        final ClientCost cost = new ClientCost(SECOND, 1000000, SECOND / 2, SECOND / 2, SECOND / 2, 0.5f, 12,
+                SECOND / 5, 1000);
+        assertTrue(cost.isClientLimited());
+    }
+
+    @Test
+    public void unknownCostIsNotLimited() {
+        assertFalse(ClientCost.UNKNOWN.isClientLimited());
+        assertEquals(CpuMeter.UNSUPPORTED, ClientCost.UNKNOWN.getBytesPerCpuMilli(), 0.0f);
+    }
+}
@@ -0,0 +1,97 @@
+package dlink.com.myspeedtest.engine;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConnectionMatrixTest {
+
+    private static final long INTERVAL = 100000000L;
+
+    @Test
+    public void recordsBytesPerInterval() {
+        final ConnectionMatrix matrix = new ConnectionMatrix(2, 10);
+        final long[] totals = new long[2];
+        totals[0] = 100;
+        totals[1] = 300;
+        assertEquals(400, matrix.record(INTERVAL, totals));
+        totals[0] = 150;
+        totals[1] = 700;
+        assertEquals(450, matrix.record(2 * INTERVAL, totals));
+        assertEquals(2, matrix.getRows());
+        assertEquals(50, matrix.getBytes(1, 0));
+        assertEquals(400, matrix.getBytes(1, 1));
+        assertEquals(2 * INTERVAL, matrix.getElapsedNanos(1));
+    }
+
+    @Test
+    public void flagsStalledConnection() {
+        final ConnectionMatrix matrix = new ConnectionMatrix(4, 100, 3, 0.25f);
+        final long[] totals = new long[4];
+        for (int i = 0; i < 10; i++) {
+            totals[0] += 1000;
+            totals[1] += 1100;
+            totals[2] += 900;
+            // connection 3 stalls after the first interval
+            totals[3] += (0 == i) ? 1000 : 0;
+            matrix.record((i + 1) * INTERVAL, totals);
+        }
+        assertFalse(matrix.isStraggling(1, 3));
+        assertTrue(matrix.isStraggling(9, 3));
+        assertFalse(matrix.isStraggling(9, 0));
+        assertEquals(3000, matrix.getHealthyBytes(9));
+        assertEquals(1, matrix.getStragglers());
+        assertTrue(matrix.getStragglerIntervals(3) > 0);
+        assertEquals(0, matrix.getStragglerIntervals(0));
+    }
+
+    @Test
+    public void replacedConnectionGetsGracePeriod() {
+        final ConnectionMatrix matrix = new ConnectionMatrix(3, 100, 2, 0.25f);
+        final long[] totals = new long[3];
+        for (int i = 0; i < 4; i++) {
+            totals[0] += 1000;
+            totals[1] += 1000;
+            matrix.record((i + 1) * INTERVAL, totals);
+        }
+        assertTrue(matrix.isStraggler(2));
+        matrix.resetConnection(2);
+        totals[0] += 1000;
+        totals[1] += 1000;
+        totals[2] += 10;
+        matrix.record(5 * INTERVAL, totals);
+        assertFalse(matrix.isStraggler(2));
+    }
+
+    @Test
+    public void stopsStoringRowsAtCapacity() {
+        final ConnectionMatrix matrix = new ConnectionMatrix(1, 2);
+        final long[] totals = new long[1];
+        for (int i = 0; i < 5; i++) {
+            totals[0] += 10;
+            assertEquals(10, matrix.record((i + 1) * INTERVAL, totals));
+        }
+        assertEquals(2, matrix.getRows());
+    }
+
+    @Test
+    public void capsStoredCellsForManyConnections() {
+        final int connections = 300000;
+        final ConnectionMatrix matrix = new ConnectionMatrix(connections, ConnectionMatrix.MAX_ROWS);
+        final long[] totals = new long[connections];
+        for (int i = 0; i < 5; i++) {
+            Arrays.fill(totals, (i + 1) * 10L);
+            assertEquals(10L * connections, matrix.record((i + 1) * INTERVAL, totals));
+        }
+        assertEquals(ConnectionMatrix.MAX_CELLS / connections, matrix.getRows());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void rejectsUnwrittenRow() {
+        new ConnectionMatrix(1, 2).getBytes(0, 0);
+    }
+}
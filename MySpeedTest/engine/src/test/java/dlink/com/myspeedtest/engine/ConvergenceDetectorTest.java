@@ -0,0 +1,96 @@
+package dlink.com.myspeedtest.engine;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConvergenceDetectorTest {
+
+    private static final long WINDOW_NANOS = 100000000L;
+
+    @Test
+    public void skipsSlowStartRamp() {
+        final ConvergenceDetector detector = new ConvergenceDetector();
+        final double[] ramp = {1e6, 2e6, 4e6, 8e6, 10e6};
+        long bytes = 0;
+        int window = 0;
+        for (final double rate : ramp) {
+            bytes += (long) (rate / 10);
+            assertFalse(detector.add(++window * WINDOW_NANOS, bytes, rate));
+            assertTrue(detector.isRamping());
+        }
+        for (int i = 0; i < ConvergenceDetector.RAMP_STABLE_WINDOWS; i++) {
+            bytes += 1000000;
+            detector.add(++window * WINDOW_NANOS, bytes, 10e6);
+        }
+        assertFalse(detector.isRamping());
+        assertEquals(window * WINDOW_NANOS, detector.getRampNanos());
+        assertEquals(bytes, detector.getRampBytes());
+        assertEquals(0, detector.getSteadyWindows());
+    }
+
+    @Test
+    public void convergesOnSteadyRate() {
+        final ConvergenceDetector detector = new ConvergenceDetector();
+        final Random random = new Random(42);
+        int windows = 0;
+        boolean converged = false;
+        while (!converged && windows < 1000) {
+            windows++;
+            converged = detector.add(windows * WINDOW_NANOS, 0, 50e6 * (1 + 0.05 * random.nextGaussian()));
+        }
+        assertTrue(converged);
+        assertTrue(windows < 50);
+        assertEquals(50e6, detector.getMean(), 50e6 * ConvergenceDetector.DEFAULT_RELATIVE_ERROR);
+    }
+
+    @Test
+    public void noisyRateNeedsMoreWindows() {
+        final ConvergenceDetector quiet = new ConvergenceDetector();
+        final ConvergenceDetector noisy = new ConvergenceDetector();
+        final Random random = new Random(7);
+        final int quietWindows = windowsToConverge(quiet, random, 0.05);
+        final int noisyWindows = windowsToConverge(noisy, random, 0.5);
+        assertTrue(noisyWindows > quietWindows);
+        assertTrue(noisy.getConfidenceHalfWidth() <= noisy.getMean() * ConvergenceDetector.DEFAULT_RELATIVE_ERROR);
+    }
+
+    @Test
+    public void respectsMinimumWindows() {
+        final ConvergenceDetector detector = new ConvergenceDetector();
+        detector.setMaxRamp(0);
+        // the first window ends the ramp and is not counted
+        for (int i = 0; i < ConvergenceDetector.DEFAULT_MIN_STEADY_WINDOWS; i++) {
+            assertFalse(detector.add(i * WINDOW_NANOS, 0, 1e6));
+        }
+        assertTrue(detector.add(ConvergenceDetector.DEFAULT_MIN_STEADY_WINDOWS * WINDOW_NANOS, 0, 1e6));
+    }
+
+    @Test
+    public void resetStartsOver() {
+        final ConvergenceDetector detector = new ConvergenceDetector();
+        windowsToConverge(detector, new Random(1), 0.01);
+        assertTrue(detector.isConverged());
+        detector.reset();
+        assertFalse(detector.isConverged());
+        assertTrue(detector.isRamping());
+        assertEquals(0, detector.getSteadyWindows());
+    }
+
+    private static int windowsToConverge(final ConvergenceDetector detector, final Random random,
+                                         final double noise) {
+        int windows = 0;
+        while (windows < 100000) {
+            windows++;
+            final double rate = Math.max(1, 20e6 * (1 + noise * random.nextGaussian()));
+            if (detector.add(windows * WINDOW_NANOS, 0, rate)) {
+                return windows;
+            }
+        }
+        return windows;
+    }
+}
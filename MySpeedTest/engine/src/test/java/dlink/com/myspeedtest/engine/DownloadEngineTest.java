@@ -0,0 +1,162 @@
+package dlink.com.myspeedtest.engine;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DownloadEngineTest {
+
+    @Test
+    public void measuresLoopbackSource() throws IOException {
+        try (LoopbackServer server = LoopbackServer.source()) {
+            final DownloadEngine engine = new DownloadEngine(server.address());
+            engine.setConnections(4);
+            engine.setDuration(500);
+            engine.setSampleInterval(50);
+            final AtomicInteger samples = new AtomicInteger();
+            final AtomicLong lastTotal = new AtomicLong();
+            final ThroughputResult result = engine.run(new SampleListener() {
+                @Override
+                public void onSample(final long elapsedNanos, final long totalBytes, final float mbps) {
+                    assertTrue(totalBytes >= lastTotal.get());
+                    lastTotal.set(totalBytes);
+                    samples.incrementAndGet();
+                }
+            });
+            assertEquals(4, server.acceptedConnections());
+            assertEquals(4, result.getConnections());
+            assertTrue(samples.get() >= 5);
+            assertTrue(result.getBytes() > 0);
+            assertTrue(result.getMeanMbps() > 0);
+            assertTrue(result.getPeakMbps() >= result.getMeanMbps() * 0.5f);
+        }
+    }
+
+    @Test
+    public void servesManyConnectionsFromSelectedKeys() throws IOException {
+        try (LoopbackServer server = LoopbackServer.source()) {
+            final DownloadEngine engine = new DownloadEngine(server.address());
+            final int connections = 2 * ThroughputEngine.IoWorker.MAX_SCANNED_CONNECTIONS;
+            engine.setConnections(connections);
+            engine.setIoThreads(1);
+            engine.setDuration(500);
+            final ThroughputResult result = engine.run(null);
+            assertEquals(connections, server.acceptedConnections());
+            assertTrue(result.getBytes() > 0);
+        }
+    }
+
+    @Test
+    public void recordsClientCost() throws IOException {
+        try (LoopbackServer server = LoopbackServer.source()) {
+            final DownloadEngine engine = new DownloadEngine(server.address());
+            engine.setConnections(2);
+            engine.setIoThreads(1);
+            engine.setDuration(300);
+            final ThroughputResult result = engine.run(null);
+            final ClientCost cost = result.getCost();
+            assertTrue(cost.getBlockedNanos() + cost.getProcessingNanos() >= result.getElapsedNanos() / 2);
+            assertTrue(cost.getMaxThreadLoad() > 0 && cost.getMaxThreadLoad() <= 1);
+            if (CpuMeter.isSupported()) {
+                assertTrue(cost.getCpuNanos() > 0);
+                assertTrue(cost.getBytesPerCpuMilli() > 0);
+            }
+        }
+    }
+
+    @Test
+    public void replacesStalledConnection() throws IOException {
+        try (LoopbackServer server = LoopbackServer.stallingSource(1)) {
+            final DownloadEngine engine = new DownloadEngine(server.address());
+            engine.setConnections(4);
+            engine.setDuration(1500);
+            engine.setSampleInterval(50);
+            engine.setReplaceStragglers(true);
+            final ThroughputResult result = engine.run(null);
+            assertEquals(5, server.acceptedConnections());
+            assertEquals(1, result.getStragglers());
+            final ConnectionMatrix matrix = result.getConnectionMatrix();
+            assertEquals(4, matrix.getConnections());
+            assertTrue(matrix.getRows() >= 10);
+            long total = 0;
+            for (int row = 0; row < matrix.getRows(); row++) {
+                for (int connection = 0; connection < matrix.getConnections(); connection++) {
+                    total += matrix.getBytes(row, connection);
+                }
+            }
+            assertTrue(total <= result.getBytes());
+        }
+    }
+
+    @Test
+    public void adaptiveStopsOnceConverged() throws IOException {
+        try (LoopbackServer server = LoopbackServer.source()) {
+            final DownloadEngine engine = new DownloadEngine(server.address());
+            engine.setConnections(2);
+            engine.setDuration(60000);
+            engine.setSampleInterval(20);
+            final ConvergenceDetector convergence = new ConvergenceDetector();
+            convergence.setRelativeError(0.25);
+            engine.setAdaptive(convergence, 200);
+            final ThroughputResult result = engine.run(null);
+            assertTrue(result.isConverged());
+            assertTrue(result.getElapsedNanos() < 30000000000L);
+            assertTrue(result.getSavedNanos() > 0);
+            assertTrue(result.getSavedBytes() > 0);
+            assertTrue(result.getSteadyMbps() > 0);
+        }
+    }
+
+    @Test
+    public void cancelStopsEarly() throws Exception {
+        try (LoopbackServer server = LoopbackServer.source()) {
+            final DownloadEngine engine = new DownloadEngine(server.address());
+            engine.setDuration(60000);
+            final Thread canceller = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(200);
+                    } catch (final InterruptedException ignored) {
+                    }
+                    engine.cancel();
+                }
+            });
+            canceller.start();
+            final ThroughputResult result = engine.run(null);
+            canceller.join();
+            assertTrue(result.getElapsedNanos() < 5000000000L);
+        }
+    }
+
+    @Test
+    public void cancelBeforeRunStopsImmediately() throws IOException {
+        try (LoopbackServer server = LoopbackServer.source()) {
+            final DownloadEngine engine = new DownloadEngine(server.address());
+            engine.setDuration(60000);
+            engine.cancel();
+            final ThroughputResult result = engine.run(null);
+            assertTrue(result.getElapsedNanos() < 5000000000L);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void refusedConnectionsFail() throws IOException {
+        final int port;
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            port = socket.getLocalPort();
+        }
+        final DownloadEngine engine = new DownloadEngine(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        engine.setConnections(2);
+        engine.setDuration(2000);
+        engine.run(null);
+    }
+}
@@ -0,0 +1,30 @@
+package dlink.com.myspeedtest.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyProbeTest {
+
+    @Test
+    public void measuresLoopbackEcho() throws Exception {
+        try (LoopbackServer server = LoopbackServer.echo()) {
+            final LatencyProbe probe = new LatencyProbe(server.address());
+            probe.setProbes(200);
+            probe.setConnectProbes(3);
+            final long start = System.nanoTime();
+            final LatencyResult result = probe.run();
+            assertTrue(System.nanoTime() - start < 1000000000L);
+            assertEquals(200, result.getCount());
+            assertTrue(result.getMin() > 0);
+            assertTrue(result.getMin() <= result.getMedian());
+            assertTrue(result.getMedian() <= result.getP90());
+            assertTrue(result.getP90() <= result.getP99());
+            assertTrue(result.getP99() <= result.getMax());
+            assertTrue(result.getJitter() >= 0);
+            assertEquals(4, probe.getConnectResult().getCount());
+            assertEquals(4, server.acceptedConnections());
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package dlink.com.myspeedtest.engine;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LoadedLatencyMonitorTest {
+
+    @Test
+    public void tagsSamplesByPhase() throws Exception {
+        final AtomicLong delay = new AtomicLong();
+        try (LoopbackServer echo = LoopbackServer.echo(delay)) {
+            final LatencyProbe probe = new LatencyProbe(echo.address());
+            probe.setProbes(20);
+            probe.run();
+            final LoadedLatencyMonitor monitor = new LoadedLatencyMonitor(echo.address(), 5);
+            monitor.addIdleBaseline(probe.getHistogram());
+            monitor.start();
+            Thread.sleep(100);
+            // Stand-in for a bloated queue: the echo slows down while "downloading".
+            delay.set(20);
+            monitor.setPhase(Phase.DOWNLOAD);
+            Thread.sleep(300);
+            delay.set(0);
+            monitor.setPhase(Phase.UPLOAD);
+            Thread.sleep(100);
+            final LoadedLatencyResult result = monitor.stop();
+
+            assertTrue(result.getIdle().getCount() > 20);
+            assertTrue(result.get(Phase.DOWNLOAD).getCount() > 3);
+            assertTrue(result.get(Phase.UPLOAD).getCount() > 3);
+            assertEquals(0, result.getTimeouts(Phase.DOWNLOAD));
+            assertTrue(result.getMedianDelta(Phase.DOWNLOAD) >= TimeUnit.MILLISECONDS.toNanos(15));
+            assertTrue(result.getP99Delta(Phase.DOWNLOAD) >= result.getMedianDelta(Phase.UPLOAD));
+            assertTrue(result.getMedianDelta(Phase.UPLOAD) < TimeUnit.MILLISECONDS.toNanos(10));
+        }
+    }
+
+    @Test
+    public void runsAlongsideDownload() throws Exception {
+        try (LoopbackServer echo = LoopbackServer.echo(); LoopbackServer source = LoopbackServer.source()) {
+            final LoadedLatencyMonitor monitor = new LoadedLatencyMonitor(echo.address(), 10);
+            monitor.start();
+            monitor.setPhase(Phase.DOWNLOAD);
+            final DownloadEngine engine = new DownloadEngine(source.address());
+            engine.setConnections(2);
+            engine.setDuration(300);
+            final ThroughputResult throughput = engine.run(null);
+            final LoadedLatencyResult latency = monitor.stop();
+            assertTrue(throughput.getBytes() > 0);
+            assertTrue(latency.get(Phase.DOWNLOAD).getCount() > 5);
+            assertTrue(monitor.getLastRttNanos() > 0);
+        }
+    }
+}
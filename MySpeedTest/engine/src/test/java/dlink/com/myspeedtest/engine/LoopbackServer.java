@@ -0,0 +1,217 @@
+package dlink.com.myspeedtest.engine;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Minimal loopback stand-in for a speed test server, one thread per accepted connection.
+ */
+abstract class LoopbackServer implements Closeable {
+
+    private static final byte[] RESPONSE_HEADER = ("HTTP/1.1 200 OK\r\n"
+            + "Content-Type: application/octet-stream\r\n"
+            + "Connection: close\r\n"
+            + "\r\n").getBytes();
+
+    private final ServerSocket mServerSocket;
+    private final List<Socket> mSockets = new CopyOnWriteArrayList<>();
+    final AtomicLong mReceivedBytes = new AtomicLong();
+    private volatile boolean mClosed;
+
+    LoopbackServer() throws IOException {
+        mServerSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        final Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        }, "loopback-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Serves an HTTP response with an endless body.
+     */
+    static LoopbackServer source() throws IOException {
+        return new LoopbackServer() {
+            @Override
+            void serve(final Socket socket) throws IOException {
+                skipRequestHeader(socket.getInputStream());
+                final OutputStream out = socket.getOutputStream();
+                out.write(RESPONSE_HEADER);
+                final byte[] chunk = new byte[64 * 1024];
+                while (!isClosed()) {
+                    out.write(chunk);
+                }
+            }
+        };
+    }
+
+    /**
+     * Like {@link #source()}, but the first {@code stalled} connections get the response header and
+     * then nothing until the client hangs up.
+     */
+    static LoopbackServer stallingSource(final int stalled) throws IOException {
+        final AtomicInteger served = new AtomicInteger();
+        return new LoopbackServer() {
+            @Override
+            void serve(final Socket socket) throws IOException {
+                final InputStream in = socket.getInputStream();
+                skipRequestHeader(in);
+                final OutputStream out = socket.getOutputStream();
+                out.write(RESPONSE_HEADER);
+                if (served.getAndIncrement() < stalled) {
+                    while (in.read() >= 0) {
+                        // wait for the client to close
+                    }
+                    return;
+                }
+                final byte[] chunk = new byte[64 * 1024];
+                while (!isClosed()) {
+                    out.write(chunk);
+                }
+            }
+        };
+    }
+
+    /**
+     * Swallows everything after the request header and counts it.
+     */
+    static LoopbackServer sink() throws IOException {
+        return new LoopbackServer() {
+            @Override
+            void serve(final Socket socket) throws IOException {
+                final InputStream in = socket.getInputStream();
+                skipRequestHeader(in);
+                final byte[] buffer = new byte[64 * 1024];
+                int read;
+                while ((read = in.read(buffer)) >= 0) {
+                    mReceivedBytes.addAndGet(read);
+                }
+            }
+        };
+    }
+
+    /**
+     * Raw echo: writes every byte back as soon as it arrives.
+     */
+    static LoopbackServer echo() throws IOException {
+        return echo(new AtomicLong());
+    }
+
+    /**
+     * Raw echo that holds every read for the current {@code delayMillis} before writing it back.
+     */
+    static LoopbackServer echo(final AtomicLong delayMillis) throws IOException {
+        return new LoopbackServer() {
+            @Override
+            void serve(final Socket socket) throws IOException {
+                socket.setTcpNoDelay(true);
+                final InputStream in = socket.getInputStream();
+                final OutputStream out = socket.getOutputStream();
+                final byte[] buffer = new byte[1024];
+                int read;
+                while ((read = in.read(buffer)) >= 0) {
+                    sleep(delayMillis.get());
+                    out.write(buffer, 0, read);
+                }
+            }
+        };
+    }
+
+    InetSocketAddress address() {
+        return new InetSocketAddress(mServerSocket.getInetAddress(), mServerSocket.getLocalPort());
+    }
+
+    long receivedBytes() {
+        return mReceivedBytes.get();
+    }
+
+    int acceptedConnections() {
+        return mSockets.size();
+    }
+
+    boolean isClosed() {
+        return mClosed;
+    }
+
+    abstract void serve(Socket socket) throws IOException;
+
+    private void accept() {
+        while (!mClosed) {
+            try {
+                final Socket socket = mServerSocket.accept();
+                mSockets.add(socket);
+                final Thread handler = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            serve(socket);
+                        } catch (final IOException ignored) {
+                            // client went away
+                        } finally {
+                            closeQuietly(socket);
+                        }
+                    }
+                }, "loopback-serve");
+                handler.setDaemon(true);
+                handler.start();
+            } catch (final IOException e) {
+                return;
+            }
+        }
+    }
+
+    static void skipRequestHeader(final InputStream in) throws IOException {
+        int matched = 0;
+        while (matched < 4) {
+            final int b = in.read();
+            if (b < 0) {
+                throw new IOException("request truncated");
+            }
+            final char expected = (matched % 2 == 0) ? '\r' : '\n';
+            if (b == expected) {
+                matched++;
+            } else {
+                matched = (b == '\r') ? 1 : 0;
+            }
+        }
+    }
+
+    private static void sleep(final long millis) {
+        if (millis > 0) {
+            try {
+                Thread.sleep(millis);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static void closeQuietly(final Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (final IOException ignored) {
+        }
+    }
+
+    @Override
+    public void close() {
+        mClosed = true;
+        closeQuietly(mServerSocket);
+        for (final Socket socket : mSockets) {
+            closeQuietly(socket);
+        }
+    }
+}
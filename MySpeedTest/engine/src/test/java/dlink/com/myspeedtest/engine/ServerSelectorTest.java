@@ -0,0 +1,126 @@
+package dlink.com.myspeedtest.engine;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ServerSelectorTest {
+
+    @Test
+    public void picksLowestMedian() throws Exception {
+        final long[] delays = {60, 5, 30};
+        final List<LoopbackServer> echoes = new ArrayList<>();
+        try {
+            final List<ServerInfo> servers = new ArrayList<>();
+            for (final long delay : delays) {
+                final LoopbackServer echo = LoopbackServer.echo(new AtomicLong(delay));
+                echoes.add(echo);
+                servers.add(server("delay-" + delay, echo.address()));
+            }
+            final ServerSelection selection = new ServerSelector(servers).select();
+            assertEquals(1, selection.getBestIndex());
+            assertSame(servers.get(1), selection.getBest());
+            for (int i = 0; i < delays.length; i++) {
+                assertTrue(selection.getResult(i).getMedian() >= TimeUnit.MILLISECONDS.toNanos(delays[i]));
+            }
+        } finally {
+            for (final LoopbackServer echo : echoes) {
+                echo.close();
+            }
+        }
+    }
+
+    @Test
+    public void probesConcurrently() throws Exception {
+        final int count = 6;
+        final long delay = 100;
+        final List<LoopbackServer> echoes = new ArrayList<>();
+        try {
+            final List<ServerInfo> servers = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                final LoopbackServer echo = LoopbackServer.echo(new AtomicLong(delay));
+                echoes.add(echo);
+                servers.add(server("echo-" + i, echo.address()));
+            }
+            final ServerSelector selector = new ServerSelector(servers);
+            selector.setProbes(3);
+            final ServerSelection selection = selector.select();
+            for (int i = 0; i < count; i++) {
+                assertNotNull(selection.getResult(i));
+            }
+            // one server takes ~300 ms, all six one after another would take ~1.8 s
+            assertTrue(selection.getElapsedNanos() < TimeUnit.MILLISECONDS.toNanos(count * 3 * delay / 2));
+        } finally {
+            for (final LoopbackServer echo : echoes) {
+                echo.close();
+            }
+        }
+    }
+
+    @Test
+    public void deadServersDoNotDelaySelection() throws Exception {
+        final int closedPort;
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            closedPort = socket.getLocalPort();
+        }
+        try (LoopbackServer stalled = LoopbackServer.echo(new AtomicLong(60000));
+             LoopbackServer healthy = LoopbackServer.echo()) {
+            final List<ServerInfo> servers = new ArrayList<>();
+            servers.add(server("stalled", stalled.address()));
+            servers.add(server("closed", new InetSocketAddress(InetAddress.getLoopbackAddress(), closedPort)));
+            servers.add(server("healthy", healthy.address()));
+            final ServerSelector selector = new ServerSelector(servers);
+            selector.setTimeout(200);
+            selector.setDeadline(500);
+            final ServerSelection selection = selector.select();
+            assertNull(selection.getResult(0));
+            assertNull(selection.getResult(1));
+            assertEquals(2, selection.getBestIndex());
+            assertTrue(selection.getElapsedNanos() < TimeUnit.MILLISECONDS.toNanos(2000));
+        }
+    }
+
+    @Test
+    public void emptyListSelectsNothing() throws Exception {
+        final ServerSelection selection = new ServerSelector(new ArrayList<ServerInfo>()).select();
+        assertEquals(-1, selection.getBestIndex());
+        assertNull(selection.getBest());
+    }
+
+    @Test
+    public void parsesServerList() throws IOException {
+        final List<ServerInfo> servers = ServerInfo.parse(new StringReader("# host,port,echoPort,name,city\n"
+                + "\n"
+                + "10.0.0.1, 8080, 8081, Example LLC, Yerevan\n"
+                + "10.0.0.2,80,7\n"));
+        assertEquals(2, servers.size());
+        assertEquals("Example LLC", servers.get(0).getName());
+        assertEquals("Yerevan", servers.get(0).getCity());
+        assertEquals(8081, servers.get(0).getEchoPort());
+        assertEquals("10.0.0.2", servers.get(1).getName());
+        assertEquals(80, servers.get(1).getPort());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsMalformedLine() throws IOException {
+        ServerInfo.parse(new StringReader("10.0.0.1,http\n"));
+    }
+
+    private static ServerInfo server(final String name, final InetSocketAddress echo) {
+        return new ServerInfo(name, "", echo.getHostString(), echo.getPort(), echo.getPort());
+    }
+}
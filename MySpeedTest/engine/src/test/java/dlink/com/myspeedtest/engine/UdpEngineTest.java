@@ -0,0 +1,99 @@
+package dlink.com.myspeedtest.engine;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class UdpEngineTest {
+
+    @Test
+    public void cleanLinkLosesNothing() throws IOException {
+        try (UdpReflector reflector = new UdpReflector()) {
+            final UdpEngine engine = new UdpEngine(reflector.address());
+            engine.setPacketRate(2000);
+            engine.setDuration(500);
+            final UdpResult result = engine.run();
+            assertEquals(1000, result.getSent());
+            assertEquals(1000, result.getReceived());
+            assertEquals(0, result.getLost());
+            assertEquals(0, result.getDuplicates());
+            assertEquals(0, result.getReordered());
+            assertEquals(1000, result.getRoundTrip().getCount());
+            assertTrue(result.getJitter() >= 0);
+        }
+    }
+
+    @Test
+    public void countsLossDuplicatesAndReordering() throws IOException {
+        try (UdpReflector reflector = new UdpReflector()) {
+            reflector.dropEvery(10);
+            reflector.duplicateEvery(7);
+            reflector.swapEvery(13);
+            final UdpEngine engine = new UdpEngine(reflector.address());
+            engine.setPacketRate(1000);
+            engine.setDuration(1000);
+            final UdpResult result = engine.run();
+            assertEquals(1000, result.getSent());
+            // 100 dropped, the last held-back packet may never be released
+            assertTrue(result.getLost() >= 100 && result.getLost() <= 101);
+            assertEquals(10.0f, result.getLossPercent(), 0.2f);
+            assertTrue(result.getDuplicates() > 100);
+            assertTrue(result.getReordered() > 50);
+        }
+    }
+
+    @Test
+    public void sustainsHighPacketRate() throws IOException {
+        try (UdpReflector reflector = new UdpReflector()) {
+            final UdpEngine engine = new UdpEngine(reflector.address());
+            engine.setPacketRate(20000);
+            engine.setDuration(1000);
+            engine.setPayloadSize(64);
+            final UdpResult result = engine.run();
+            assertEquals(20000, result.getSent());
+            assertTrue(result.getSendNanos() <= result.getElapsedNanos());
+            assertTrue("rate " + result.getPacketRate(), result.getPacketRate() > 15000);
+            assertTrue(result.getLossPercent() < 5.0f);
+        }
+    }
+
+    @Test
+    public void steadyStateDoesNotAllocate() throws IOException {
+        try (UdpReflector reflector = new UdpReflector()) {
+            final UdpEngine engine = new UdpEngine(reflector.address());
+            engine.setPacketRate(5000);
+            engine.setDuration(200);
+            engine.setDrainTime(50);
+            engine.run();
+            final long shortRun = allocated(engine, 200);
+            final long longRun = allocated(engine, 1000);
+            // only the per-run bitmap grows with the number of packets: 4000 more packets, 500 bytes
+            assertTrue("allocated " + shortRun + " vs " + longRun, longRun - shortRun < 16 * 1024);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void missingReflectorFails() throws IOException {
+        final int port;
+        try (DatagramSocket socket = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            port = socket.getLocalPort();
+        }
+        final UdpEngine engine = new UdpEngine(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        engine.setDuration(200);
+        engine.setDrainTime(50);
+        engine.run();
+    }
+
+    private static long allocated(final UdpEngine engine, final long durationMillis) throws IOException {
+        engine.setDuration(durationMillis);
+        final long before = AllocationMeter.currentThreadAllocatedBytes();
+        engine.run();
+        return AllocationMeter.currentThreadAllocatedBytes() - before;
+    }
+}
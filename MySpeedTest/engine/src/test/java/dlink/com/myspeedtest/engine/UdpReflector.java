@@ -0,0 +1,92 @@
+package dlink.com.myspeedtest.engine;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+
+/**
+ * Loopback UDP reflector that can misbehave on purpose: drop, duplicate or swap every Nth packet.
+ */
+final class UdpReflector implements Closeable {
+
+    private final DatagramSocket mSocket;
+    private volatile int mDropEvery;
+    private volatile int mDuplicateEvery;
+    private volatile int mSwapEvery;
+
+    UdpReflector() throws IOException {
+        mSocket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        mSocket.setReceiveBufferSize(1 << 20);
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                reflect();
+            }
+        }, "udp-reflector");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    void dropEvery(final int n) {
+        mDropEvery = n;
+    }
+
+    void duplicateEvery(final int n) {
+        mDuplicateEvery = n;
+    }
+
+    /**
+     * Holds every Nth packet back and sends it after the next one.
+     */
+    void swapEvery(final int n) {
+        mSwapEvery = n;
+    }
+
+    InetSocketAddress address() {
+        return new InetSocketAddress(mSocket.getLocalAddress(), mSocket.getLocalPort());
+    }
+
+    private void reflect() {
+        final DatagramPacket packet = new DatagramPacket(new byte[2048], 2048);
+        final DatagramPacket held = new DatagramPacket(new byte[2048], 2048);
+        boolean holding = false;
+        long count = 0;
+        try {
+            while (true) {
+                packet.setLength(2048);
+                mSocket.receive(packet);
+                count++;
+                if (mDropEvery > 0 && 0 == count % mDropEvery) {
+                    continue;
+                }
+                if (mSwapEvery > 0 && 0 == count % mSwapEvery && !holding) {
+                    System.arraycopy(packet.getData(), 0, held.getData(), 0, packet.getLength());
+                    held.setLength(packet.getLength());
+                    held.setSocketAddress(packet.getSocketAddress());
+                    holding = true;
+                    continue;
+                }
+                mSocket.send(packet);
+                if (mDuplicateEvery > 0 && 0 == count % mDuplicateEvery) {
+                    mSocket.send(packet);
+                }
+                if (holding) {
+                    mSocket.send(held);
+                    holding = false;
+                }
+            }
+        } catch (final SocketException e) {
+            // closed
+        } catch (final IOException ignored) {
+        }
+    }
+
+    @Override
+    public void close() {
+        mSocket.close();
+    }
+}
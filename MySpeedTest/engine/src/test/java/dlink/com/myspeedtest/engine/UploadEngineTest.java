@@ -0,0 +1,122 @@
+package dlink.com.myspeedtest.engine;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class UploadEngineTest {
+
+    @Test
+    public void measuresLoopbackSink() throws Exception {
+        try (LoopbackServer server = LoopbackServer.sink()) {
+            final UploadEngine engine = new UploadEngine(server.address());
+            engine.setConnections(4);
+            engine.setDuration(500);
+            final ThroughputResult result = engine.run(null);
+            assertEquals(4, server.acceptedConnections());
+            assertTrue(result.getBytes() > 0);
+            assertTrue(result.getBytesPerSecond() > 0);
+            // Every byte the server saw was counted by the engine; the rest is still in flight.
+            Thread.sleep(100);
+            assertTrue(server.receivedBytes() > 0);
+            assertTrue(server.receivedBytes() <= result.getBytes() + 4L * UploadEngine.CHUNK_SIZE);
+        }
+    }
+
+    @Test
+    public void connectionsShareOnePayload() {
+        final UploadEngine engine = new UploadEngine(new InetSocketAddress(InetAddress.getLoopbackAddress(), 9));
+        final long before = directMemoryUsed();
+        for (int i = 0; i < 1000; i++) {
+            engine.newConnection();
+        }
+        // one payload per connection would be 125 MiB
+        assertTrue(directMemoryUsed() - before < UploadEngine.CHUNK_SIZE);
+    }
+
+    private static long directMemoryUsed() {
+        for (final BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if ("direct".equals(pool.getName())) {
+                return pool.getMemoryUsed();
+            }
+        }
+        return 0;
+    }
+
+    @Test
+    public void steadyStateWritesDoNotAllocate() throws IOException {
+        if (!AllocationMeter.isSupported()) {
+            return;
+        }
+        try (LoopbackServer server = LoopbackServer.sink()) {
+            final int connections = 2;
+            // warm-up: class init and first-use state of the engine and the selector
+            newSingleThreadEngine(server, connections, 100).run(null);
+            final long perWakeup = selectorBytesPerWakeup(server, connections);
+            final ThroughputResult result = newSingleThreadEngine(server, connections, 500).run(null);
+            assertTrue(result.getAllocatedBytes() >= 0);
+            // What the selector allocates per wakeup is not the engine's; everything else must be a
+            // fixed start-up cost that does not grow with the chunks written.
+            final long wakeups = result.getCost().getWakeups();
+            final long chunks = result.getBytes() / UploadEngine.CHUNK_SIZE;
+            final long engineBytes = result.getAllocatedBytes() - wakeups * perWakeup;
+            assertTrue(chunks > 100);
+            assertTrue("allocated " + result.getAllocatedBytes() + " in " + wakeups + " wakeups of " + perWakeup
+                    + " bytes for " + chunks + " chunks", engineBytes < 16 * 1024);
+        }
+    }
+
+    private static UploadEngine newSingleThreadEngine(final LoopbackServer server, final int connections,
+                                                      final long durationMillis) {
+        final UploadEngine engine = new UploadEngine(server.address());
+        engine.setConnections(connections);
+        engine.setIoThreads(1);
+        engine.setDuration(durationMillis);
+        return engine;
+    }
+
+    /**
+     * Bytes a selector allocates per wakeup with {@code connections} ready keys and no work done on
+     * them; an upper bound on the selector's share of an engine wakeup.
+     */
+    private static long selectorBytesPerWakeup(final LoopbackServer server, final int connections)
+            throws IOException {
+        final int wakeups = 10000;
+        final SocketChannel[] channels = new SocketChannel[connections];
+        try (Selector selector = Selector.open()) {
+            for (int i = 0; i < connections; i++) {
+                channels[i] = SocketChannel.open(server.address());
+                channels[i].configureBlocking(false);
+                channels[i].register(selector, SelectionKey.OP_WRITE);
+            }
+            final Set<SelectionKey> selected = selector.selectedKeys();
+            for (int i = 0; i < wakeups; i++) {
+                selector.selectNow();
+                selected.clear();
+            }
+            final long before = AllocationMeter.currentThreadAllocatedBytes();
+            for (int i = 0; i < wakeups; i++) {
+                selector.selectNow();
+                selected.clear();
+            }
+            return (AllocationMeter.currentThreadAllocatedBytes() - before + wakeups - 1) / wakeups;
+        } finally {
+            for (final SocketChannel channel : channels) {
+                if (null != channel) {
+                    channel.close();
+                }
+            }
+        }
+    }
+}
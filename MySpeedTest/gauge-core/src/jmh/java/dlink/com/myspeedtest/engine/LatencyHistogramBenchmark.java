@@ -0,0 +1,60 @@
+package dlink.com.myspeedtest.engine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of recording a round trip and of reading a percentile back out.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LatencyHistogramBenchmark {
+
+    private static final int VALUES = 4096;
+
+    @Param({"100", "100000"})
+    public int samples;
+
+    private LatencyHistogram mHistogram;
+    private long[] mValues;
+    private int mNext;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        mValues = new long[VALUES];
+        for (int i = 0; i < VALUES; i++) {
+            // log-normal around 20 ms, the shape of real round trips
+            mValues[i] = (long) (20e6 * Math.exp(random.nextGaussian() * 0.5));
+        }
+        mHistogram = new LatencyHistogram();
+        for (int i = 0; i < samples; i++) {
+            mHistogram.record(mValues[i & (VALUES - 1)]);
+        }
+    }
+
+    @Benchmark
+    public void record() {
+        mHistogram.record(mValues[mNext++ & (VALUES - 1)]);
+    }
+
+    @Benchmark
+    public long p50() {
+        return mHistogram.getValueAtPercentile(50.0);
+    }
+
+    @Benchmark
+    public long p99() {
+        return mHistogram.getValueAtPercentile(99.0);
+    }
+}
@@ -0,0 +1,68 @@
+package dlink.com.myspeedtest.engine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ring throughput: one thread publishing and draining in turn, and several network-like producers
+ * against one draining consumer.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SampleRingBenchmark {
+
+    private SampleRing mRing;
+
+    @Setup
+    public void setUp() {
+        mRing = new SampleRing(256);
+    }
+
+    @Benchmark
+    public int offerThenDrain(final ThreadState state) {
+        mRing.offer(state.mTime++, 1.0f);
+        return mRing.drain(state);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(3)
+    public boolean producer(final ThreadState state) {
+        return mRing.offer(state.mTime++, 1.0f);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public int consumer(final ThreadState state) {
+        return mRing.drain(state);
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState implements SampleRing.Sink {
+
+        long mTime;
+        private Blackhole mBlackhole;
+
+        @Setup
+        public void setUp(final Blackhole blackhole) {
+            mBlackhole = blackhole;
+        }
+
+        @Override
+        public void accept(final long timeNanos, final float value) {
+            mBlackhole.consume(value);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package dlink.com.myspeedtest.gauge;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Amortized cost of adding a sample to the sparkline series, including the periodic compactions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LttbSeriesBenchmark {
+
+    @Param({"128", "1024"})
+    public int budget;
+
+    private LttbSeries mSeries;
+    private long mTime;
+
+    @Setup
+    public void setUp() {
+        mSeries = new LttbSeries(budget);
+    }
+
+    @Benchmark
+    public int add() {
+        mTime += 100_000_000L;
+        mSeries.add(mTime, (float) (50.0 + 10.0 * Math.sin(mTime * 1e-9)));
+        return mSeries.size();
+    }
+}
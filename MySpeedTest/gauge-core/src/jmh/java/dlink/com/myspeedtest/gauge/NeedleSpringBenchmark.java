@@ -0,0 +1,40 @@
+package dlink.com.myspeedtest.gauge;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one animation frame: a spring step plus the rest check the animator makes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class NeedleSpringBenchmark {
+
+    private static final float FRAME_SECONDS = 1.0f / 60.0f;
+
+    private NeedleSpring mSpring;
+    private int mFrame;
+
+    @Setup
+    public void setUp() {
+        mSpring = new NeedleSpring(60.0f);
+    }
+
+    @Benchmark
+    public boolean frame() {
+        // retarget every 32 frames, like a gauge fed ~2 samples per second
+        if (0 == (mFrame++ & 31)) {
+            mSpring.setTarget(mSpring.getTarget() > 50.0f ? 10.0f : 90.0f);
+        }
+        mSpring.step(FRAME_SECONDS);
+        return mSpring.isAtRest(0.01f, FRAME_SECONDS);
+    }
+}
@@ -0,0 +1,58 @@
+package dlink.com.myspeedtest.gauge;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one value-to-angle lookup as the number of ranges grows; it should stay nearly flat.
+ * Queries cycle through random values so the branch predictor cannot learn the search path.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ScaleMappingBenchmark {
+
+    private static final int QUERIES = 4096;
+
+    @Param({"2", "8", "64", "512", "4096"})
+    public int ranges;
+
+    private ScaleMapping mRanges;
+    private ScaleMapping mLogarithmic;
+    private float[] mQueries;
+    private int mNext;
+
+    @Setup
+    public void setUp() {
+        final float[] values = new float[ranges + 1];
+        for (int i = 1; i < values.length; i++) {
+            values[i] = values[i - 1] + 1.0f + (i % 7);
+        }
+        mRanges = ScaleMapping.ranges(values, 240.0f);
+        mLogarithmic = ScaleMapping.logarithmic(1.0f, values[ranges], 240.0f);
+        final Random random = new Random(42);
+        mQueries = new float[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            mQueries[i] = random.nextFloat() * values[ranges];
+        }
+    }
+
+    @Benchmark
+    public float ranges() {
+        return mRanges.getAngle(mQueries[mNext++ & (QUERIES - 1)]);
+    }
+
+    @Benchmark
+    public float logarithmic() {
+        return mLogarithmic.getAngle(mQueries[mNext++ & (QUERIES - 1)]);
+    }
+}
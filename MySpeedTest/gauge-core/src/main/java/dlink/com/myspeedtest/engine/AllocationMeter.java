@@ -0,0 +1,56 @@
+package dlink.com.myspeedtest.engine;
+
+import java.lang.reflect.Method;
+
+/**
+ * Per-thread allocated byte counter backed by the HotSpot ThreadMXBean extension. Looked up
+ * reflectively because java.lang.management does not exist on Android, where it reports -1.
+ */
+public final class AllocationMeter {
+
+    public static final long UNSUPPORTED = -1;
+
+    private static final Object BEAN;
+    private static final Method THREAD_ALLOCATED_BYTES;
+
+    static {
+        Object bean = null;
+        Method method = null;
+        try {
+            final Class<?> factory = Class.forName("java.lang.management.ManagementFactory");
+            bean = factory.getMethod("getThreadMXBean").invoke(null);
+            final Class<?> type = Class.forName("com.sun.management.ThreadMXBean");
+            if (type.isInstance(bean)) {
+                method = type.getMethod("getThreadAllocatedBytes", long.class);
+                if (0 > (Long) method.invoke(bean, Thread.currentThread().getId())) {
+                    method = null;
+                }
+            }
+        } catch (final Throwable ignored) {
+            method = null;
+        }
+        BEAN = bean;
+        THREAD_ALLOCATED_BYTES = method;
+    }
+
+    private AllocationMeter() {
+    }
+
+    public static boolean isSupported() {
+        return null != THREAD_ALLOCATED_BYTES;
+    }
+
+    /**
+     * Bytes allocated so far by the calling thread, or {@link #UNSUPPORTED}.
+     */
+    public static long currentThreadAllocatedBytes() {
+        if (null == THREAD_ALLOCATED_BYTES) {
+            return UNSUPPORTED;
+        }
+        try {
+            return (Long) THREAD_ALLOCATED_BYTES.invoke(BEAN, Thread.currentThread().getId());
+        } catch (final Exception e) {
+            return UNSUPPORTED;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package dlink.com.myspeedtest.engine;
+
+/**
+ * Receives aggregate throughput samples from a running engine. Called on the sampling thread,
+ * never on the UI thread.
+ */
+public interface SampleListener {
+
+    void onSample(long elapsedNanos, long totalBytes, float mbps);
+}
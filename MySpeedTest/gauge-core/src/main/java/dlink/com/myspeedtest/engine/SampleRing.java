@@ -0,0 +1,118 @@
+package dlink.com.myspeedtest.engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free ring of (time, value) samples with any number of producers and one consumer.
+ * Each slot carries a sequence number that tells producers and the consumer whose turn it is, so
+ * neither side ever blocks or allocates. A full ring drops the new sample and counts it rather than
+ * stalling a network thread.
+ */
+public final class SampleRing implements SampleListener {
+
+    /**
+     * Receives drained samples on the consumer thread.
+     */
+    public interface Sink {
+        void accept(long timeNanos, float value);
+    }
+
+    private final int mMask;
+    private final AtomicLongArray mSequences;
+    private final long[] mTimes;
+    private final float[] mValues;
+    private final AtomicLong mTail = new AtomicLong();
+    private final AtomicLong mDropped = new AtomicLong();
+    // consumer-only
+    private long mHead;
+    private long mDrained;
+
+    public SampleRing(final int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two: " + capacity);
+        }
+        mMask = capacity - 1;
+        mSequences = new AtomicLongArray(capacity);
+        mTimes = new long[capacity];
+        mValues = new float[capacity];
+        for (int i = 0; i < capacity; i++) {
+            mSequences.set(i, i);
+        }
+    }
+
+    public int getCapacity() {
+        return mMask + 1;
+    }
+
+    /**
+     * Publishes a sample; returns false and counts a drop when the consumer has fallen a whole ring
+     * behind.
+     */
+    public boolean offer(final long timeNanos, final float value) {
+        long position = mTail.get();
+        while (true) {
+            final int index = (int) (position & mMask);
+            final long difference = mSequences.get(index) - position;
+            if (0 == difference) {
+                if (mTail.compareAndSet(position, position + 1)) {
+                    mTimes[index] = timeNanos;
+                    mValues[index] = value;
+                    mSequences.lazySet(index, position + 1);
+                    return true;
+                }
+                position = mTail.get();
+            } else if (difference < 0) {
+                mDropped.incrementAndGet();
+                return false;
+            } else {
+                position = mTail.get();
+            }
+        }
+    }
+
+    @Override
+    public void onSample(final long elapsedNanos, final long totalBytes, final float mbps) {
+        offer(elapsedNanos, mbps);
+    }
+
+    /**
+     * Hands every published sample to {@code sink} in order, at most one ring's worth, and returns
+     * how many there were. Consumer thread only.
+     */
+    public int drain(final Sink sink) {
+        int count = 0;
+        final int capacity = mMask + 1;
+        while (count < capacity) {
+            final long position = mHead;
+            final int index = (int) (position & mMask);
+            if (mSequences.get(index) != position + 1) {
+                break;
+            }
+            sink.accept(mTimes[index], mValues[index]);
+            mSequences.lazySet(index, position + capacity);
+            mHead = position + 1;
+            count++;
+        }
+        mDrained += count;
+        return count;
+    }
+
+    /**
+     * Samples accepted by {@link #offer}; exact once producers are idle.
+     */
+    public long getOffered() {
+        return mTail.get();
+    }
+
+    public long getDropped() {
+        return mDropped.get();
+    }
+
+    /**
+     * Samples handed to a sink so far. Consumer thread only.
+     */
+    public long getDrained() {
+        return mDrained;
+    }
+}
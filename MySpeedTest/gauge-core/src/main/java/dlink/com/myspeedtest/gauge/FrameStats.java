@@ -0,0 +1,230 @@
+package dlink.com.myspeedtest.gauge;
+
+import dlink.com.myspeedtest.engine.LatencyHistogram;
+
+/**
+ * Rendering counters for one gauge: draw durations in fixed-size histograms, frames drawn and
+ * skipped, invalidations requested and time the needle spent away from its target. Recording is
+ * a handful of array and field updates and never allocates, so it can stay on in release builds;
+ * only {@link #snapshot(long)} allocates. Single-threaded, meant for the UI thread.
+ */
+public final class FrameStats {
+
+    public static final long DEFAULT_FRAME_INTERVAL_NANOS = 16_666_667L;
+
+    private final LatencyHistogram mDrawTimes = new LatencyHistogram();
+    private final LatencyHistogram mNeedleTimes = new LatencyHistogram();
+    private final LatencyHistogram mTextTimes = new LatencyHistogram();
+    private long mFrameIntervalNanos = DEFAULT_FRAME_INTERVAL_NANOS;
+
+    private long mStartNanos = -1L;
+    private long mFrames;
+    private long mAnimationFrames;
+    private long mSkippedFrames;
+    private long mInvalidations;
+    private long mOffTargetNanos;
+
+    /**
+     * Display refresh interval; an animation frame arriving this much later than the previous
+     * one counts the vsyncs in between as skipped.
+     */
+    public void setFrameInterval(final long nanos) {
+        if (nanos > 0) {
+            mFrameIntervalNanos = nanos;
+        }
+    }
+
+    public long getFrameInterval() {
+        return mFrameIntervalNanos;
+    }
+
+    /**
+     * One onDraw: the whole call and the needle and text parts of it.
+     */
+    public void recordDraw(final long drawNanos, final long needleNanos, final long textNanos) {
+        mFrames++;
+        mDrawTimes.record(drawNanos);
+        mNeedleTimes.record(needleNanos);
+        mTextTimes.record(textNanos);
+    }
+
+    public void recordInvalidate(final long nowNanos) {
+        if (-1L == mStartNanos) {
+            mStartNanos = nowNanos;
+        }
+        mInvalidations++;
+    }
+
+    /**
+     * One frame of needle animation, {@code elapsedNanos} after the previous one. The needle is
+     * off target for the whole interval.
+     */
+    public void recordAnimationFrame(final long elapsedNanos) {
+        mAnimationFrames++;
+        mOffTargetNanos += elapsedNanos;
+        if (2 * elapsedNanos > 3 * mFrameIntervalNanos) {
+            mSkippedFrames += (elapsedNanos + mFrameIntervalNanos / 2) / mFrameIntervalNanos - 1;
+        }
+    }
+
+    public void reset() {
+        mDrawTimes.reset();
+        mNeedleTimes.reset();
+        mTextTimes.reset();
+        mStartNanos = -1L;
+        mFrames = 0;
+        mAnimationFrames = 0;
+        mSkippedFrames = 0;
+        mInvalidations = 0;
+        mOffTargetNanos = 0;
+    }
+
+    public long getFrames() {
+        return mFrames;
+    }
+
+    public long getAnimationFrames() {
+        return mAnimationFrames;
+    }
+
+    public long getSkippedFrames() {
+        return mSkippedFrames;
+    }
+
+    public long getInvalidations() {
+        return mInvalidations;
+    }
+
+    public long getOffTargetNanos() {
+        return mOffTargetNanos;
+    }
+
+    /**
+     * Average rate since the first invalidation after the last reset.
+     */
+    public float getInvalidationsPerSecond(final long nowNanos) {
+        if (-1L == mStartNanos || nowNanos <= mStartNanos) {
+            return 0.0f;
+        }
+        return mInvalidations * 1e9f / (nowNanos - mStartNanos);
+    }
+
+    public long getDrawPercentile(final double percentile) {
+        return mDrawTimes.getValueAtPercentile(percentile);
+    }
+
+    public Snapshot snapshot(final long nowNanos) {
+        return new Snapshot(this, nowNanos);
+    }
+
+    /**
+     * Immutable copy of the counters for logging or upload.
+     */
+    public static final class Snapshot {
+
+        private final long mFrames;
+        private final long mAnimationFrames;
+        private final long mSkippedFrames;
+        private final long mInvalidations;
+        private final float mInvalidationsPerSecond;
+        private final long mOffTargetNanos;
+        private final long mDrawP50;
+        private final long mDrawP90;
+        private final long mDrawP99;
+        private final long mDrawMax;
+        private final long mNeedleP50;
+        private final long mNeedleP99;
+        private final long mTextP50;
+        private final long mTextP99;
+
+        Snapshot(final FrameStats stats, final long nowNanos) {
+            mFrames = stats.mFrames;
+            mAnimationFrames = stats.mAnimationFrames;
+            mSkippedFrames = stats.mSkippedFrames;
+            mInvalidations = stats.mInvalidations;
+            mInvalidationsPerSecond = stats.getInvalidationsPerSecond(nowNanos);
+            mOffTargetNanos = stats.mOffTargetNanos;
+            mDrawP50 = stats.mDrawTimes.getValueAtPercentile(50);
+            mDrawP90 = stats.mDrawTimes.getValueAtPercentile(90);
+            mDrawP99 = stats.mDrawTimes.getValueAtPercentile(99);
+            mDrawMax = stats.mDrawTimes.getMax();
+            mNeedleP50 = stats.mNeedleTimes.getValueAtPercentile(50);
+            mNeedleP99 = stats.mNeedleTimes.getValueAtPercentile(99);
+            mTextP50 = stats.mTextTimes.getValueAtPercentile(50);
+            mTextP99 = stats.mTextTimes.getValueAtPercentile(99);
+        }
+
+        public long getFrames() {
+            return mFrames;
+        }
+
+        public long getAnimationFrames() {
+            return mAnimationFrames;
+        }
+
+        /**
+         * Vsyncs the needle animation missed while it was running.
+         */
+        public long getSkippedFrames() {
+            return mSkippedFrames;
+        }
+
+        public long getInvalidations() {
+            return mInvalidations;
+        }
+
+        public float getInvalidationsPerSecond() {
+            return mInvalidationsPerSecond;
+        }
+
+        public long getOffTargetNanos() {
+            return mOffTargetNanos;
+        }
+
+        public long getDrawP50() {
+            return mDrawP50;
+        }
+
+        public long getDrawP90() {
+            return mDrawP90;
+        }
+
+        public long getDrawP99() {
+            return mDrawP99;
+        }
+
+        public long getDrawMax() {
+            return mDrawMax;
+        }
+
+        public long getNeedleP50() {
+            return mNeedleP50;
+        }
+
+        public long getNeedleP99() {
+            return mNeedleP99;
+        }
+
+        public long getTextP50() {
+            return mTextP50;
+        }
+
+        public long getTextP99() {
+            return mTextP99;
+        }
+
+        @Override
+        public String toString() {
+            return "FrameStats{frames=" + mFrames
+                    + ", animationFrames=" + mAnimationFrames
+                    + ", skipped=" + mSkippedFrames
+                    + ", invalidations=" + mInvalidations
+                    + ", invalidationsPerSecond=" + mInvalidationsPerSecond
+                    + ", offTargetMs=" + mOffTargetNanos / 1000000
+                    + ", drawUs={p50=" + mDrawP50 / 1000 + ", p90=" + mDrawP90 / 1000
+                    + ", p99=" + mDrawP99 / 1000 + ", max=" + mDrawMax / 1000 + '}'
+                    + ", needleUs={p50=" + mNeedleP50 / 1000 + ", p99=" + mNeedleP99 / 1000 + '}'
+                    + ", textUs={p50=" + mTextP50 / 1000 + ", p99=" + mTextP99 / 1000 + "}}";
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package dlink.com.myspeedtest.gauge;
+
+import java.util.Arrays;
+
+/**
+ * Time series downsampled on the fly with Largest-Triangle-Three-Buckets into at most a fixed
+ * number of points, so drawing it costs the same after ten seconds as after ten minutes.
+ * <p>
+ * Samples are grouped into buckets of equal size. When a bucket is complete, the point of the one
+ * before it that spans the largest triangle with the last kept point and the average of the new
+ * bucket is kept. When the kept points reach the budget they are downsampled to half with the
+ * same rule and the bucket size doubles. Everything lives in primitive arrays; only those
+ * doublings allocate. Not thread-safe.
+ */
+public final class LttbSeries {
+
+    private int mBudget;
+    private long[] mTimes;
+    private float[] mValues;
+    private int mCount;
+
+    private int mBucketSize = 1;
+    private long[] mPreviousTimes = new long[1];
+    private float[] mPreviousValues = new float[1];
+    private int mPreviousCount;
+    private long[] mCurrentTimes = new long[1];
+    private float[] mCurrentValues = new float[1];
+    private int mCurrentCount;
+
+    private long mLastTime;
+    private float mLastValue;
+    private float mMaxValue;
+    private long mSamples;
+
+    public LttbSeries(final int budget) {
+        checkBudget(budget);
+        mBudget = budget;
+        mTimes = new long[budget];
+        mValues = new float[budget];
+    }
+
+    private static void checkBudget(final int budget) {
+        if (budget < 4) {
+            throw new IllegalArgumentException("budget must be at least 4: " + budget);
+        }
+    }
+
+    public int getBudget() {
+        return mBudget;
+    }
+
+    /**
+     * Changes the point budget, downsampling what is kept if it no longer fits.
+     */
+    public void setBudget(final int budget) {
+        checkBudget(budget);
+        if (mCount >= budget) {
+            mCount = downsample(mTimes, mValues, mCount, budget / 2);
+        }
+        mTimes = Arrays.copyOf(mTimes, budget);
+        mValues = Arrays.copyOf(mValues, budget);
+        mBudget = budget;
+    }
+
+    public void add(final long time, final float value) {
+        mSamples++;
+        mLastTime = time;
+        mLastValue = value;
+        if (value > mMaxValue) {
+            mMaxValue = value;
+        }
+        if (0 == mCount) {
+            // the first sample is always kept
+            mTimes[0] = time;
+            mValues[0] = value;
+            mCount = 1;
+            return;
+        }
+        mCurrentTimes[mCurrentCount] = time;
+        mCurrentValues[mCurrentCount] = value;
+        mCurrentCount++;
+        if (mCurrentCount < mBucketSize) {
+            return;
+        }
+        if (mPreviousCount > 0) {
+            keepFromPrevious();
+        }
+        final long[] times = mPreviousTimes;
+        final float[] values = mPreviousValues;
+        mPreviousTimes = mCurrentTimes;
+        mPreviousValues = mCurrentValues;
+        mPreviousCount = mCurrentCount;
+        mCurrentTimes = times;
+        mCurrentValues = values;
+        mCurrentCount = 0;
+        if (mCurrentTimes.length < mBucketSize) {
+            mCurrentTimes = new long[mBucketSize];
+            mCurrentValues = new float[mBucketSize];
+        }
+    }
+
+    private void keepFromPrevious() {
+        double averageTime = 0;
+        double averageValue = 0;
+        for (int i = 0; i < mCurrentCount; i++) {
+            averageTime += mCurrentTimes[i];
+            averageValue += mCurrentValues[i];
+        }
+        averageTime /= mCurrentCount;
+        averageValue /= mCurrentCount;
+        final int best = largestTriangle(mTimes[mCount - 1], mValues[mCount - 1], mPreviousTimes, mPreviousValues,
+                0, mPreviousCount, averageTime, averageValue);
+        mTimes[mCount] = mPreviousTimes[best];
+        mValues[mCount] = mPreviousValues[best];
+        mCount++;
+        if (mCount == mBudget) {
+            mCount = downsample(mTimes, mValues, mCount, mBudget / 2);
+            mBucketSize *= 2;
+        }
+    }
+
+    public void clear() {
+        mCount = 0;
+        mPreviousCount = 0;
+        mCurrentCount = 0;
+        mBucketSize = 1;
+        mMaxValue = 0.0f;
+        mSamples = 0;
+    }
+
+    /**
+     * Points kept so far, at most the budget. The newest samples are still in open buckets; see
+     * {@link #getLastTime()} to draw up to the live edge.
+     */
+    public int size() {
+        return mCount;
+    }
+
+    public long getTime(final int index) {
+        return mTimes[index];
+    }
+
+    public float getValue(final int index) {
+        return mValues[index];
+    }
+
+    public long getLastTime() {
+        return mLastTime;
+    }
+
+    public float getLastValue() {
+        return mLastValue;
+    }
+
+    public float getMaxValue() {
+        return mMaxValue;
+    }
+
+    /**
+     * Samples added since creation or the last {@link #clear()}.
+     */
+    public long getSamples() {
+        return mSamples;
+    }
+
+    /**
+     * Downsamples the first {@code count} points in place to {@code threshold} with LTTB, keeping
+     * the first and last point, and returns the new count. Output never overtakes input, so the
+     * arrays can be shared.
+     */
+    static int downsample(final long[] times, final float[] values, final int count, final int threshold) {
+        if (threshold >= count || threshold < 3) {
+            return count;
+        }
+        final double every = (double) (count - 2) / (threshold - 2);
+        int kept = 0;
+        int a = 0;
+        // slot 0 already holds the first point
+        kept++;
+        for (int i = 0; i < threshold - 2; i++) {
+            final int nextStart = (int) Math.floor((i + 1) * every) + 1;
+            final int nextEnd = Math.min((int) Math.floor((i + 2) * every) + 1, count);
+            double averageTime = 0;
+            double averageValue = 0;
+            for (int j = nextStart; j < nextEnd; j++) {
+                averageTime += times[j];
+                averageValue += values[j];
+            }
+            final int nextCount = nextEnd - nextStart;
+            averageTime /= nextCount;
+            averageValue /= nextCount;
+            final int start = (int) Math.floor(i * every) + 1;
+            final int best = largestTriangle(times[a], values[a], times, values, start, nextStart, averageTime,
+                    averageValue);
+            a = kept;
+            times[kept] = times[best];
+            values[kept] = values[best];
+            kept++;
+        }
+        times[kept] = times[count - 1];
+        values[kept] = values[count - 1];
+        return kept + 1;
+    }
+
+    /**
+     * Index in [from, to) of the point spanning the largest triangle with (aTime, aValue) and
+     * (cTime, cValue).
+     */
+    private static int largestTriangle(final long aTime, final float aValue, final long[] times, final float[] values,
+                                       final int from, final int to, final double cTime, final double cValue) {
+        double maxArea = -1;
+        int best = from;
+        for (int i = from; i < to; i++) {
+            final double area = Math.abs((aTime - cTime) * (values[i] - aValue)
+                    - (aTime - times[i]) * (cValue - aValue));
+            if (area > maxArea) {
+                maxArea = area;
+                best = i;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,95 @@
+package dlink.com.myspeedtest.gauge;
+
+/**
+ * Critically damped spring pulling a value towards a target. The closed-form solution is used, so
+ * a step is exact for any frame interval, however late a frame arrives. Starting from rest the
+ * spring never overshoots; moving towards a target fast enough to pass it, e.g. after the target
+ * was moved closer mid-travel, it stops on the target instead of swinging past.
+ */
+public final class NeedleSpring {
+
+    private float mStiffness;
+    private float mOmega;
+
+    private float mPosition;
+    private float mVelocity;
+    private float mTarget;
+
+    public NeedleSpring(final float stiffness) {
+        setStiffness(stiffness);
+    }
+
+    /**
+     * Spring constant per unit mass, in 1/s²; the needle settles in roughly 5/sqrt(stiffness)
+     * seconds.
+     */
+    public void setStiffness(final float stiffness) {
+        if (!(stiffness > 0.0f)) {
+            throw new IllegalArgumentException("stiffness must be positive: " + stiffness);
+        }
+        mStiffness = stiffness;
+        mOmega = (float) Math.sqrt(stiffness);
+    }
+
+    public float getStiffness() {
+        return mStiffness;
+    }
+
+    public void setTarget(final float target) {
+        mTarget = target;
+    }
+
+    public float getTarget() {
+        return mTarget;
+    }
+
+    public float getPosition() {
+        return mPosition;
+    }
+
+    public float getVelocity() {
+        return mVelocity;
+    }
+
+    public void setState(final float position, final float velocity) {
+        mPosition = position;
+        mVelocity = velocity;
+    }
+
+    /**
+     * Advances the spring by {@code seconds}.
+     */
+    public void step(final float seconds) {
+        if (seconds <= 0.0f) {
+            return;
+        }
+        // x(t) = target + (d + (v + w d) t) e^(-w t), d = x(0) - target
+        final float displacement = mPosition - mTarget;
+        final float b = mVelocity + mOmega * displacement;
+        // d + b t crosses zero at t = -d / b: the spring would pass the target within this step
+        if (0.0f != b && displacement * b <= 0.0f && -displacement / b <= seconds) {
+            mPosition = mTarget;
+            mVelocity = 0.0f;
+            return;
+        }
+        final float decay = (float) Math.exp(-mOmega * seconds);
+        mPosition = mTarget + (displacement + b * seconds) * decay;
+        mVelocity = (b - mOmega * (displacement + b * seconds)) * decay;
+    }
+
+    /**
+     * True when both the remaining distance and the motion over the next {@code seconds} are below
+     * {@code threshold}.
+     */
+    public boolean isAtRest(final float threshold, final float seconds) {
+        return Math.abs(mPosition - mTarget) < threshold && Math.abs(mVelocity * seconds) < threshold;
+    }
+
+    /**
+     * Jumps to the target and stops.
+     */
+    public void settle() {
+        mPosition = mTarget;
+        mVelocity = 0.0f;
+    }
+}
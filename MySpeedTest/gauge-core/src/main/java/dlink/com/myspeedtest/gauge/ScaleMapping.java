@@ -0,0 +1,131 @@
+package dlink.com.myspeedtest.gauge;
+
+/**
+ * Maps gauge values to needle angles, measured in degrees from the start of the scale. Tables are
+ * built once when the scale is set, so a lookup is a binary search over the range boundaries, or
+ * one logarithm for a log scale, and never allocates. Values outside the scale are clamped to its
+ * ends.
+ */
+public final class ScaleMapping {
+
+    private final float[] mValues;
+    private final float[] mAngles;
+    private final float[] mSlopes;
+    private final float mSweep;
+    private final float mMinValuePerDegree;
+    private final boolean mLogarithmic;
+    private final double mLogMin;
+    private final double mLogScale;
+
+    private ScaleMapping(final float[] values, final float[] angles, final float[] slopes, final float sweep,
+                         final float minValuePerDegree, final boolean logarithmic, final double logMin,
+                         final double logScale) {
+        mValues = values;
+        mAngles = angles;
+        mSlopes = slopes;
+        mSweep = sweep;
+        mMinValuePerDegree = minValuePerDegree;
+        mLogarithmic = logarithmic;
+        mLogMin = logMin;
+        mLogScale = logScale;
+    }
+
+    /**
+     * Piecewise linear scale that gives every range between two consecutive {@code values} an
+     * equal share of {@code sweep}, e.g. 0, 1, 5, 10, 20 with each step one division apart.
+     */
+    public static ScaleMapping ranges(final float[] values, final float sweep) {
+        if (values.length < 2) {
+            throw new IllegalArgumentException("need at least two range values");
+        }
+        final int ranges = values.length - 1;
+        final float[] angles = new float[values.length];
+        final float[] slopes = new float[ranges];
+        final float step = sweep / ranges;
+        float minValuePerDegree = Float.MAX_VALUE;
+        for (int i = 0; i < ranges; i++) {
+            if (!(values[i + 1] > values[i])) {
+                throw new IllegalArgumentException("range values must be increasing at " + (i + 1));
+            }
+            angles[i] = i * step;
+            slopes[i] = step / (values[i + 1] - values[i]);
+            minValuePerDegree = Math.min(minValuePerDegree, 1.0f / slopes[i]);
+        }
+        angles[ranges] = sweep;
+        return new ScaleMapping(values.clone(), angles, slopes, sweep, minValuePerDegree, false, 0, 0);
+    }
+
+    /**
+     * Continuous logarithmic scale from {@code min} to {@code max}, e.g. 1 Mbps to 10 Gbps, where
+     * every decade gets the same angle.
+     */
+    public static ScaleMapping logarithmic(final float min, final float max, final float sweep) {
+        if (!(min > 0.0f) || !(max > min)) {
+            throw new IllegalArgumentException("log scale needs 0 < min < max: " + min + ", " + max);
+        }
+        final double logMin = Math.log(min);
+        final double logScale = sweep / (Math.log(max) - logMin);
+        // d(angle)/d(value) = logScale / value, steepest at min
+        return new ScaleMapping(new float[]{min, max}, new float[]{0.0f, sweep}, null, sweep,
+                (float) (min / logScale), true, logMin, logScale);
+    }
+
+    public float getMinValue() {
+        return mValues[0];
+    }
+
+    public float getMaxValue() {
+        return mValues[mValues.length - 1];
+    }
+
+    public float getSweep() {
+        return mSweep;
+    }
+
+    /**
+     * Smallest value change that turns the needle by one degree anywhere on the scale.
+     */
+    public float getMinValuePerDegree() {
+        return mMinValuePerDegree;
+    }
+
+    public boolean isLogarithmic() {
+        return mLogarithmic;
+    }
+
+    /**
+     * Angle of {@code value} from the start of the scale, between 0 and {@link #getSweep()}.
+     * NaN maps to the start.
+     */
+    public float getAngle(final float value) {
+        if (!(value > mValues[0])) {
+            return 0.0f;
+        }
+        final int last = mValues.length - 1;
+        if (value >= mValues[last]) {
+            return mSweep;
+        }
+        if (mLogarithmic) {
+            return (float) ((Math.log(value) - mLogMin) * mLogScale);
+        }
+        final int range = findRange(value);
+        return mAngles[range] + (value - mValues[range]) * mSlopes[range];
+    }
+
+    /**
+     * Index of the range holding {@code value}, which must lie strictly inside the scale.
+     */
+    int findRange(final float value) {
+        int low = 0;
+        int high = mValues.length - 2;
+        while (low < high) {
+            final int mid = (low + high + 1) >>> 1;
+            if (mValues[mid] <= value) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+}
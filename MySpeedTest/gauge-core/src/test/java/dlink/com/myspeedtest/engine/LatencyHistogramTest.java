@@ -0,0 +1,72 @@
+package dlink.com.myspeedtest.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsAreContiguous() {
+        long expected = 0;
+        for (int i = 0; i < LatencyHistogram.indexFor(LatencyHistogram.MAX_VALUE) + 1; i++) {
+            assertEquals(expected, LatencyHistogram.lowerBound(i));
+            assertEquals(i, LatencyHistogram.indexFor(expected));
+            expected += LatencyHistogram.bucketWidth(i);
+        }
+        assertEquals(LatencyHistogram.MAX_VALUE + 1, expected);
+    }
+
+    @Test
+    public void percentilesWithinBucketError() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (long v = 1; v <= 10000; v++) {
+            histogram.record(v * 1000);
+        }
+        assertEquals(10000, histogram.getCount());
+        assertEquals(1000, histogram.getMin());
+        assertEquals(10000000, histogram.getMax());
+        assertEquals(5000500, histogram.getMean());
+        assertWithin(5000000, histogram.getValueAtPercentile(50));
+        assertWithin(9000000, histogram.getValueAtPercentile(90));
+        assertWithin(9900000, histogram.getValueAtPercentile(99));
+        assertEquals(10000000, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void addMergesAndResetClears() {
+        final LatencyHistogram a = new LatencyHistogram();
+        final LatencyHistogram b = new LatencyHistogram();
+        a.record(10);
+        b.record(20);
+        b.record(LatencyHistogram.MAX_VALUE * 2);
+        a.add(b);
+        assertEquals(3, a.getCount());
+        assertEquals(10, a.getMin());
+        assertEquals(LatencyHistogram.MAX_VALUE, a.getMax());
+        a.reset();
+        assertEquals(0, a.getCount());
+        assertEquals(0, a.getValueAtPercentile(50));
+    }
+
+    @Test
+    public void recordingDoesNotAllocate() {
+        if (!AllocationMeter.isSupported()) {
+            return;
+        }
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1);
+        final long before = AllocationMeter.currentThreadAllocatedBytes();
+        for (long v = 0; v < 100000; v++) {
+            histogram.record(v * 7919);
+        }
+        final long allocated = AllocationMeter.currentThreadAllocatedBytes() - before;
+        // leaves room for the boxed Long returned by the meter itself
+        assertTrue("allocated " + allocated, allocated < 1024);
+    }
+
+    private static void assertWithin(final long expected, final long actual) {
+        assertTrue("expected ~" + expected + " got " + actual, Math.abs(actual - expected) <= expected * 0.04);
+    }
+}
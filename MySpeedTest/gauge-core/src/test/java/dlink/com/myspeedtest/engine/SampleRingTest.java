@@ -0,0 +1,81 @@
+package dlink.com.myspeedtest.engine;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SampleRingTest {
+
+    @Test
+    public void drainsInOrderAndDropsWhenFull() {
+        final SampleRing ring = new SampleRing(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ring.offer(i, i * 10f));
+        }
+        assertFalse(ring.offer(4, 40f));
+        assertEquals(1, ring.getDropped());
+        final long[] expected = {0};
+        assertEquals(4, ring.drain(new SampleRing.Sink() {
+            @Override
+            public void accept(final long timeNanos, final float value) {
+                assertEquals(expected[0], timeNanos);
+                assertEquals(expected[0] * 10f, value, 0f);
+                expected[0]++;
+            }
+        }));
+        assertTrue(ring.offer(5, 50f));
+        assertEquals(1, ring.drain(new SampleRing.Sink() {
+            @Override
+            public void accept(final long timeNanos, final float value) {
+                assertEquals(5, timeNanos);
+            }
+        }));
+        assertEquals(5, ring.getDrained());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPowerOfTwo() {
+        new SampleRing(100);
+    }
+
+    @Test
+    public void concurrentProducersLoseNothingButDrops() throws Exception {
+        final SampleRing ring = new SampleRing(1024);
+        final int producers = 4;
+        final int perProducer = 200000;
+        final CountDownLatch done = new CountDownLatch(producers);
+        for (int p = 0; p < producers; p++) {
+            final int id = p;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < perProducer; i++) {
+                        ring.offer(id, 1f);
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+        final long[] sum = new long[producers];
+        final SampleRing.Sink sink = new SampleRing.Sink() {
+            @Override
+            public void accept(final long timeNanos, final float value) {
+                sum[(int) timeNanos] += (long) value;
+            }
+        };
+        while (done.getCount() > 0) {
+            assertTrue(ring.drain(sink) <= ring.getCapacity());
+        }
+        ring.drain(sink);
+        long total = 0;
+        for (final long s : sum) {
+            total += s;
+        }
+        assertEquals(ring.getOffered(), total);
+        assertEquals((long) producers * perProducer, total + ring.getDropped());
+    }
+}
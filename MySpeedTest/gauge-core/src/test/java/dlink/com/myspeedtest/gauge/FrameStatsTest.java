@@ -0,0 +1,92 @@
+package dlink.com.myspeedtest.gauge;
+
+import org.junit.Test;
+
+import dlink.com.myspeedtest.engine.AllocationMeter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FrameStatsTest {
+
+    private static final long FRAME = FrameStats.DEFAULT_FRAME_INTERVAL_NANOS;
+
+    @Test
+    public void countsVsyncsMissedBetweenAnimationFrames() {
+        final FrameStats stats = new FrameStats();
+        stats.recordAnimationFrame(FRAME);
+        stats.recordAnimationFrame(FRAME + FRAME / 3);
+        assertEquals(0, stats.getSkippedFrames());
+        stats.recordAnimationFrame(2 * FRAME);
+        assertEquals(1, stats.getSkippedFrames());
+        stats.recordAnimationFrame(5 * FRAME + 1000);
+        assertEquals(5, stats.getSkippedFrames());
+        assertEquals(4, stats.getAnimationFrames());
+        assertEquals(FRAME + FRAME + FRAME / 3 + 2 * FRAME + 5 * FRAME + 1000, stats.getOffTargetNanos());
+    }
+
+    @Test
+    public void skipDetectionFollowsRefreshRate() {
+        final FrameStats stats = new FrameStats();
+        stats.setFrameInterval(FRAME / 2);
+        stats.recordAnimationFrame(FRAME);
+        assertEquals(1, stats.getSkippedFrames());
+    }
+
+    @Test
+    public void snapshotReportsPercentilesAndRates() {
+        final FrameStats stats = new FrameStats();
+        for (int i = 1; i <= 100; i++) {
+            stats.recordDraw(i * 10000L, i * 1000L, i * 2000L);
+        }
+        stats.recordInvalidate(0);
+        stats.recordInvalidate(500000000L);
+        final FrameStats.Snapshot snapshot = stats.snapshot(1000000000L);
+        assertEquals(100, snapshot.getFrames());
+        assertWithin(500000, snapshot.getDrawP50());
+        assertWithin(990000, snapshot.getDrawP99());
+        assertEquals(1000000, snapshot.getDrawMax());
+        assertWithin(50000, snapshot.getNeedleP50());
+        assertWithin(100000, snapshot.getTextP50());
+        assertEquals(2.0f, snapshot.getInvalidationsPerSecond(), 1e-3f);
+        stats.reset();
+        assertEquals(0, stats.snapshot(0).getFrames());
+        assertEquals(0.0f, stats.getInvalidationsPerSecond(1), 0.0f);
+    }
+
+    @Test
+    public void recordingDoesNotAllocate() {
+        if (!AllocationMeter.isSupported()) {
+            return;
+        }
+        final FrameStats stats = new FrameStats();
+        // warm-up: class init, JIT of the loop, and the meter's reflective call settling on its
+        // final accessor all allocate once
+        for (int i = 0; i < 10; i++) {
+            allocatedRecording(stats, 100000);
+        }
+        // the meter boxes its result; an empty measurement through the same path shows how much
+        long overhead = 0;
+        for (int i = 0; i < 100; i++) {
+            overhead = Math.max(overhead, allocatedRecording(stats, 0));
+        }
+        final long allocated = allocatedRecording(stats, 100000);
+        assertTrue("allocated " + allocated + " with " + overhead + " overhead", allocated <= overhead);
+    }
+
+    private static long allocatedRecording(final FrameStats stats, final int frames) {
+        final long before = AllocationMeter.currentThreadAllocatedBytes();
+        for (int i = 0; i < frames; i++) {
+            stats.recordDraw(i * 100L, i * 10L, i * 20L);
+            stats.recordInvalidate(i);
+            stats.recordAnimationFrame(FRAME + i);
+            stats.getInvalidationsPerSecond(i);
+            stats.getDrawPercentile(99);
+        }
+        return AllocationMeter.currentThreadAllocatedBytes() - before;
+    }
+
+    private static void assertWithin(final long expected, final long actual) {
+        assertTrue("expected ~" + expected + " got " + actual, Math.abs(actual - expected) <= expected * 0.04);
+    }
+}
@@ -0,0 +1,83 @@
+package dlink.com.myspeedtest.gauge;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LttbSeriesTest {
+
+    @Test
+    public void keepsEverySampleUnderBudget() {
+        final LttbSeries series = new LttbSeries(64);
+        for (int i = 0; i < 30; i++) {
+            series.add(i, i * 2.0f);
+        }
+        // the newest sample waits in an open bucket
+        assertEquals(29, series.size());
+        for (int i = 0; i < series.size(); i++) {
+            assertEquals(i, series.getTime(i));
+            assertEquals(i * 2.0f, series.getValue(i), 0.0f);
+        }
+        assertEquals(29, series.getLastTime());
+        assertEquals(58.0f, series.getMaxValue(), 0.0f);
+    }
+
+    @Test
+    public void staysWithinBudgetOnLongRuns() {
+        final LttbSeries series = new LttbSeries(200);
+        for (int i = 0; i < 100000; i++) {
+            series.add(i * 100L, (float) Math.sin(i / 500.0));
+            assertTrue(series.size() < 200);
+        }
+        assertEquals(100000, series.getSamples());
+        assertTrue("only " + series.size() + " points", series.size() >= 100);
+        assertEquals(0, series.getTime(0));
+        for (int i = 1; i < series.size(); i++) {
+            assertTrue(series.getTime(i) > series.getTime(i - 1));
+        }
+    }
+
+    @Test
+    public void keepsIsolatedSpikes() {
+        final LttbSeries series = new LttbSeries(100);
+        for (int i = 0; i < 50000; i++) {
+            series.add(i, 37777 == i ? 1000.0f : 10.0f);
+        }
+        float max = 0;
+        for (int i = 0; i < series.size(); i++) {
+            max = Math.max(max, series.getValue(i));
+        }
+        assertEquals(1000.0f, max, 0.0f);
+        assertEquals(1000.0f, series.getMaxValue(), 0.0f);
+    }
+
+    @Test
+    public void downsampleKeepsEndsAndPeaks() {
+        final long[] times = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9};
+        final float[] values = {0, 1, 0, 9, 0, 1, 0, -7, 0, 2};
+        final int count = LttbSeries.downsample(times, values, times.length, 4);
+        assertEquals(4, count);
+        assertEquals(0, times[0]);
+        assertEquals(3, times[1]);
+        assertEquals(7, times[2]);
+        assertEquals(9, times[3]);
+    }
+
+    @Test
+    public void shrinkingBudgetDownsamplesKeptPoints() {
+        final LttbSeries series = new LttbSeries(128);
+        for (int i = 0; i < 100; i++) {
+            series.add(i, i);
+        }
+        series.setBudget(32);
+        assertTrue(series.size() <= 16);
+        for (int i = 100; i < 10000; i++) {
+            series.add(i, i);
+            assertTrue(series.size() < 32);
+        }
+        series.clear();
+        assertEquals(0, series.size());
+        assertEquals(0, series.getSamples());
+    }
+}
@@ -0,0 +1,99 @@
+package dlink.com.myspeedtest.gauge;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NeedleSpringTest {
+
+    private static final float STIFFNESS = 60.0f;
+    private static final float FRAME = 1.0f / 60.0f;
+
+    @Test
+    public void settlesOnTargetWithoutOvershoot() {
+        final NeedleSpring spring = new NeedleSpring(STIFFNESS);
+        spring.setTarget(100.0f);
+        float previous = spring.getPosition();
+        for (int i = 0; i < 120; i++) {
+            spring.step(FRAME);
+            assertTrue("overshot at frame " + i, spring.getPosition() <= 100.0f);
+            assertTrue("moved backwards at frame " + i, spring.getPosition() >= previous);
+            previous = spring.getPosition();
+        }
+        assertEquals(100.0f, spring.getPosition(), 0.05f);
+        assertTrue(spring.isAtRest(0.1f, FRAME));
+    }
+
+    @Test
+    public void resultDoesNotDependOnFrameRate() {
+        final NeedleSpring smooth = new NeedleSpring(STIFFNESS);
+        final NeedleSpring janky = new NeedleSpring(STIFFNESS);
+        smooth.setTarget(50.0f);
+        janky.setTarget(50.0f);
+        for (int i = 0; i < 12; i++) {
+            smooth.step(FRAME);
+        }
+        // one frame dropped for twelve
+        janky.step(12 * FRAME);
+        assertEquals(smooth.getPosition(), janky.getPosition(), 0.01f);
+        assertEquals(smooth.getVelocity(), janky.getVelocity(), 0.01f);
+    }
+
+    @Test
+    public void retargetingMidFlightKeepsVelocity() {
+        final NeedleSpring spring = new NeedleSpring(STIFFNESS);
+        spring.setTarget(100.0f);
+        for (int i = 0; i < 10; i++) {
+            spring.step(FRAME);
+        }
+        final float velocity = spring.getVelocity();
+        spring.setTarget(0.0f);
+        assertEquals(velocity, spring.getVelocity(), 0.0f);
+        assertFalse(spring.isAtRest(1.0f, FRAME));
+        spring.settle();
+        assertEquals(0.0f, spring.getPosition(), 0.0f);
+        assertTrue(spring.isAtRest(Float.MIN_VALUE, FRAME));
+    }
+
+    @Test
+    public void stopsOnTargetMovedCloserMidFlight() {
+        final NeedleSpring spring = new NeedleSpring(STIFFNESS);
+        spring.setTarget(100.0f);
+        for (int i = 0; i < 5; i++) {
+            spring.step(FRAME);
+        }
+        assertTrue(spring.getVelocity() > 0.0f);
+        final float target = spring.getPosition() + 1.0f;
+        spring.setTarget(target);
+        for (int i = 0; i < 120; i++) {
+            spring.step(FRAME);
+            assertTrue("overshot at frame " + i, spring.getPosition() <= target);
+        }
+        assertEquals(target, spring.getPosition(), 0.0f);
+        assertTrue(spring.isAtRest(Float.MIN_VALUE, FRAME));
+    }
+
+    @Test
+    public void stoppingOnTargetDoesNotDependOnFrameRate() {
+        final NeedleSpring smooth = new NeedleSpring(STIFFNESS);
+        final NeedleSpring janky = new NeedleSpring(STIFFNESS);
+        smooth.setState(0.0f, 200.0f);
+        janky.setState(0.0f, 200.0f);
+        smooth.setTarget(10.0f);
+        janky.setTarget(10.0f);
+        for (int i = 0; i < 12; i++) {
+            smooth.step(FRAME);
+        }
+        janky.step(12 * FRAME);
+        assertEquals(10.0f, smooth.getPosition(), 0.0f);
+        assertEquals(10.0f, janky.getPosition(), 0.0f);
+        assertEquals(0.0f, janky.getVelocity(), 0.0f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveStiffness() {
+        new NeedleSpring(0.0f);
+    }
+}
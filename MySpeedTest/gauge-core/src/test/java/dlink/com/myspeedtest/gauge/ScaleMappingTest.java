@@ -0,0 +1,73 @@
+package dlink.com.myspeedtest.gauge;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ScaleMappingTest {
+
+    private static final float[] RANGES = {0.0f, 1f, 5f, 10f, 20f, 30f, 50f, 75f, 100f};
+    private static final float SWEEP = 240.0f;
+    private static final float DELTA = 1e-4f;
+
+    @Test
+    public void rangeBoundariesAreEvenlySpaced() {
+        final ScaleMapping mapping = ScaleMapping.ranges(RANGES, SWEEP);
+        for (int i = 0; i < RANGES.length; i++) {
+            assertEquals(i * 30.0f, mapping.getAngle(RANGES[i]), DELTA);
+        }
+        // 0..1 is the steepest range
+        assertEquals(1.0f / 30.0f, mapping.getMinValuePerDegree(), DELTA);
+    }
+
+    @Test
+    public void interpolatesWithinRanges() {
+        final ScaleMapping mapping = ScaleMapping.ranges(RANGES, SWEEP);
+        assertEquals(15.0f, mapping.getAngle(0.5f), DELTA);
+        assertEquals(30.0f + 7.5f, mapping.getAngle(2.0f), DELTA);
+        assertEquals(210.0f + 18.0f, mapping.getAngle(90.0f), DELTA);
+    }
+
+    @Test
+    public void clampsOutOfRangeValues() {
+        final ScaleMapping mapping = ScaleMapping.ranges(RANGES, SWEEP);
+        assertEquals(0.0f, mapping.getAngle(-3.0f), 0.0f);
+        assertEquals(SWEEP, mapping.getAngle(250.0f), 0.0f);
+        assertEquals(SWEEP, mapping.getAngle(Float.POSITIVE_INFINITY), 0.0f);
+        assertEquals(0.0f, mapping.getAngle(Float.NaN), 0.0f);
+    }
+
+    @Test
+    public void findsRangeForEveryInteriorValue() {
+        final float[] values = new float[1025];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i * 2.0f;
+        }
+        final ScaleMapping mapping = ScaleMapping.ranges(values, SWEEP);
+        for (int i = 0; i < values.length - 1; i++) {
+            assertEquals(i, mapping.findRange(values[i]));
+            assertEquals(i, mapping.findRange(values[i] + 1.0f));
+        }
+    }
+
+    @Test
+    public void logScaleGivesEveryDecadeTheSameAngle() {
+        final ScaleMapping mapping = ScaleMapping.logarithmic(1.0f, 10000.0f, SWEEP);
+        assertEquals(0.0f, mapping.getAngle(1.0f), DELTA);
+        assertEquals(60.0f, mapping.getAngle(10.0f), DELTA);
+        assertEquals(120.0f, mapping.getAngle(100.0f), DELTA);
+        assertEquals(180.0f, mapping.getAngle(1000.0f), DELTA);
+        assertEquals(SWEEP, mapping.getAngle(10000.0f), DELTA);
+        assertEquals(0.0f, mapping.getAngle(0.0f), 0.0f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsDecreasingRanges() {
+        ScaleMapping.ranges(new float[]{0.0f, 10.0f, 5.0f}, SWEEP);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsLogScaleFromZero() {
+        ScaleMapping.logarithmic(0.0f, 100.0f, SWEEP);
+    }
+}
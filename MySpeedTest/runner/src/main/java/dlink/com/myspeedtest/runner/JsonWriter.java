@@ -0,0 +1,169 @@
+package dlink.com.myspeedtest.runner;
+
+import java.io.IOException;
+
+/**
+ * Small streaming JSON writer for the runner's report; just enough for objects, arrays, strings and
+ * numbers, so the runner needs nothing beyond the JDK.
+ */
+final class JsonWriter {
+
+    private final Appendable mOut;
+    private final String mIndent;
+    // One bit per open container: whether it already has an element.
+    private long mHasElement;
+    private int mDepth;
+    private boolean mAfterName;
+
+    JsonWriter(final Appendable out) {
+        this(out, "  ");
+    }
+
+    /**
+     * @param indent per-level indent, empty for compact output
+     */
+    JsonWriter(final Appendable out, final String indent) {
+        mOut = out;
+        mIndent = indent;
+    }
+
+    JsonWriter beginObject() throws IOException {
+        return open('{');
+    }
+
+    JsonWriter endObject() throws IOException {
+        return close('}');
+    }
+
+    JsonWriter beginArray() throws IOException {
+        return open('[');
+    }
+
+    JsonWriter endArray() throws IOException {
+        return close(']');
+    }
+
+    JsonWriter name(final String name) throws IOException {
+        separate();
+        string(name);
+        mOut.append(mIndent.isEmpty() ? ":" : ": ");
+        mAfterName = true;
+        return this;
+    }
+
+    JsonWriter value(final String value) throws IOException {
+        separate();
+        if (null == value) {
+            mOut.append("null");
+        } else {
+            string(value);
+        }
+        return this;
+    }
+
+    JsonWriter value(final long value) throws IOException {
+        separate();
+        mOut.append(Long.toString(value));
+        return this;
+    }
+
+    /**
+     * Writes {@code value}; NaN and infinities, which JSON cannot represent, become null.
+     */
+    JsonWriter value(final double value) throws IOException {
+        separate();
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            mOut.append("null");
+        } else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            mOut.append(Long.toString((long) value));
+        } else {
+            mOut.append(Double.toString(value));
+        }
+        return this;
+    }
+
+    JsonWriter value(final boolean value) throws IOException {
+        separate();
+        mOut.append(value ? "true" : "false");
+        return this;
+    }
+
+    private JsonWriter open(final char bracket) throws IOException {
+        separate();
+        if (mDepth >= 63) {
+            throw new IllegalStateException("nesting too deep");
+        }
+        mOut.append(bracket);
+        mDepth++;
+        mHasElement &= ~(1L << mDepth);
+        return this;
+    }
+
+    private JsonWriter close(final char bracket) throws IOException {
+        if (0 == mDepth) {
+            throw new IllegalStateException("nothing to close");
+        }
+        final boolean empty = 0 == (mHasElement & (1L << mDepth));
+        mDepth--;
+        if (!empty) {
+            newline();
+        }
+        mOut.append(bracket);
+        return this;
+    }
+
+    private void separate() throws IOException {
+        if (mAfterName) {
+            mAfterName = false;
+            return;
+        }
+        if (mDepth > 0) {
+            if (0 != (mHasElement & (1L << mDepth))) {
+                mOut.append(',');
+            }
+            mHasElement |= 1L << mDepth;
+            newline();
+        }
+    }
+
+    private void newline() throws IOException {
+        if (mIndent.isEmpty()) {
+            return;
+        }
+        mOut.append('\n');
+        for (int i = 0; i < mDepth; i++) {
+            mOut.append(mIndent);
+        }
+    }
+
+    private void string(final String value) throws IOException {
+        mOut.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    mOut.append("\\\"");
+                    break;
+                case '\\':
+                    mOut.append("\\\\");
+                    break;
+                case '\n':
+                    mOut.append("\\n");
+                    break;
+                case '\r':
+                    mOut.append("\\r");
+                    break;
+                case '\t':
+                    mOut.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        mOut.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        mOut.append(c);
+                    }
+            }
+        }
+        mOut.append('"');
+    }
+}
@@ -0,0 +1,80 @@
+package dlink.com.myspeedtest.runner;
+
+import java.util.Arrays;
+
+import dlink.com.myspeedtest.engine.SampleListener;
+import dlink.com.myspeedtest.engine.ThroughputEngine;
+import dlink.com.myspeedtest.engine.ThroughputResult;
+
+/**
+ * Keeps what the runner reports about one throughput phase beyond the engine's own result: the
+ * aggregate rate of every sample interval and the final byte count of every connection.
+ */
+final class PhaseRecorder implements SampleListener {
+
+    private final ThroughputEngine mEngine;
+    private final long[] mConnectionBytes;
+    private float[] mIntervalMbps = new float[256];
+    private int mIntervals;
+    private long mElapsedNanos;
+
+    PhaseRecorder(final ThroughputEngine engine) {
+        mEngine = engine;
+        mConnectionBytes = new long[engine.getConnections()];
+    }
+
+    @Override
+    public void onSample(final long elapsedNanos, final long totalBytes, final float mbps) {
+        if (mIntervals == mIntervalMbps.length) {
+            mIntervalMbps = Arrays.copyOf(mIntervalMbps, mIntervals * 2);
+        }
+        mIntervalMbps[mIntervals++] = mbps;
+        mElapsedNanos = elapsedNanos;
+        mEngine.getConnectionBytes(mConnectionBytes);
+    }
+
+    /**
+     * Aggregate rates of the sample intervals, sorted.
+     */
+    float[] sortedIntervalMbps() {
+        final float[] sorted = Arrays.copyOf(mIntervalMbps, mIntervals);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Mean rate of every connection over the phase, sorted.
+     */
+    float[] sortedConnectionMbps() {
+        final float[] rates = new float[mConnectionBytes.length];
+        for (int i = 0; i < rates.length; i++) {
+            rates[i] = ThroughputResult.toMbps(mConnectionBytes[i], mElapsedNanos);
+        }
+        Arrays.sort(rates);
+        return rates;
+    }
+
+    /**
+     * Connections that never moved a byte, e.g. refused by an overloaded server.
+     */
+    int idleConnections() {
+        int idle = 0;
+        for (final long bytes : mConnectionBytes) {
+            if (0 == bytes) {
+                idle++;
+            }
+        }
+        return idle;
+    }
+
+    /**
+     * Nearest-rank percentile of sorted values, NaN if there are none.
+     */
+    static float percentile(final float[] sorted, final double percentile) {
+        if (0 == sorted.length) {
+            return Float.NaN;
+        }
+        final int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+        return sorted[Math.max(0, Math.min(rank, sorted.length) - 1)];
+    }
+}
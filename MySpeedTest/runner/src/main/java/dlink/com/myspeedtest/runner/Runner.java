@@ -0,0 +1,201 @@
+package dlink.com.myspeedtest.runner;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.Locale;
+
+import dlink.com.myspeedtest.engine.ClientCost;
+import dlink.com.myspeedtest.engine.DownloadEngine;
+import dlink.com.myspeedtest.engine.LatencyProbe;
+import dlink.com.myspeedtest.engine.LatencyResult;
+import dlink.com.myspeedtest.engine.LoadedLatencyMonitor;
+import dlink.com.myspeedtest.engine.LoadedLatencyResult;
+import dlink.com.myspeedtest.engine.Phase;
+import dlink.com.myspeedtest.engine.ThroughputEngine;
+import dlink.com.myspeedtest.engine.ThroughputResult;
+import dlink.com.myspeedtest.engine.UploadEngine;
+
+/**
+ * Runs the app's measurement sequence from the command line and prints a JSON report: idle
+ * latency, then download and upload with latency probed under load.
+ * <p>
+ * In load mode every simulated client is one connection, and all of them are multiplexed over the
+ * engine's selector pool ({@code --io-threads}, one per two cores by default), so a single box can
+ * hold thousands of concurrent transfers with a handful of threads. The report adds how the
+ * clients fared: the spread of per-client rates and how many never got a byte through. Raise the
+ * open file limit ({@code ulimit -n}) above the client count first.
+ */
+public final class Runner {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final RunnerOptions mOptions;
+    private final InetSocketAddress mAddress;
+    private final InetSocketAddress mEchoAddress;
+
+    /**
+     * @throws IllegalArgumentException if the host does not resolve
+     */
+    Runner(final RunnerOptions options) {
+        mOptions = options;
+        mAddress = resolve(options.mHost, options.mPort);
+        mEchoAddress = resolve(options.mHost, options.mEchoPort);
+    }
+
+    private static InetSocketAddress resolve(final String host, final int port) {
+        final InetSocketAddress address = new InetSocketAddress(host, port);
+        if (address.isUnresolved()) {
+            throw new IllegalArgumentException("unknown host " + host);
+        }
+        return address;
+    }
+
+    public static void main(final String[] args) {
+        final RunnerOptions options;
+        final Runner runner;
+        try {
+            options = RunnerOptions.parse(args);
+            runner = new Runner(options);
+        } catch (final IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(RunnerOptions.USAGE);
+            System.exit(2);
+            return;
+        }
+        try (Writer out = (null == options.mOut)
+                ? new BufferedWriter(new OutputStreamWriter(System.out, UTF_8))
+                : new BufferedWriter(new OutputStreamWriter(new FileOutputStream(options.mOut), UTF_8))) {
+            runner.run(out);
+            out.write('\n');
+        } catch (final IOException e) {
+            System.err.println("speed test failed: " + e);
+            System.exit(1);
+        }
+    }
+
+    void run(final Appendable out) throws IOException {
+        final InetSocketAddress address = mAddress;
+        final InetSocketAddress echoAddress = mEchoAddress;
+        final JsonWriter json = new JsonWriter(out);
+        json.beginObject();
+        json.name("host").value(mOptions.mHost);
+        json.name("mode").value(mOptions.mMode.name().toLowerCase(Locale.ROOT));
+        json.name("connections").value(mOptions.connections());
+        json.name("startMillis").value(System.currentTimeMillis());
+
+        final LatencyProbe probe = new LatencyProbe(echoAddress);
+        LatencyResult idle = null;
+        try {
+            idle = probe.run();
+        } catch (final IOException e) {
+            json.name("latencyError").value(e.toString());
+        }
+        final LoadedLatencyMonitor monitor = new LoadedLatencyMonitor(echoAddress);
+        if (null != idle) {
+            monitor.addIdleBaseline(probe.getHistogram());
+        }
+        monitor.start();
+        LoadedLatencyResult loaded;
+        try {
+            if (mOptions.mDownload) {
+                monitor.setPhase(Phase.DOWNLOAD);
+                runPhase(json, "download", new DownloadEngine(address));
+            }
+            if (mOptions.mUpload) {
+                monitor.setPhase(Phase.UPLOAD);
+                runPhase(json, "upload", new UploadEngine(address));
+            }
+        } finally {
+            loaded = monitor.stop();
+        }
+        json.name("latency").beginObject();
+        for (final Phase phase : Phase.values()) {
+            if (Phase.IDLE != phase && ((Phase.DOWNLOAD == phase) ? !mOptions.mDownload : !mOptions.mUpload)) {
+                continue;
+            }
+            json.name(phase.name().toLowerCase(Locale.ROOT));
+            writeLatency(json, loaded.get(phase), loaded.getTimeouts(phase));
+        }
+        json.endObject();
+        json.endObject();
+    }
+
+    private void runPhase(final JsonWriter json, final String name, final ThroughputEngine engine) throws IOException {
+        engine.setConnections(mOptions.connections());
+        engine.setIoThreads(mOptions.mIoThreads);
+        engine.setDuration(mOptions.mDurationMillis);
+        engine.setSampleInterval(mOptions.mIntervalMillis);
+        final PhaseRecorder recorder = new PhaseRecorder(engine);
+        json.name(name).beginObject();
+        final ThroughputResult result;
+        try {
+            result = engine.run(recorder);
+        } catch (final IOException e) {
+            json.name("error").value(e.toString());
+            json.endObject();
+            return;
+        }
+        json.name("bytes").value(result.getBytes());
+        json.name("elapsedNanos").value(result.getElapsedNanos());
+        json.name("meanMbps").value(result.getMeanMbps());
+        json.name("peakMbps").value(result.getPeakMbps());
+        final float[] intervals = recorder.sortedIntervalMbps();
+        json.name("intervalMbps");
+        writePercentiles(json, intervals);
+        final float[] clients = recorder.sortedConnectionMbps();
+        json.name("connectionMbps");
+        writePercentiles(json, clients);
+        json.name("idleConnections").value(recorder.idleConnections());
+        json.name("stragglers").value(result.getStragglers());
+        json.name("allocatedBytes").value(result.getAllocatedBytes());
+        writeCost(json, result.getCost());
+        json.endObject();
+    }
+
+    private static void writeCost(final JsonWriter json, final ClientCost cost) throws IOException {
+        json.name("clientCost").beginObject();
+        json.name("cpuNanos").value(cost.getCpuNanos());
+        json.name("bytesPerCpuMilli").value(cost.getBytesPerCpuMilli());
+        json.name("blockedNanos").value(cost.getBlockedNanos());
+        json.name("processingNanos").value(cost.getProcessingNanos());
+        json.name("maxThreadLoad").value(cost.getMaxThreadLoad());
+        json.name("gcCount").value(cost.getGcCount());
+        json.name("gcPauseNanos").value(cost.getGcPauseNanos());
+        json.name("wakeups").value(cost.getWakeups());
+        json.name("clientLimited").value(cost.isClientLimited());
+        json.endObject();
+    }
+
+    private static void writePercentiles(final JsonWriter json, final float[] sorted) throws IOException {
+        json.beginObject();
+        json.name("count").value(sorted.length);
+        json.name("min").value(PhaseRecorder.percentile(sorted, 0));
+        json.name("p10").value(PhaseRecorder.percentile(sorted, 10));
+        json.name("p50").value(PhaseRecorder.percentile(sorted, 50));
+        json.name("p90").value(PhaseRecorder.percentile(sorted, 90));
+        json.name("p99").value(PhaseRecorder.percentile(sorted, 99));
+        json.name("max").value(PhaseRecorder.percentile(sorted, 100));
+        json.endObject();
+    }
+
+    private static void writeLatency(final JsonWriter json, final LatencyResult result, final long timeouts)
+            throws IOException {
+        json.beginObject();
+        json.name("count").value(result.getCount());
+        json.name("timeouts").value(timeouts);
+        if (result.getCount() > 0) {
+            json.name("minNanos").value(result.getMin());
+            json.name("p50Nanos").value(result.getMedian());
+            json.name("p90Nanos").value(result.getP90());
+            json.name("p99Nanos").value(result.getP99());
+            json.name("maxNanos").value(result.getMax());
+            json.name("jitterNanos").value(result.getJitter());
+        }
+        json.endObject();
+    }
+}
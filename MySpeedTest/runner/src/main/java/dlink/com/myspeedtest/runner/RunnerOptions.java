@@ -0,0 +1,126 @@
+package dlink.com.myspeedtest.runner;
+
+import java.util.Locale;
+
+/**
+ * Command line of the runner: {@code --name value} pairs, all optional except {@code --host}.
+ */
+final class RunnerOptions {
+
+    enum Mode {
+        /**
+         * One client, measured like the app measures.
+         */
+        SINGLE,
+        /**
+         * Many clients at once, each one connection, to load the server.
+         */
+        LOAD
+    }
+
+    static final String USAGE = "usage: runner --host HOST [--port 8080] [--echo-port 8081] [--mode single|load]\n"
+            + "              [--connections 6] [--clients 1000] [--io-threads 0] [--duration 10000]\n"
+            + "              [--interval 100] [--phases download,upload] [--out FILE]";
+
+    String mHost;
+    int mPort = 8080;
+    int mEchoPort = 8081;
+    Mode mMode = Mode.SINGLE;
+    int mConnections = 6;
+    int mClients = 1000;
+    int mIoThreads;
+    long mDurationMillis = 10000;
+    long mIntervalMillis = 100;
+    boolean mDownload = true;
+    boolean mUpload = true;
+    String mOut;
+
+    static RunnerOptions parse(final String[] args) {
+        final RunnerOptions options = new RunnerOptions();
+        for (int i = 0; i < args.length; i += 2) {
+            final String name = args[i];
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("missing value for " + name);
+            }
+            final String value = args[i + 1];
+            switch (name) {
+                case "--host":
+                    options.mHost = value;
+                    break;
+                case "--port":
+                    options.mPort = positive(name, value);
+                    break;
+                case "--echo-port":
+                    options.mEchoPort = positive(name, value);
+                    break;
+                case "--mode":
+                    try {
+                        options.mMode = Mode.valueOf(value.toUpperCase(Locale.ROOT));
+                    } catch (final IllegalArgumentException e) {
+                        throw new IllegalArgumentException("unknown mode " + value);
+                    }
+                    break;
+                case "--connections":
+                    options.mConnections = positive(name, value);
+                    break;
+                case "--clients":
+                    options.mClients = positive(name, value);
+                    break;
+                case "--io-threads":
+                    options.mIoThreads = Math.max(0, number(name, value));
+                    break;
+                case "--duration":
+                    options.mDurationMillis = positive(name, value);
+                    break;
+                case "--interval":
+                    options.mIntervalMillis = positive(name, value);
+                    break;
+                case "--phases":
+                    options.mDownload = false;
+                    options.mUpload = false;
+                    for (final String phase : value.split(",")) {
+                        if ("download".equals(phase)) {
+                            options.mDownload = true;
+                        } else if ("upload".equals(phase)) {
+                            options.mUpload = true;
+                        } else {
+                            throw new IllegalArgumentException("unknown phase " + phase);
+                        }
+                    }
+                    break;
+                case "--out":
+                    options.mOut = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option " + name);
+            }
+        }
+        if (null == options.mHost) {
+            throw new IllegalArgumentException("--host is required");
+        }
+        return options;
+    }
+
+    /**
+     * Connections per throughput phase: the clients in load mode.
+     */
+    int connections() {
+        return (Mode.LOAD == mMode) ? mClients : mConnections;
+    }
+
+    private static int positive(final String name, final String value) {
+        final int number = number(name, value);
+        if (number < 1) {
+            throw new IllegalArgumentException(name + " must be positive: " + value);
+        }
+        return number;
+    }
+
+    private static int number(final String name, final String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException(name + " expects a number: " + value);
+        }
+    }
+}
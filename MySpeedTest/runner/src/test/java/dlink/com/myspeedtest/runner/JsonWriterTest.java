@@ -0,0 +1,37 @@
+package dlink.com.myspeedtest.runner;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+public class JsonWriterTest {
+
+    @Test
+    public void writesCompactDocument() throws IOException {
+        final StringBuilder out = new StringBuilder();
+        new JsonWriter(out, "").beginObject()
+                .name("host").value("a\"b\\c\n")
+                .name("count").value(3)
+                .name("mbps").value(12.5)
+                .name("whole").value(4.0)
+                .name("missing").value(Double.NaN)
+                .name("ok").value(true)
+                .name("list").beginArray().value(1).value(2).beginObject().endObject().endArray()
+                .name("empty").beginArray().endArray()
+                .endObject();
+        assertEquals("{\"host\":\"a\\\"b\\\\c\\n\",\"count\":3,\"mbps\":12.5,\"whole\":4,\"missing\":null,"
+                + "\"ok\":true,\"list\":[1,2,{}],\"empty\":[]}", out.toString());
+    }
+
+    @Test
+    public void indentsNestedContainers() throws IOException {
+        final StringBuilder out = new StringBuilder();
+        new JsonWriter(out).beginObject()
+                .name("a").beginObject().name("b").value(1).endObject()
+                .name("c").value("\u0001")
+                .endObject();
+        assertEquals("{\n  \"a\": {\n    \"b\": 1\n  },\n  \"c\": \"\\u0001\"\n}", out.toString());
+    }
+}
@@ -0,0 +1,46 @@
+package dlink.com.myspeedtest.runner;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RunnerOptionsTest {
+
+    @Test
+    public void parsesLoadMode() {
+        final RunnerOptions options = RunnerOptions.parse(new String[]{
+                "--host", "10.0.0.1", "--mode", "load", "--clients", "2000", "--io-threads", "4",
+                "--phases", "download", "--duration", "30000"});
+        assertEquals("10.0.0.1", options.mHost);
+        assertEquals(RunnerOptions.Mode.LOAD, options.mMode);
+        assertEquals(2000, options.connections());
+        assertEquals(4, options.mIoThreads);
+        assertEquals(30000, options.mDurationMillis);
+        assertTrue(options.mDownload);
+        assertFalse(options.mUpload);
+    }
+
+    @Test
+    public void singleModeUsesConnections() {
+        final RunnerOptions options = RunnerOptions.parse(new String[]{"--host", "h", "--connections", "8"});
+        assertEquals(RunnerOptions.Mode.SINGLE, options.mMode);
+        assertEquals(8, options.connections());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void requiresHost() {
+        RunnerOptions.parse(new String[]{"--port", "80"});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownOption() {
+        RunnerOptions.parse(new String[]{"--host", "h", "--bogus", "1"});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMissingValue() {
+        RunnerOptions.parse(new String[]{"--host"});
+    }
+}
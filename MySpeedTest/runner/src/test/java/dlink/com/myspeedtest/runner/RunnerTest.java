@@ -0,0 +1,17 @@
+package dlink.com.myspeedtest.runner;
+
+import org.junit.Test;
+
+public class RunnerTest {
+
+    @Test
+    public void acceptsLiteralAddress() {
+        new Runner(RunnerOptions.parse(new String[]{"--host", "127.0.0.1"}));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownHost() {
+        // .invalid never resolves (RFC 2606)
+        new Runner(RunnerOptions.parse(new String[]{"--host", "speedtest.invalid"}));
+    }
+}